@@ -3,10 +3,10 @@ package com.unravel;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.scheduling.annotation.EnableScheduling;
-import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
+import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisIndexedHttpSession;
 
 @EnableScheduling
-@EnableRedisHttpSession
+@EnableRedisIndexedHttpSession
 @SpringBootApplication
 public class UnravelWebAppChallengeApplication {
 
@@ -0,0 +1,40 @@
+package com.unravel.part1SessionManagement;
+
+import java.util.function.Consumer;
+
+/**
+ * Tells the other nodes that their local copy of something keyed by an ID, e.g. a session's attributes, is stale.
+ * A node is not notified of its own messages.
+ */
+public interface InvalidationChannel extends AutoCloseable {
+
+    /**
+     * A single node, nothing to notify.
+     */
+    InvalidationChannel NONE = new InvalidationChannel() {
+        @Override
+        public void publish(String id) {
+        }
+
+        @Override
+        public void subscribe(Consumer<String> listener) {
+        }
+    };
+
+    void publish(String id);
+
+    /**
+     * Registers a listener for the IDs that other nodes publish.
+     */
+    void subscribe(Consumer<String> listener);
+
+    /**
+     * Starts receiving messages.
+     */
+    default void start() {
+    }
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,24 @@
+package com.unravel.part1SessionManagement;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.redis.connection.lettuce.LettuceConnection;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Makes Lettuce send a pipeline in one write when it is closed, instead of flushing each command as it is queued,
+ * which is the default. Applied to every {@link LettuceConnectionFactory} of the application before it starts,
+ * so it covers the pipelined saves of {@link PipelinedSessionRepository} and the invalidations of
+ * {@link UserSessionIndex} alike. Commands outside a pipeline are not affected.
+ */
+@Component
+public class LettucePipeliningPolicy implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof LettuceConnectionFactory lettuce) {
+            lettuce.setPipeliningFlushPolicy(LettuceConnection.PipeliningFlushPolicy.flushOnClose());
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,34 @@
+package com.unravel.part1SessionManagement;
+
+import java.time.Duration;
+
+/**
+ * Records which user logged in to a session, shared by all nodes. The first claim of a session wins, so of two
+ * concurrent logins to the same session only one goes ahead, whichever node handles it.
+ */
+public interface LoginClaims {
+
+    /**
+     * A single node, where the local claims of {@link LoginGuard} are enough.
+     */
+    LoginClaims NONE = new LoginClaims() {
+        @Override
+        public boolean claim(String sessionId, String userId, Duration timeToLive) {
+            return true;
+        }
+
+        @Override
+        public void release(String sessionId) {
+        }
+    };
+
+    /**
+     * Claims the session for the user, if no one has claimed it yet.
+     *
+     * @param timeToLive how long the claim lasts, or zero for as long as it is not released
+     * @return {@code false} if the session was already claimed, by this or another user
+     */
+    boolean claim(String sessionId, String userId, Duration timeToLive);
+
+    void release(String sessionId);
+}
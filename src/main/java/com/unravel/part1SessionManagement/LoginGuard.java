@@ -0,0 +1,108 @@
+package com.unravel.part1SessionManagement;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.session.events.SessionDestroyedEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets only one of several concurrent logins to the same session through, without locks.
+ * <p>
+ * Checking the session for a user and then setting one is not atomic: two logins to the same session, on one node
+ * or on two, both see no user and both set theirs. Each login therefore claims the session first:
+ * <ol>
+ *     <li>locally, with a compare-and-set on this node's claims, so a duplicate on the same node loses without any
+ *     I/O</li>
+ *     <li>in {@link LoginClaims}, with one {@code SET NX} round trip, so a duplicate on another node loses too</li>
+ * </ol>
+ * Local claims only need to last until the winner's session has been saved, after which the session itself shows
+ * the user. Shared claims last as long as the session and are released on logout and when the session ends.
+ */
+@Slf4j
+@Component
+public class LoginGuard implements MeterBinder {
+    static final Duration LOCAL_CLAIM_TTL = Duration.ofMinutes(1);
+    static final long MAX_LOCAL_CLAIMS = 100_000;
+
+    private final LoginClaims claims;
+    private final ConcurrentMap<String, String> localClaims;
+    private final LongAdder logins = new LongAdder();
+    private final LongAdder localDuplicates = new LongAdder();
+    private final LongAdder remoteDuplicates = new LongAdder();
+
+    public LoginGuard(LoginClaims claims) {
+        this.claims = claims;
+        this.localClaims = Caffeine.newBuilder()
+                .expireAfterWrite(LOCAL_CLAIM_TTL)
+                .maximumSize(MAX_LOCAL_CLAIMS)
+                .<String, String>build()
+                .asMap();
+    }
+
+    /**
+     * Claims the session for the user.
+     *
+     * @param timeToLive how long the shared claim lasts, normally the session's inactivity timeout
+     * @return {@code false} if another login to the session came first, by this or another user
+     */
+    public boolean tryLogin(String sessionId, String userId, Duration timeToLive) {
+        if (localClaims.putIfAbsent(sessionId, userId) != null) {
+            localDuplicates.increment();
+            return false;
+        }
+        boolean claimed;
+        try {
+            claimed = claims.claim(sessionId, userId, timeToLive);
+        } catch (RuntimeException e) {
+            localClaims.remove(sessionId, userId);
+            throw e;
+        }
+        if (!claimed) {
+            // Another node won, its claim stays and the session will show its user
+            localClaims.remove(sessionId, userId);
+            remoteDuplicates.increment();
+            return false;
+        }
+        logins.increment();
+        return true;
+    }
+
+    /**
+     * Releases the session's claims after a logout, so the claims do not outlive the session.
+     */
+    public void release(String sessionId) {
+        localClaims.remove(sessionId);
+        claims.release(sessionId);
+    }
+
+    /**
+     * Every node receives the event, each drops its local claim. The shared claim expires with the session.
+     */
+    @EventListener
+    public void onSessionDestroyed(SessionDestroyedEvent event) {
+        localClaims.remove(event.getSessionId());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("session.logins", logins, LongAdder::sum)
+                .tag("result", "success")
+                .register(registry);
+        FunctionCounter.builder("session.logins", localDuplicates, LongAdder::sum)
+                .description("Logins to a session that another login claimed first")
+                .tag("result", "duplicate.local")
+                .register(registry);
+        FunctionCounter.builder("session.logins", remoteDuplicates, LongAdder::sum)
+                .description("Logins to a session that another login claimed first")
+                .tag("result", "duplicate.remote")
+                .register(registry);
+    }
+}
@@ -0,0 +1,194 @@
+package com.unravel.part1SessionManagement;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository.RedisSession;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session repository in front of Spring Session's {@link RedisIndexedSessionRepository} that batches the Redis
+ * commands of a save, in the {@link SessionWriteMode} that {@link SessionWritePolicy} chose for the request.
+ * <p>
+ * A session already collects the attribute changes of a request and writes them once, when the request ends. That
+ * write is still several commands: the attribute delta, the TTL of the session and its shadow key, and the
+ * expiration index. Run one after the other they cost one round trip each. Here they are sent as one pipeline on a
+ * pooled connection, in a single write with {@link LettucePipeliningPolicy}, and in {@link SessionWriteMode#ASYNC}
+ * by a background writer after the request thread has moved on.
+ * <p>
+ * Asynchronous saves of the same session are applied in order, and a later save, load or delete of that session on
+ * this node waits for them, so a user routed to the same node reads their own writes. Other nodes may briefly see
+ * the previous state. When the writer's queue is full, the request thread writes itself, which slows down intake
+ * instead of piling up memory.
+ */
+@Slf4j
+@Primary
+@Component
+public class PipelinedSessionRepository implements FindByIndexNameSessionRepository<RedisSession>, MeterBinder,
+        DisposableBean {
+    static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+    // Same message Spring Session ignores when renaming a session that has expired meanwhile
+    private static final String NO_SUCH_KEY = "ERR no such key";
+
+    private final RedisIndexedSessionRepository delegate;
+    private final RedisOperations<String, Object> redis;
+    private final SessionWritePolicy policy;
+    private final ThreadPoolExecutor writer;
+    // Latest asynchronous save per session ID, until it has been written
+    private final Map<String, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+    private final Map<SessionWriteMode, LongAdder> saves = new EnumMap<>(SessionWriteMode.class);
+
+    /**
+     * @param writerThreads threads that run asynchronous saves
+     * @param queueCapacity asynchronous saves that may wait for a writer before request threads write themselves
+     */
+    public PipelinedSessionRepository(RedisIndexedSessionRepository delegate, SessionWritePolicy policy,
+                                      @Value("${session.write.async-threads:2}") int writerThreads,
+                                      @Value("${session.write.async-queue:10000}") int queueCapacity) {
+        this.delegate = delegate;
+        this.redis = delegate.getSessionRedisOperations();
+        this.policy = policy;
+        this.writer = new ThreadPoolExecutor(writerThreads, writerThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("session-writer-", 0).factory(),
+                (save, executor) -> save.run());  // Also after shutdown, so no save is lost
+        for (SessionWriteMode mode : SessionWriteMode.values()) {
+            saves.put(mode, new LongAdder());
+        }
+    }
+
+    @Override
+    public RedisSession createSession() {
+        return delegate.createSession();
+    }
+
+    @Override
+    public void save(RedisSession session) {
+        SessionWriteMode mode = policy.current();
+        saves.get(mode).increment();
+        switch (mode) {
+            case IMMEDIATE -> {
+                awaitPending(session.getId());
+                delegate.save(session);
+            }
+            case PIPELINED -> {
+                awaitPending(session.getId());
+                savePipelined(session);
+            }
+            case ASYNC -> saveAsync(session);
+        }
+    }
+
+    @Override
+    public RedisSession findById(String id) {
+        awaitPending(id);
+        return delegate.findById(id);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        awaitPending(id);
+        delegate.deleteById(id);
+    }
+
+    @Override
+    public Map<String, RedisSession> findByIndexNameAndIndexValue(String indexName, String indexValue) {
+        return delegate.findByIndexNameAndIndexValue(indexName, indexValue);
+    }
+
+    /**
+     * Asynchronous saves not written yet, by session.
+     */
+    public int pendingWrites() {
+        return pending.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        saves.forEach((mode, count) -> FunctionCounter.builder("session.writes", count, LongAdder::sum)
+                .description("Session saves, by write mode")
+                .tag("mode", mode.name())
+                .register(registry));
+        Gauge.builder("session.writes.pending", this, PipelinedSessionRepository::pendingWrites)
+                .description("Sessions with an asynchronous save not written yet")
+                .register(registry);
+    }
+
+    /**
+     * Writes the saves still queued before the connection factory goes away.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        writer.shutdown();
+        if (!writer.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("{} session saves were not written within {}", writer.getQueue().size(), SHUTDOWN_TIMEOUT);
+        }
+    }
+
+    private void saveAsync(RedisSession session) {
+        String id = session.getId();
+        CompletableFuture<Void> save = new CompletableFuture<>();
+        CompletableFuture<Void> previous = pending.put(id, save);
+        // Previous saves always complete normally, a failure is logged and does not hold up later saves
+        CompletableFuture<Void> after = previous == null ? CompletableFuture.completedFuture(null) : previous;
+        after.thenRunAsync(() -> savePipelined(session), writer)
+                .whenComplete((ignored, failure) -> {
+                    pending.remove(id, save);
+                    if (failure != null) {
+                        log.warn("Asynchronous save of session {} failed", id, failure);
+                    }
+                    save.complete(null);
+                });
+    }
+
+    private void savePipelined(RedisSession session) {
+        try {
+            redis.executePipelined(new SessionCallback<>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    // The connection is bound to this thread, so every command of the save joins the pipeline
+                    delegate.save(session);
+                    return null;
+                }
+            });
+        } catch (RedisPipelineException e) {
+            // Errors only surface when the pipeline is closed, instead of at the command that Spring Session guards
+            for (Object result : e.getPipelineResult()) {
+                if (result instanceof Exception failure && !isNoSuchKey(failure)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void awaitPending(String id) {
+        CompletableFuture<Void> save = pending.get(id);
+        if (save != null) {
+            save.join();
+        }
+    }
+
+    private static boolean isNoSuchKey(Throwable failure) {
+        return NO_SUCH_KEY.equals(NestedExceptionUtils.getMostSpecificCause(failure).getMessage());
+    }
+}
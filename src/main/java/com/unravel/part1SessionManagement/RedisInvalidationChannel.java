@@ -0,0 +1,74 @@
+package com.unravel.part1SessionManagement;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link InvalidationChannel} on a Redis pub/sub channel. Messages are {@code <node id> <id>}, so each node can
+ * skip its own.
+ */
+@Slf4j
+public class RedisInvalidationChannel implements InvalidationChannel, MessageListener {
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ChannelTopic topic;
+    private final StringRedisTemplate redis;
+    private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisInvalidationChannel(RedisConnectionFactory connectionFactory, String channel) {
+        this.topic = new ChannelTopic(channel);
+        this.redis = new StringRedisTemplate(connectionFactory);
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(this, topic);
+    }
+
+    @Override
+    public void start() {
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @Override
+    public void close() {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            log.warn("Could not stop listening on {}", topic.getTopic(), e);
+        }
+    }
+
+    @Override
+    public void publish(String id) {
+        redis.convertAndSend(topic.getTopic(), nodeId + " " + id);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(' ');
+        if (separator < 0 || body.startsWith(nodeId + " ")) {
+            return;
+        }
+        String id = body.substring(separator + 1);
+        log.debug("{} changed on another node ({})", id, topic.getTopic());
+        for (Consumer<String> listener : listeners) {
+            listener.accept(id);
+        }
+    }
+}
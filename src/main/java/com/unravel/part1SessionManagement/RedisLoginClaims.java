@@ -0,0 +1,35 @@
+package com.unravel.part1SessionManagement;
+
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * {@link LoginClaims} as Redis keys {@code session:login:<session id>} holding the user ID. A claim is a single
+ * {@code SET NX}, so it costs one round trip and needs no lock.
+ */
+@Component
+public class RedisLoginClaims implements LoginClaims {
+    static final String KEY_PREFIX = "session:login:";
+
+    private final StringRedisTemplate redis;
+
+    public RedisLoginClaims(RedisConnectionFactory connectionFactory) {
+        this.redis = new StringRedisTemplate(connectionFactory);
+    }
+
+    @Override
+    public boolean claim(String sessionId, String userId, Duration timeToLive) {
+        Boolean claimed = timeToLive.isPositive()
+                ? redis.opsForValue().setIfAbsent(KEY_PREFIX + sessionId, userId, timeToLive)
+                : redis.opsForValue().setIfAbsent(KEY_PREFIX + sessionId, userId);
+        return Boolean.TRUE.equals(claimed);
+    }
+
+    @Override
+    public void release(String sessionId) {
+        redis.delete(KEY_PREFIX + sessionId);
+    }
+}
@@ -0,0 +1,84 @@
+package com.unravel.part1SessionManagement;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * {@link TokenRevocations} kept in Redis and mirrored on every node.
+ * <p>
+ * A revocation is a key {@code session:revoked:<token id>} that expires with the token, published on a channel so
+ * the other nodes add it to their copy. A node that starts loads the current keys once. Local copies are kept for a
+ * full token lifetime, which covers the rest of any token's validity.
+ * <p>
+ * Only created with {@code session.token.enabled=true}, so a node without tokens neither subscribes nor scans Redis.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "session.token.enabled", havingValue = "true")
+public class RedisTokenRevocations implements TokenRevocations, InitializingBean, DisposableBean {
+    static final String KEY_PREFIX = "session:revoked:";
+    static final String CHANNEL = "session:tokens:revocations";
+
+    private final StringRedisTemplate redis;
+    private final InvalidationChannel channel;
+    private final Cache<String, Boolean> revoked;
+
+    @Autowired
+    public RedisTokenRevocations(RedisConnectionFactory connectionFactory,
+                                 @Value("${session.token.ttl:30m}") Duration tokenTimeToLive) {
+        this(new StringRedisTemplate(connectionFactory), new RedisInvalidationChannel(connectionFactory, CHANNEL),
+                tokenTimeToLive);
+    }
+
+    RedisTokenRevocations(StringRedisTemplate redis, InvalidationChannel channel, Duration tokenTimeToLive) {
+        this.redis = redis;
+        this.channel = channel;
+        this.revoked = Caffeine.newBuilder()
+                .expireAfterWrite(tokenTimeToLive)
+                .build();
+        channel.subscribe(tokenId -> revoked.put(tokenId, Boolean.TRUE));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        channel.start();
+        // Subscribed first, so a revocation published meanwhile is not missed
+        ScanOptions keys = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(1000).build();
+        try (Cursor<String> cursor = redis.scan(keys)) {
+            cursor.forEachRemaining(key -> revoked.put(key.substring(KEY_PREFIX.length()), Boolean.TRUE));
+        }
+        log.info("Loaded {} revoked session tokens", revoked.estimatedSize());
+    }
+
+    @Override
+    public void destroy() {
+        channel.close();
+    }
+
+    @Override
+    public void revoke(String tokenId, Duration remaining) {
+        revoked.put(tokenId, Boolean.TRUE);
+        if (remaining.isPositive()) {
+            redis.opsForValue().set(KEY_PREFIX + tokenId, "1", remaining);
+        }
+        channel.publish(tokenId);
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId) {
+        return revoked.getIfPresent(tokenId) != null;
+    }
+}
@@ -0,0 +1,182 @@
+package com.unravel.part1SessionManagement;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.http.HttpSession;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.session.events.SessionDestroyedEvent;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Short-lived per-node copy of session attributes, so hot read-mostly sessions are answered from local memory.
+ * <p>
+ * A read by session ID alone ({@link #get(String, String)}) is answered without loading the session from Redis,
+ * which saves a round trip per hit. Entries expire a few seconds after they were cached, so a missed
+ * notification can only leave a stale value for that long. Coherence otherwise comes from:
+ * <ul>
+ *     <li>{@link #invalidate(String)} after this node changes a session, which is published to the other nodes</li>
+ *     <li>Spring Session's destroy events, which reach every node when a session is deleted or expires in Redis</li>
+ * </ul>
+ * Only values that are present are cached, so a missing attribute is always read from the session. A session that
+ * was loaded before the last invalidation of its ID is a stale snapshot: its values are returned but not cached, or
+ * a request that loaded the session just before a logout would cache the logged-out session again.
+ */
+@Slf4j
+@Component
+public class SessionAttributeCache implements MeterBinder, InitializingBean, DisposableBean {
+    static final String INVALIDATIONS = "session:attributes:invalidations";
+    static final long MAX_SESSIONS = 100_000;
+    // How long an invalidation is remembered, longer than a request holds on to the session it loaded
+    static final Duration INVALIDATION_MEMORY = Duration.ofMinutes(1);
+
+    private final InvalidationChannel channel;
+    private final Cache<String, Map<String, Object>> sessions;
+    // Epoch millis of the last invalidation per session ID, compared with the time the session was loaded
+    private final Cache<String, Long> invalidatedAt;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadsAvoided = new LongAdder();
+
+    @Autowired
+    public SessionAttributeCache(RedisConnectionFactory connectionFactory,
+                                 @Value("${session.attribute-cache.ttl:5s}") Duration timeToLive) {
+        this(new RedisInvalidationChannel(connectionFactory, INVALIDATIONS), timeToLive);
+    }
+
+    public SessionAttributeCache(InvalidationChannel channel, Duration timeToLive) {
+        this.channel = channel;
+        this.sessions = Caffeine.newBuilder()
+                .expireAfterWrite(timeToLive)  // Not after access, a hot session must still be refreshed
+                .maximumSize(MAX_SESSIONS)
+                .build();
+        this.invalidatedAt = Caffeine.newBuilder()
+                .expireAfterWrite(INVALIDATION_MEMORY)
+                .maximumSize(MAX_SESSIONS)
+                .build();
+        channel.subscribe(this::drop);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        channel.start();
+    }
+
+    @Override
+    public void destroy() {
+        channel.close();
+    }
+
+    /**
+     * Returns a cached attribute without touching the session. A miss is not counted here, the caller goes on to
+     * {@link #get(HttpSession, String)}, which counts the request.
+     *
+     * @return the value, or {@code null} if it is not cached, in which case the caller has to load the session
+     */
+    public Object get(String sessionId, String name) {
+        Map<String, Object> attributes = sessions.getIfPresent(sessionId);
+        Object value = attributes == null ? null : attributes.get(name);
+        if (value == null) {
+            return null;
+        }
+        hits.increment();
+        loadsAvoided.increment();
+        return value;
+    }
+
+    /**
+     * Returns an attribute of a session that is already loaded, from the cache or else from the session, and caches
+     * it for reads by session ID.
+     */
+    public Object get(HttpSession session, String name) {
+        Map<String, Object> cached = sessions.getIfPresent(session.getId());
+        Object value = cached == null ? null : cached.get(name);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = session.getAttribute(name);
+        if (value != null && isFresh(session)) {
+            Map<String, Object> attributes = sessions.get(session.getId(), id -> new ConcurrentHashMap<>());
+            attributes.put(name, value);
+            // An invalidation between the check and the put may have missed this map. One after the check below
+            // drops it anyway
+            if (!isFresh(session)) {
+                sessions.asMap().remove(session.getId(), attributes);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Drops this node's copy of the session's attributes and tells the other nodes to drop theirs.
+     * Call it after changing or invalidating the session.
+     */
+    public void invalidate(String sessionId) {
+        drop(sessionId);
+        channel.publish(sessionId);
+    }
+
+    /**
+     * Every node receives the event, so nothing is published.
+     */
+    @EventListener
+    public void onSessionDestroyed(SessionDestroyedEvent event) {
+        drop(event.getSessionId());
+    }
+
+    public double hitRatio() {
+        long requests = hits.sum() + misses.sum();
+        return requests == 0 ? Double.NaN : (double) hits.sum() / requests;
+    }
+
+    /**
+     * Reads answered by session ID alone, each one a session load from Redis that did not happen.
+     */
+    public long redisRoundTripsSaved() {
+        return loadsAvoided.sum();
+    }
+
+    // The time is recorded before the entry goes, so a reader that still finds no entry also sees the time
+    private void drop(String sessionId) {
+        invalidatedAt.put(sessionId, System.currentTimeMillis());
+        sessions.invalidate(sessionId);
+    }
+
+    // Spring Session sets the last accessed time when it loads the session for a request. Equal times count as
+    // stale, the clock only has millisecond resolution
+    private boolean isFresh(HttpSession session) {
+        Long invalidated = invalidatedAt.getIfPresent(session.getId());
+        return invalidated == null || session.getLastAccessedTime() > invalidated;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("session.attributes.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("session.attributes.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss")
+                .register(registry);
+        Gauge.builder("session.attributes.cache.hit.ratio", this, SessionAttributeCache::hitRatio)
+                .register(registry);
+        FunctionCounter.builder("session.attributes.redis.roundtrips.saved", loadsAvoided, LongAdder::sum)
+                .description("Session loads from Redis avoided by reads by session ID")
+                .register(registry);
+    }
+}
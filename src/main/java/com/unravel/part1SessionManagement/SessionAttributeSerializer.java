@@ -0,0 +1,170 @@
+package com.unravel.part1SessionManagement;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+import org.springframework.stereotype.Component;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Serializes session attributes and Spring Session's own fields for Redis. The bean name makes Spring Session use it
+ * instead of JDK serialization, and another bean of that name replaces it.
+ * <p>
+ * The {@link Format#COMPACT} form is a type tag byte followed by the value:
+ * <ul>
+ *     <li>{@code 1} String: UTF-8. Only read, see below</li>
+ *     <li>{@code 2} Integer and {@code 3} Long: zigzag varint</li>
+ *     <li>{@code 4} true and {@code 5} false</li>
+ *     <li>{@code 6} Double: 8 bytes IEEE 754</li>
+ *     <li>{@code 7} Instant: zigzag varint epoch seconds, varint nanos</li>
+ *     <li>{@code 8} byte[]: the bytes</li>
+ * </ul>
+ * The form has no class names or field layout, so it does not change when classes do. Tags must never be reused for
+ * another type. Other types are JDK serialized, whose streams start with {@code 0xAC}, so values of both forms are
+ * always read. That also lets nodes switch formats while sessions written by the other format are still in Redis.
+ * <p>
+ * Strings are JDK serialized in both formats. Spring Session uses this serializer for the members of its principal
+ * index and expirations sets too, and {@code SREM} matches exact bytes, so a member written in one form would never be
+ * removed by a node writing the other. JDK is the form those sets already hold.
+ */
+@Component("springSessionDefaultRedisSerializer")
+public class SessionAttributeSerializer implements RedisSerializer<Object> {
+    static final byte STRING = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte TRUE = 4;
+    static final byte FALSE = 5;
+    static final byte DOUBLE = 6;
+    static final byte INSTANT = 7;
+    static final byte BYTES = 8;
+    private static final byte JDK_STREAM_MAGIC = (byte) 0xAC;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Format format;
+    private final JdkSerializationRedisSerializer jdk = new JdkSerializationRedisSerializer();
+
+    /**
+     * How values are written. Both are always read.
+     */
+    public enum Format {
+        /**
+         * The tagged binary form for common types, JDK serialization for others.
+         */
+        COMPACT,
+        /**
+         * JDK serialization for all values, the default of Spring Session.
+         */
+        JDK
+    }
+
+    public SessionAttributeSerializer(@Value("${session.serializer.format:COMPACT}") Format format) {
+        this.format = format;
+    }
+
+    @Override
+    public byte[] serialize(Object value) {
+        if (value == null) {
+            return EMPTY;
+        }
+        if (format == Format.JDK) {
+            return jdk.serialize(value);
+        }
+        return switch (value) {
+            case Integer integer -> varint(INTEGER, zigzag(integer));
+            case Long number -> varint(LONG, zigzag(number));
+            case Boolean bool -> new byte[]{bool ? TRUE : FALSE};
+            case Double number -> ByteBuffer.allocate(1 + Double.BYTES).put(DOUBLE).putDouble(number).array();
+            case Instant instant -> instant(instant);
+            case byte[] bytes -> tagged(BYTES, bytes);
+            default -> jdk.serialize(value);
+        };
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return read(bytes);
+        } catch (BufferUnderflowException e) {
+            throw new SerializationException("Truncated session value with tag " + bytes[0], e);
+        }
+    }
+
+    private Object read(byte[] bytes) {
+        return switch (bytes[0]) {
+            case STRING -> new String(bytes, 1, bytes.length - 1, StandardCharsets.UTF_8);
+            case INTEGER -> (int) unzigzag(readVarint(ByteBuffer.wrap(bytes, 1, bytes.length - 1)));
+            case LONG -> unzigzag(readVarint(ByteBuffer.wrap(bytes, 1, bytes.length - 1)));
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case DOUBLE -> ByteBuffer.wrap(bytes, 1, bytes.length - 1).getDouble();
+            case INSTANT -> {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+                long seconds = unzigzag(readVarint(buffer));
+                yield Instant.ofEpochSecond(seconds, readVarint(buffer));
+            }
+            case BYTES -> Arrays.copyOfRange(bytes, 1, bytes.length);
+            case JDK_STREAM_MAGIC -> jdk.deserialize(bytes);
+            default -> throw new SerializationException("Unknown session value tag: " + bytes[0]);
+        };
+    }
+
+    private static byte[] tagged(byte tag, byte[] value) {
+        byte[] bytes = new byte[1 + value.length];
+        bytes[0] = tag;
+        System.arraycopy(value, 0, bytes, 1, value.length);
+        return bytes;
+    }
+
+    private static byte[] varint(byte tag, long value) {
+        byte[] bytes = new byte[11];  // Tag and up to 10 bytes of 7 bits
+        bytes[0] = tag;
+        return Arrays.copyOf(bytes, writeVarint(bytes, 1, value));
+    }
+
+    private static byte[] instant(Instant instant) {
+        byte[] bytes = new byte[21];
+        bytes[0] = INSTANT;
+        int end = writeVarint(bytes, 1, zigzag(instant.getEpochSecond()));
+        return Arrays.copyOf(bytes, writeVarint(bytes, end, instant.getNano()));
+    }
+
+    // Returns the index after the written bytes
+    private static int writeVarint(byte[] bytes, int index, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[index++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[index++] = (byte) value;
+        return index;
+    }
+
+    private static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new SerializationException("Malformed varint in session value");
+    }
+
+    // Small negative numbers stay short
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,52 @@
+package com.unravel.part1SessionManagement;
+
+import com.unravel.part1SessionManagement.SessionManager.CustomSessionException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * HTTP endpoints of {@link SessionManager}:
+ * <ul>
+ *     <li>{@code POST /session/login?userId=...}</li>
+ *     <li>{@code GET /session}: the session details</li>
+ *     <li>{@code POST /session/logout}</li>
+ *     <li>{@code POST /session/logout-all}: ends all sessions of the user</li>
+ * </ul>
+ * Requests without a session get 401 with the message of {@link CustomSessionException}.
+ */
+@RestController
+@RequestMapping("/session")
+@RequiredArgsConstructor
+public class SessionController {
+
+    private final SessionManager sessionManager;
+
+    @PostMapping("/login")
+    public String login(@RequestParam String userId, HttpServletRequest request, HttpServletResponse response) {
+        return sessionManager.login(userId, request, response);
+    }
+
+    @GetMapping
+    public String getSessionDetails(HttpServletRequest request) {
+        return sessionManager.getSessionDetails(request);
+    }
+
+    @PostMapping("/logout")
+    public String logout(HttpServletRequest request, HttpServletResponse response) {
+        return sessionManager.logout(request, response);
+    }
+
+    @PostMapping("/logout-all")
+    public String logoutEverywhere(HttpServletRequest request, HttpServletResponse response) {
+        return sessionManager.logoutEverywhere(request, response);
+    }
+
+    @ExceptionHandler(CustomSessionException.class)
+    @ResponseStatus(HttpStatus.UNAUTHORIZED)
+    public String onSessionNotFound(CustomSessionException e) {
+        return e.getMessage();
+    }
+}
@@ -1,21 +1,75 @@
 package com.unravel.part1SessionManagement;
 
+import com.unravel.part1SessionManagement.SessionTokens.SessionToken;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.servlet.http.HttpSession;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.web.http.CookieHttpSessionIdResolver;
+import org.springframework.session.web.http.CookieSerializer;
+import org.springframework.session.web.http.HttpSessionIdResolver;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.*;
 
 @Slf4j
 @Service
 public class SessionManager {
 
+    private final SessionAttributeCache attributeCache;
+    private final LoginGuard loginGuard;
+    private final SessionTokens tokens;
+    private final UserSessionIndex sessionIndex;
+    // Reads the session ID the way Spring Session does, without loading the session
+    private final HttpSessionIdResolver sessionIdResolver;
+
+    /**
+     * Resolves session IDs like {@code SpringHttpSessionConfiguration}: with the application's
+     * {@link HttpSessionIdResolver} if there is one, else from the cookie of its {@link CookieSerializer}, which
+     * Spring Boot configures from {@code server.servlet.session.cookie.*}.
+     */
+    @Autowired
+    public SessionManager(SessionAttributeCache attributeCache, LoginGuard loginGuard, SessionTokens tokens,
+                          UserSessionIndex sessionIndex, ObjectProvider<HttpSessionIdResolver> sessionIdResolver,
+                          ObjectProvider<CookieSerializer> cookieSerializer) {
+        this(attributeCache, loginGuard, tokens, sessionIndex,
+                sessionIdResolver.getIfAvailable(() -> cookieResolver(cookieSerializer.getIfAvailable())));
+    }
+
+    SessionManager(SessionAttributeCache attributeCache, LoginGuard loginGuard, SessionTokens tokens,
+                   UserSessionIndex sessionIndex, HttpSessionIdResolver sessionIdResolver) {
+        this.attributeCache = attributeCache;
+        this.loginGuard = loginGuard;
+        this.tokens = tokens;
+        this.sessionIndex = sessionIndex;
+        this.sessionIdResolver = sessionIdResolver;
+    }
+
     public String login(String userId, HttpSession session) {
         if (session.getAttribute("userId") != null) {
             return "User already logged in.";
         }
         String sessionId = session.getId();
-        session.setAttribute("userId", userId);
+        // The check above and the set below are not atomic, a concurrent login to this session may be in between
+        if (!loginGuard.tryLogin(sessionId, userId, Duration.ofSeconds(session.getMaxInactiveInterval()))) {
+            log.info("Concurrent login to session ID: {} rejected for user {}", sessionId, userId);
+            return "User already logged in.";
+        }
+        try {
+            session.setAttribute("userId", userId);
+            // Indexes the session by user, see UserSessionIndex
+            session.setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, userId);
+        } catch (RuntimeException e) {
+            // With an immediate or async flush the save happens here. A claim without a user would turn away
+            // every later login to the session until it expires
+            loginGuard.release(sessionId);
+            throw e;
+        }
+        attributeCache.invalidate(sessionId);
         log.info("User {} logged in with session ID: {}", userId, session.getId());
 
         return "Login successful. Session ID: " + sessionId;
@@ -24,22 +78,120 @@ public class SessionManager {
     public String logout(HttpSession session) {
         String sessionId = session.getId();
         session.invalidate();
+        attributeCache.invalidate(sessionId);
+        loginGuard.release(sessionId);
         log.info("Logout successful for session ID: {}", sessionId);
 
         return "Logout successful.";
     }
 
+    /**
+     * Logs in with the request's session or, in the stateless mode of {@link SessionTokens}, with a signed token that
+     * is sent back as a cookie and also accepted as a bearer token.
+     */
+    public String login(String userId, HttpServletRequest request, HttpServletResponse response) {
+        if (!tokens.enabled()) {
+            return login(userId, request.getSession());
+        }
+        if (tokens.verify(request) != null) {
+            return "User already logged in.";
+        }
+        SessionToken token = tokens.issue(userId, request, response);
+        log.info("User {} logged in with token ID: {}", userId, token.id());
+
+        return "Login successful. Session ID: " + token.id();
+    }
+
+    /**
+     * Logs out the request's session or, in the stateless mode, revokes its token on all nodes.
+     */
+    public String logout(HttpServletRequest request, HttpServletResponse response) {
+        if (!tokens.enabled()) {
+            HttpSession session = request.getSession(false);
+            if (session == null) {
+                throw new CustomSessionException("Session not found");
+            }
+            return logout(session);
+        }
+        SessionToken token = tokens.verify(request);
+        if (token == null) {
+            throw new CustomSessionException("Session not found");
+        }
+        tokens.revoke(token, request, response);
+        log.info("Logout successful for token ID: {}", token.id());
+
+        return "Logout successful.";
+    }
+
+    /**
+     * Logs the user of the request's session out of all their sessions, on all nodes. Signed tokens are not indexed
+     * by user, so in the stateless mode only the request's token is revoked.
+     */
+    public String logoutEverywhere(HttpServletRequest request, HttpServletResponse response) {
+        if (tokens.enabled()) {
+            return logout(request, response);
+        }
+        HttpSession session = request.getSession(false);
+        String userId = session == null ? null : (String) session.getAttribute("userId");
+        if (userId == null) {
+            throw new CustomSessionException("Session not found");
+        }
+        logout(session);
+        int others = sessionIndex.invalidateAll(userId);
+        log.info("User {} logged out of {} other sessions", userId, others);
+
+        return "Logout successful. Sessions ended: " + (others + 1);
+    }
+
     public String getSessionDetails(HttpSession session) {
-        String userId = (String) session.getAttribute("userId");
+        String userId = (String) attributeCache.get(session, "userId");
         if (userId == null) {
             throw new CustomSessionException("Session not found");
         }
         return "Session ID for user " + userId + ": " + session.getId();
     }
 
-    class CustomSessionException extends RuntimeException {
+    /**
+     * Same as {@link #getSessionDetails(HttpSession)}, but answered from the local attribute cache when possible,
+     * in which case the session is not loaded from Redis at all. In the stateless mode, answered from the token.
+     */
+    public String getSessionDetails(HttpServletRequest request) {
+        if (tokens.enabled()) {
+            // Verified locally, no I/O at all
+            SessionToken token = tokens.verify(request);
+            if (token == null) {
+                throw new CustomSessionException("Session not found");
+            }
+            return "Session ID for user " + token.userId() + ": " + token.id();
+        }
+        for (String sessionId : sessionIdResolver.resolveSessionIds(request)) {
+            String userId = (String) attributeCache.get(sessionId, "userId");
+            if (userId != null) {
+                return "Session ID for user " + userId + ": " + sessionId;
+            }
+        }
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            throw new CustomSessionException("Session not found");
+        }
+        return getSessionDetails(session);
+    }
+
+    private static HttpSessionIdResolver cookieResolver(CookieSerializer cookieSerializer) {
+        CookieHttpSessionIdResolver resolver = new CookieHttpSessionIdResolver();
+        if (cookieSerializer != null) {
+            resolver.setCookieSerializer(cookieSerializer);
+        }
+        return resolver;
+    }
+
+    /**
+     * An expected outcome of requests without a session, answered with 401 by {@link SessionController}. It carries no
+     * stack trace, which would be the most expensive part of such a request.
+     */
+    static class CustomSessionException extends RuntimeException {
         public CustomSessionException(String message) {
-            super(message);
+            super(message, null, false, false);
         }
     }
-}
\ No newline at end of file
+}
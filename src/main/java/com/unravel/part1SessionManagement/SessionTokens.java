@@ -0,0 +1,260 @@
+package com.unravel.part1SessionManagement;
+
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signed session tokens for the stateless mode of {@link SessionManager}, enabled with {@code session.token.enabled}.
+ * <p>
+ * A token carries the user ID, its expiry and a random token ID, signed with HMAC-SHA256, so it is verified on any node
+ * without I/O. Only the revocations of logged out tokens are shared, through {@link TokenRevocations}. Tokens do not
+ * slide like sessions: they expire {@code session.token.ttl} after login.
+ * <p>
+ * Signing keys rotate every {@code session.token.key-rotation}. The key of each period is derived from
+ * {@code session.token.secret} and the period number, so all nodes with the same secret agree on the keys without
+ * sharing them. A token names the period it was signed in, and keys of periods older than the token lifetime are
+ * not accepted.
+ */
+@Slf4j
+@Component
+public class SessionTokens {
+    static final String COOKIE_NAME = "SESSION_TOKEN";
+    private static final String BEARER = "Bearer ";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int TOKEN_ID_BYTES = 12;
+    private static final int MAC_BYTES = 16;  // Truncated HMAC-SHA256, still 128 bits against forgery
+    // Version, key period, expiry in epoch seconds, token ID, then the user ID
+    private static final int HEADER_BYTES = 1 + Integer.BYTES + Integer.BYTES + TOKEN_ID_BYTES;
+    private static final int MAX_TOKEN_LENGTH = 1024;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final boolean enabled;
+    private final byte[] secret;
+    private final Duration timeToLive;
+    private final long rotationSeconds;
+    private final TokenRevocations revocations;
+    private final Clock clock;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<Long, SecretKeySpec> keys = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(SessionTokens::newMac);
+
+    @Autowired
+    public SessionTokens(@Value("${session.token.enabled:false}") boolean enabled,
+                         @Value("${session.token.secret:}") String secret,
+                         @Value("${session.token.ttl:30m}") Duration timeToLive,
+                         @Value("${session.token.key-rotation:1h}") Duration keyRotation,
+                         ObjectProvider<TokenRevocations> revocations) {
+        this(enabled, secretBytes(enabled, secret), timeToLive, keyRotation,
+                revocations.getIfAvailable(() -> TokenRevocations.NONE), Clock.systemUTC());
+    }
+
+    SessionTokens(boolean enabled, byte[] secret, Duration timeToLive, Duration keyRotation,
+                  TokenRevocations revocations, Clock clock) {
+        this.enabled = enabled;
+        this.secret = secret;
+        this.timeToLive = timeToLive;
+        this.rotationSeconds = keyRotation.toSeconds();
+        this.revocations = revocations;
+        this.clock = clock;
+    }
+
+    /**
+     * Whether {@link SessionManager} uses tokens instead of Redis sessions.
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public SessionToken issue(String userId) {
+        long now = clock.instant().getEpochSecond();
+        long expiresAt = now + timeToLive.toSeconds();
+        byte[] tokenId = new byte[TOKEN_ID_BYTES];
+        random.nextBytes(tokenId);
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        long period = now / rotationSeconds;
+        byte[] payload = ByteBuffer.allocate(HEADER_BYTES + user.length)
+                .put(VERSION)
+                .putInt((int) period)
+                .putInt((int) expiresAt)
+                .put(tokenId)
+                .put(user)
+                .array();
+        String value = ENCODER.encodeToString(payload) + "." + ENCODER.encodeToString(sign(period, payload));
+        return new SessionToken(ENCODER.encodeToString(tokenId), userId, Instant.ofEpochSecond(expiresAt), value);
+    }
+
+    /**
+     * Issues a token and sends it as an HTTP-only cookie.
+     */
+    public SessionToken issue(String userId, HttpServletRequest request, HttpServletResponse response) {
+        SessionToken token = issue(userId);
+        addCookie(response, request, token.value(), Duration.between(clock.instant(), token.expiresAt()));
+        return token;
+    }
+
+    /**
+     * @return the token, or {@code null} if it is malformed, forged, expired or revoked
+     */
+    public SessionToken verify(String value) {
+        if (value == null || value.length() > MAX_TOKEN_LENGTH) {
+            return null;
+        }
+        int dot = value.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] mac;
+        try {
+            payload = DECODER.decode(value.substring(0, dot));
+            mac = DECODER.decode(value.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (payload.length < HEADER_BYTES || payload[0] != VERSION || mac.length != MAC_BYTES) {
+            return null;
+        }
+        ByteBuffer fields = ByteBuffer.wrap(payload, 1, HEADER_BYTES - 1);
+        long period = Integer.toUnsignedLong(fields.getInt());
+        long expiresAt = Integer.toUnsignedLong(fields.getInt());
+        long now = clock.instant().getEpochSecond();
+        // Bounds the keys a forged token can make us derive. A node whose clock is ahead may sign one period early
+        if (period > now / rotationSeconds + 1 || period < (now - timeToLive.toSeconds()) / rotationSeconds) {
+            return null;
+        }
+        if (!MessageDigest.isEqual(sign(period, payload), mac) || expiresAt <= now) {
+            return null;
+        }
+        String tokenId = ENCODER.encodeToString(Arrays.copyOfRange(payload, HEADER_BYTES - TOKEN_ID_BYTES,
+                HEADER_BYTES));
+        if (revocations.isRevoked(tokenId)) {
+            return null;
+        }
+        String userId = new String(payload, HEADER_BYTES, payload.length - HEADER_BYTES, StandardCharsets.UTF_8);
+        return new SessionToken(tokenId, userId, Instant.ofEpochSecond(expiresAt), value);
+    }
+
+    /**
+     * Verifies the token of a request, sent as {@code Authorization: Bearer <token>} or in the cookie.
+     */
+    public SessionToken verify(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (authorization != null && authorization.startsWith(BEARER)) {
+            return verify(authorization.substring(BEARER.length()));
+        }
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (COOKIE_NAME.equals(cookie.getName())) {
+                    return verify(cookie.getValue());
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Revokes the token on all nodes and removes the cookie.
+     */
+    public void revoke(SessionToken token, HttpServletRequest request, HttpServletResponse response) {
+        revocations.revoke(token.id(), Duration.between(clock.instant(), token.expiresAt()));
+        addCookie(response, request, "", Duration.ZERO);
+    }
+
+    private void addCookie(HttpServletResponse response, HttpServletRequest request, String value, Duration maxAge) {
+        ResponseCookie cookie = ResponseCookie.from(COOKIE_NAME, value)
+                .httpOnly(true)
+                .secure(request.isSecure())
+                .sameSite("Lax")
+                .path("/")
+                .maxAge(maxAge)
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    private byte[] sign(long period, byte[] payload) {
+        Mac mac = macs.get();
+        try {
+            mac.init(key(period));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+        return Arrays.copyOf(mac.doFinal(payload), MAC_BYTES);
+    }
+
+    private SecretKeySpec key(long period) {
+        SecretKeySpec key = keys.get(period);
+        if (key == null) {
+            long oldest = (clock.instant().getEpochSecond() - timeToLive.toSeconds()) / rotationSeconds;
+            keys.keySet().removeIf(p -> p < oldest);
+            key = keys.computeIfAbsent(period, this::deriveKey);
+        }
+        return key;
+    }
+
+    private SecretKeySpec deriveKey(long period) {
+        Mac mac = newMac();
+        try {
+            mac.init(new SecretKeySpec(secret, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+        }
+        byte[] key = mac.doFinal(("session-token-key:" + period).getBytes(StandardCharsets.UTF_8));
+        return new SecretKeySpec(key, ALGORITHM);
+    }
+
+    private static Mac newMac() {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    // A key of this node alone would fail tokens on every other node and after a restart. Disabled tokens are never
+    // issued or verified, so a random key only fills the field then
+    private static byte[] secretBytes(boolean enabled, String secret) {
+        if (!secret.isEmpty()) {
+            return secret.getBytes(StandardCharsets.UTF_8);
+        }
+        if (enabled) {
+            throw new IllegalStateException("session.token.secret must be set when session.token.enabled is true,"
+                    + " all nodes need the same secret to verify tokens");
+        }
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return random;
+    }
+
+    /**
+     * @param id    random ID of the token, the session ID of the stateless mode
+     * @param value the signed token as sent to the client
+     */
+    public record SessionToken(String id, String userId, Instant expiresAt, String value) {
+    }
+}
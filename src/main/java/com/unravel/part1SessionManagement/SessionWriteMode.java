@@ -0,0 +1,21 @@
+package com.unravel.part1SessionManagement;
+
+/**
+ * How a request's session changes are written to Redis when Spring Session saves the session.
+ */
+public enum SessionWriteMode {
+    /**
+     * One command after the other, each waiting for its reply. The behavior of plain Spring Session.
+     */
+    IMMEDIATE,
+    /**
+     * All commands of the save (attribute delta, TTL touch, expiration index) sent as one pipelined batch,
+     * so the request waits for a single round trip.
+     */
+    PIPELINED,
+    /**
+     * The pipelined batch is sent by a background writer, so the response does not wait for Redis at all.
+     * Another node may read the session before the write has landed.
+     */
+    ASYNC
+}
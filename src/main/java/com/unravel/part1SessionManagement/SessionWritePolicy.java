@@ -0,0 +1,79 @@
+package com.unravel.part1SessionManagement;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.session.web.http.SessionRepositoryFilter;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Chooses the {@link SessionWriteMode} for each request by its path, for {@link PipelinedSessionRepository}.
+ * <p>
+ * Paths are Ant patterns relative to the context path, e.g. {@code /api/sessions/**}. Immediate paths win over
+ * async paths, other requests use the default mode. The filter runs around Spring Session's filter, which saves
+ * the session on the way out, so the mode is still set when the save happens.
+ */
+@Component
+@Order(SessionRepositoryFilter.DEFAULT_ORDER - 1)
+public class SessionWritePolicy extends OncePerRequestFilter {
+    private final SessionWriteMode defaultMode;
+    private final List<String> immediatePaths;
+    private final List<String> asyncPaths;
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    private final ThreadLocal<SessionWriteMode> current = new ThreadLocal<>();
+
+    public SessionWritePolicy(@Value("${session.write.mode:PIPELINED}") SessionWriteMode defaultMode,
+                              @Value("${session.write.immediate-paths:}") List<String> immediatePaths,
+                              @Value("${session.write.async-paths:}") List<String> asyncPaths) {
+        this.defaultMode = defaultMode;
+        this.immediatePaths = immediatePaths;
+        this.asyncPaths = asyncPaths;
+    }
+
+    /**
+     * The mode for the request being handled on this thread, or the default mode outside of a request.
+     */
+    public SessionWriteMode current() {
+        SessionWriteMode mode = current.get();
+        return mode == null ? defaultMode : mode;
+    }
+
+    public SessionWriteMode modeFor(String path) {
+        if (matches(immediatePaths, path)) {
+            return SessionWriteMode.IMMEDIATE;
+        }
+        if (matches(asyncPaths, path)) {
+            return SessionWriteMode.ASYNC;
+        }
+        return defaultMode;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        current.set(modeFor(request.getRequestURI().substring(request.getContextPath().length())));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            current.remove();
+        }
+    }
+
+    private boolean matches(List<String> patterns, String path) {
+        for (String pattern : patterns) {
+            if (pathMatcher.match(pattern.trim(), path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,31 @@
+package com.unravel.part1SessionManagement;
+
+import java.time.Duration;
+
+/**
+ * Signed session tokens that were logged out before they expired. Checks are answered locally, so verifying a token
+ * needs no I/O.
+ */
+public interface TokenRevocations {
+
+    /**
+     * Nothing is ever revoked, for when the token mode is off and no token is issued.
+     */
+    TokenRevocations NONE = new TokenRevocations() {
+        @Override
+        public void revoke(String tokenId, Duration remaining) {
+        }
+
+        @Override
+        public boolean isRevoked(String tokenId) {
+            return false;
+        }
+    };
+
+    /**
+     * @param remaining how long the token would still be valid, after which it need not be remembered
+     */
+    void revoke(String tokenId, Duration remaining);
+
+    boolean isRevoked(String tokenId);
+}
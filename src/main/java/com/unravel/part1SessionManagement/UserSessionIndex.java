@@ -0,0 +1,90 @@
+package com.unravel.part1SessionManagement;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The sessions of each user, from the principal index that Spring Session keeps in Redis: a set
+ * {@code <namespace>:index:<PRINCIPAL_NAME_INDEX_NAME>:<user id>} of session IDs. {@link SessionManager#login} puts the
+ * user into the session's {@link FindByIndexNameSessionRepository#PRINCIPAL_NAME_INDEX_NAME} attribute, which adds the
+ * session to the set when the session is saved. Logout and expiry remove it again.
+ * <p>
+ * Listing and invalidating the sessions of a user reads only that user's set, not the keys of all sessions.
+ * Invalidation is one pipeline for any number of sessions. It does what {@link RedisIndexedSessionRepository#deleteById}
+ * does, without loading each session first:
+ * <ul>
+ *     <li>The session's max inactive interval is set to zero, so it is expired for every node from then on.</li>
+ *     <li>Its expiration key is deleted, which makes Redis notify every node, and they publish
+ *     {@link org.springframework.session.events.SessionDeletedEvent}s.</li>
+ *     <li>The session is dropped from the attribute caches and from the user's set.</li>
+ * </ul>
+ * The session hashes themselves expire on their own schedule, like those of expired sessions. A save of a session
+ * that was loaded before does not bring it back, as it leaves the interval unchanged.
+ */
+@Slf4j
+@Component
+public class UserSessionIndex {
+    // Hash field of Spring Session's RedisSessionMapper, which does not expose it
+    static final String MAX_INACTIVE_INTERVAL_KEY = "maxInactiveInterval";
+
+    private final RedisOperations<String, Object> redis;
+    private final SessionAttributeCache attributeCache;
+    private final String namespace;
+
+    public UserSessionIndex(RedisIndexedSessionRepository sessions, SessionAttributeCache attributeCache,
+                            @Value("${spring.session.redis.namespace:" + RedisIndexedSessionRepository.DEFAULT_NAMESPACE
+                                    + "}") String namespace) {
+        this.redis = sessions.getSessionRedisOperations();
+        this.attributeCache = attributeCache;
+        this.namespace = namespace + ":";
+    }
+
+    /**
+     * IDs of the user's sessions, in one round trip. May include sessions that expired in the last minute.
+     */
+    public Set<String> sessionIds(String userId) {
+        Set<Object> members = redis.opsForSet().members(principalKey(userId));
+        return members == null ? Set.of() : members.stream().map(String::valueOf).collect(Collectors.toSet());
+    }
+
+    /**
+     * Invalidates all sessions of the user in two round trips: the lookup and one pipeline.
+     *
+     * @return the number of sessions invalidated
+     */
+    public int invalidateAll(String userId) {
+        Set<String> sessionIds = sessionIds(userId);
+        if (sessionIds.isEmpty()) {
+            return 0;
+        }
+        redis.executePipelined(new SessionCallback<>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                // The connection is bound to this thread, so the invalidation messages join the pipeline too
+                for (String sessionId : sessionIds) {
+                    redis.opsForHash().put(namespace + "sessions:" + sessionId,
+                            MAX_INACTIVE_INTERVAL_KEY, 0);
+                    redis.delete(namespace + "sessions:expires:" + sessionId);
+                    attributeCache.invalidate(sessionId);
+                }
+                // Sessions of a login that raced with the lookup stay in the set, and valid
+                redis.opsForSet().remove(principalKey(userId), sessionIds.toArray());
+                return null;
+            }
+        });
+        log.info("Invalidated {} sessions of user {}", sessionIds.size(), userId);
+        return sessionIds.size();
+    }
+
+    private String principalKey(String userId) {
+        return namespace + "index:" + FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME + ":" + userId;
+    }
+}
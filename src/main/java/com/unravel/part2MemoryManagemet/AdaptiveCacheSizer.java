@@ -0,0 +1,187 @@
+package com.unravel.part2MemoryManagemet;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the maximum weight of {@link MemoryManager}'s local cache with the heap occupancy, instead of a fixed limit
+ * that only fits one heap size.
+ * <p>
+ * After every collection of the old generation, the heap used after the collection (from the GC notification) is
+ * compared to the maximum heap. Young collections are skipped: the old generation still holds all garbage that was
+ * promoted since its last collection, so their figure grows until then even when the live data does not.
+ * Above the high watermark the limit shrinks by a quarter, which makes Caffeine evict the least valuable data.
+ * Below the low watermark, and only while the cache is close to its limit, the limit grows by a tenth.
+ * The limit always stays between a floor and half of the maximum heap.
+ */
+@Slf4j
+@Component
+public class AdaptiveCacheSizer implements NotificationListener, MeterBinder, InitializingBean, DisposableBean {
+    static final long MIN_WEIGHT_BYTES = 16L * 1024 * 1024;
+    static final double SHRINK_FACTOR = 0.75;
+    static final double GROW_FACTOR = 1.1;
+    // Grow only when the cache uses most of its limit, an idle cache gains nothing from a larger one
+    static final double GROW_WHEN_FULL = 0.9;
+    // GC action of young collections, for all collectors of HotSpot
+    static final String MINOR_GC_ACTION = "end of minor GC";
+
+    private final Policy.Eviction<String, ?> eviction;
+    private final long floor;
+    private final long ceiling;
+    private final double lowWatermark;
+    private final double highWatermark;
+    private final Set<String> heapPools;
+    private final LongAdder shrinks = new LongAdder();
+    private final LongAdder grows = new LongAdder();
+    private volatile double lastOccupancy = Double.NaN;
+
+    @Autowired
+    public AdaptiveCacheSizer(MemoryManager memoryManager,
+                              @Value("${session.data.cache.low-watermark:0.5}") double lowWatermark,
+                              @Value("${session.data.cache.high-watermark:0.75}") double highWatermark) {
+        this(memoryManager, MIN_WEIGHT_BYTES, Runtime.getRuntime().maxMemory() / 2, lowWatermark, highWatermark);
+    }
+
+    AdaptiveCacheSizer(MemoryManager memoryManager, long floor, long ceiling, double lowWatermark,
+                       double highWatermark) {
+        if (floor <= 0 || ceiling < floor || lowWatermark >= highWatermark) {
+            throw new IllegalArgumentException("Invalid bounds: " + floor + ".." + ceiling
+                    + ", watermarks " + lowWatermark + ".." + highWatermark);
+        }
+        this.eviction = memoryManager.eviction();
+        this.floor = floor;
+        this.ceiling = ceiling;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getName)
+                .collect(Collectors.toSet());
+        eviction.setMaximum(Math.clamp(eviction.getMaximum(), floor, ceiling));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(this, null, null);
+            }
+        }
+        log.info("Adapting session data cache between {} MB and {} MB, starting at {} MB",
+                floor >> 20, ceiling >> 20, limit() >> 20);
+    }
+
+    @Override
+    public void destroy() {
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                try {
+                    emitter.removeNotificationListener(this);
+                } catch (ListenerNotFoundException e) {
+                    // Not registered, nothing to remove
+                }
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        if (!isOldCollection(info.getGcAction())) {
+            return;
+        }
+        long usedAfterGc = 0;
+        for (var pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            if (heapPools.contains(pool.getKey())) {
+                usedAfterGc += pool.getValue().getUsed();
+            }
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long maxHeap = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        onHeapOccupancy((double) usedAfterGc / maxHeap);
+    }
+
+    /**
+     * Whether a collection with this action collected the old generation: a full or major collection, or the end of
+     * a concurrent cycle.
+     */
+    static boolean isOldCollection(String gcAction) {
+        return !MINOR_GC_ACTION.equals(gcAction);
+    }
+
+    /**
+     * Adjusts the limit for the share of the maximum heap that is still used after a collection.
+     */
+    synchronized void onHeapOccupancy(double occupancy) {
+        lastOccupancy = occupancy;
+        long limit = eviction.getMaximum();
+        long next = limit;
+        if (occupancy > highWatermark) {
+            next = Math.max(floor, (long) (limit * SHRINK_FACTOR));
+        } else if (occupancy < lowWatermark && eviction.weightedSize().orElse(0) >= limit * GROW_WHEN_FULL) {
+            next = Math.min(ceiling, (long) (limit * GROW_FACTOR));
+        }
+        if (next == limit) {
+            return;
+        }
+        (next < limit ? shrinks : grows).increment();
+        eviction.setMaximum(next);
+        log.info("Heap {}% used after GC, session data cache limit {} MB -> {} MB",
+                Math.round(occupancy * 100), limit >> 20, next >> 20);
+    }
+
+    /**
+     * Current maximum weight of the cache in bytes.
+     */
+    public long limit() {
+        return eviction.getMaximum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("session.data.cache.limit", this, AdaptiveCacheSizer::limit)
+                .description("Current maximum weight of the session data cache")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("session.data.heap.occupancy", this, sizer -> sizer.lastOccupancy)
+                .description("Share of the maximum heap still used after the last GC")
+                .register(registry);
+        registerAdjustments(registry, "shrink", shrinks);
+        registerAdjustments(registry, "grow", grows);
+    }
+
+    private static void registerAdjustments(MeterRegistry registry, String direction, LongAdder count) {
+        FunctionCounter.builder("session.data.cache.adjustments", count, LongAdder::sum)
+                .description("Changes of the session data cache limit")
+                .tag("direction", direction)
+                .register(registry);
+    }
+}
@@ -0,0 +1,131 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Large payload split into fixed-size pages that are allocated or loaded from a {@link PageSource} on first access,
+ * and evicted one by one by the {@link ChunkedPayloadCache} that created it. Its heap footprint follows the pages
+ * that are in use rather than its length.
+ * <p>
+ * Reads and writes may come from several threads. Each page is copied under its own lock, so an access that stays
+ * within one page is atomic; one that spans pages is not.
+ */
+public final class ChunkedPayload implements Closeable {
+    private final ChunkedPayloadCache cache;
+    private final long length;
+    private final int pageSize;
+    private final PageSource source;
+    private final AtomicLong residentBytes = new AtomicLong();
+    private volatile boolean closed;
+
+    ChunkedPayload(ChunkedPayloadCache cache, long length, int pageSize, PageSource source) {
+        this.cache = cache;
+        this.length = length;
+        this.pageSize = pageSize;
+        this.source = source;
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Bytes of this payload's pages that are currently on the heap.
+     */
+    public long residentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * Copies {@code count} bytes starting at {@code offset} into {@code dst}.
+     */
+    public void read(long offset, byte[] dst, int dstOffset, int count) {
+        checkRange(offset, dst, dstOffset, count);
+        while (count > 0) {
+            int index = (int) (offset / pageSize);
+            int inPage = (int) (offset % pageSize);
+            int chunk = Math.min(count, pageSize - inPage);
+            ChunkedPayloadCache.Page page = cache.page(this, index);
+            // An evicted page still holds valid content, writes to it are stored back or retried
+            synchronized (page) {
+                System.arraycopy(page.data, inPage, dst, dstOffset, chunk);
+            }
+            offset += chunk;
+            dstOffset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Copies {@code count} bytes from {@code src} into the payload, starting at {@code offset}.
+     */
+    public void write(long offset, byte[] src, int srcOffset, int count) {
+        checkRange(offset, src, srcOffset, count);
+        while (count > 0) {
+            int index = (int) (offset / pageSize);
+            int inPage = (int) (offset % pageSize);
+            int chunk = Math.min(count, pageSize - inPage);
+            if (!writePage(index, inPage, src, srcOffset, chunk)) {
+                continue;  // The page was evicted before the write got in, write to the reloaded page
+            }
+            offset += chunk;
+            srcOffset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Drops the resident pages without storing them, and closes the source.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        int pageCount = (int) ((length + pageSize - 1) / pageSize);
+        for (int i = 0; i < pageCount; i++) {
+            cache.discard(this, i);
+        }
+        source.close();
+    }
+
+    PageSource source() {
+        return source;
+    }
+
+    int pageLength(int index) {
+        return (int) Math.min(pageSize, length - (long) index * pageSize);
+    }
+
+    void pageLoaded(int bytes) {
+        residentBytes.addAndGet(bytes);
+    }
+
+    void pageReleased(int bytes) {
+        residentBytes.addAndGet(-bytes);
+    }
+
+    private boolean writePage(int index, int inPage, byte[] src, int srcOffset, int count) {
+        ChunkedPayloadCache.Page page = cache.page(this, index);
+        synchronized (page) {
+            if (page.evicted) {
+                return false;
+            }
+            System.arraycopy(src, srcOffset, page.data, inPage, count);
+            page.dirty = true;
+            return true;
+        }
+    }
+
+    private void checkRange(long offset, byte[] array, int arrayOffset, int count) {
+        if (closed) {
+            throw new IllegalStateException("Payload is closed");
+        }
+        Objects.checkFromIndexSize(arrayOffset, count, array.length);
+        Objects.checkFromIndexSize(offset, count, length);
+    }
+}
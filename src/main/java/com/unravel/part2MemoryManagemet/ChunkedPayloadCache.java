@@ -0,0 +1,132 @@
+package com.unravel.part2MemoryManagemet;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Keeps the resident pages of any number of {@link ChunkedPayload}s within one byte budget.
+ * <p>
+ * Pages are the unit of eviction, so a payload that is mostly cold only keeps the pages that are actually used.
+ * An evicted page that was modified is stored back to its payload's {@link PageSource} before the page can be
+ * loaded again: the eviction listener runs inside Caffeine's atomic removal, which blocks a concurrent load of
+ * the same page until the write-back is done.
+ */
+@Slf4j
+public class ChunkedPayloadCache {
+    static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+
+    private final int pageSize;
+    private final Cache<PageKey, Page> pages;
+
+    public ChunkedPayloadCache(long budgetBytes) {
+        this(budgetBytes, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * @param budgetBytes maximum bytes of resident pages over all payloads
+     * @param pageSize    size of a page, a payload keeps less than one page more than it uses
+     */
+    public ChunkedPayloadCache(long budgetBytes, int pageSize) {
+        if (pageSize <= 0 || budgetBytes < pageSize) {
+            throw new IllegalArgumentException("Budget must hold at least one page: " + budgetBytes + " / " + pageSize);
+        }
+        this.pageSize = pageSize;
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(budgetBytes)
+                .weigher((PageKey key, Page page) -> page.data.length)
+                .evictionListener(ChunkedPayloadCache::onEviction)
+                .executor(Runnable::run)  // Evict on the loading thread, so the budget holds when it returns
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Creates a payload of {@code length} bytes. Nothing is allocated until its pages are accessed.
+     * The payload takes ownership of {@code source} and closes it with the payload.
+     */
+    public ChunkedPayload create(long length, PageSource source) {
+        if (length < 0 || (length + pageSize - 1) / pageSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Unsupported payload length: " + length);
+        }
+        return new ChunkedPayload(this, length, pageSize, source);
+    }
+
+    public int pageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Bytes of all resident pages.
+     */
+    public long residentBytes() {
+        return pages.policy().eviction().orElseThrow().weightedSize().orElseThrow();
+    }
+
+    /**
+     * Number of pages evicted to stay within the budget.
+     */
+    public long evictionCount() {
+        return pages.stats().evictionCount();
+    }
+
+    Page page(ChunkedPayload payload, int index) {
+        return pages.get(new PageKey(payload, index), ChunkedPayloadCache::load);
+    }
+
+    // Drops the page without storing it back, the payload is being discarded
+    void discard(ChunkedPayload payload, int index) {
+        Page page = pages.asMap().remove(new PageKey(payload, index));
+        if (page != null) {
+            synchronized (page) {
+                page.evicted = true;
+            }
+            payload.pageReleased(page.data.length);
+        }
+    }
+
+    private static Page load(PageKey key) {
+        byte[] data = new byte[key.payload.pageLength(key.index)];
+        try {
+            key.payload.source().load(key.index, data);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load page " + key.index, e);
+        }
+        key.payload.pageLoaded(data.length);
+        return new Page(data);
+    }
+
+    private static void onEviction(PageKey key, Page page, RemovalCause cause) {
+        synchronized (page) {
+            page.evicted = true;
+            if (page.dirty) {
+                try {
+                    key.payload.source().store(key.index, page.data);
+                } catch (IOException e) {
+                    // The page is gone from the cache either way, so its changes are lost
+                    log.error("Could not store evicted page {}", key.index, e);
+                }
+            }
+        }
+        key.payload.pageReleased(page.data.length);
+    }
+
+    // The payload is compared by identity, so payloads never share pages
+    private record PageKey(ChunkedPayload payload, int index) {
+    }
+
+    static final class Page {
+        final byte[] data;
+        // Both guarded by the page's monitor
+        boolean dirty;
+        boolean evicted;
+
+        private Page(byte[] data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.unravel.part2MemoryManagemet;
+
+/**
+ * Compresses {@link MemoryManager} data in the local cache and in the second tier. Implementations must be
+ * thread-safe. The {@link #id()} is stored with every compressed payload, so it must never be reused for another
+ * format.
+ */
+public interface CompressionCodec {
+
+    /**
+     * Stores data as it is.
+     */
+    CompressionCodec NONE = new CompressionCodec() {
+        @Override
+        public byte id() {
+            return 0;
+        }
+
+        @Override
+        public String name() {
+            return "none";
+        }
+
+        @Override
+        public byte[] compress(byte[] data) {
+            return data;
+        }
+
+        @Override
+        public byte[] decompress(byte[] compressed, int length) {
+            return compressed;
+        }
+    };
+
+    byte id();
+
+    String name();
+
+    byte[] compress(byte[] data);
+
+    /**
+     * @param length size of the original data
+     */
+    byte[] decompress(byte[] compressed, int length);
+
+    /**
+     * The built-in codec with the given name: {@code none} or {@code deflate} (fastest level).
+     */
+    static CompressionCodec forName(String name) {
+        return switch (name.toLowerCase()) {
+            case "none" -> NONE;
+            case "deflate" -> DeflateCodec.FASTEST;
+            default -> throw new IllegalArgumentException("Unknown compression codec: " + name);
+        };
+    }
+
+    /**
+     * The built-in codec with the given ID, for payloads written by another node.
+     */
+    static CompressionCodec forId(byte id) {
+        return switch (id) {
+            case 0 -> NONE;
+            case DeflateCodec.ID -> DeflateCodec.FASTEST;
+            default -> throw new IllegalArgumentException("Unknown compression codec ID: " + id);
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link CompressionCodec} on the JDK's {@link Deflater}. Every level decompresses with the same {@link Inflater},
+ * so they all share one ID.
+ */
+public class DeflateCodec implements CompressionCodec {
+    static final byte ID = 1;
+    static final DeflateCodec FASTEST = new DeflateCodec(Deflater.BEST_SPEED);
+
+    private final int level;
+
+    /**
+     * @param level 1 (fastest) to 9 (smallest)
+     */
+    public DeflateCodec(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Deflate level must be 1..9: " + level);
+        }
+        this.level = level;
+    }
+
+    @Override
+    public byte id() {
+        return ID;
+    }
+
+    @Override
+    public String name() {
+        return "deflate";
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 8));
+            byte[] chunk = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] compressed, int length) {
+        byte[] data = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflatedTotal = 0;
+            while (inflatedTotal < length && !inflater.finished()) {
+                int inflated = inflater.inflate(data, inflatedTotal, length - inflatedTotal);
+                if (inflated == 0 && inflater.needsInput()) {
+                    throw new IllegalArgumentException("Compressed session data is truncated");
+                }
+                inflatedTotal += inflated;
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed session data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link PageSource} backed by a file, page {@code i} at offset {@code i * pageSize}. The file is written
+ * sparsely, so pages that were never stored take no disk space and read as zeros.
+ */
+public class FilePageSource implements PageSource {
+    private final FileChannel channel;
+    private final int pageSize;
+
+    public FilePageSource(Path file, int pageSize) throws IOException {
+        this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                pageSize);
+    }
+
+    private FilePageSource(FileChannel channel, int pageSize) {
+        this.channel = channel;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * A source over a new file in {@code directory} that is deleted when the source is closed.
+     */
+    public static FilePageSource temporary(Path directory, int pageSize) throws IOException {
+        Path file = Files.createTempFile(directory, "payload-", ".pages");
+        return new FilePageSource(FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE), pageSize);
+    }
+
+    @Override
+    public void load(int index, byte[] page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        long position = (long) index * pageSize;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;  // Past the end of the file, the rest stays zero
+            }
+        }
+    }
+
+    @Override
+    public void store(int index, byte[] page) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        long position = (long) index * pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
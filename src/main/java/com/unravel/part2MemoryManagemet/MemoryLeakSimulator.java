@@ -1,12 +1,52 @@
 package com.unravel.part2MemoryManagemet;
 
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+
+/**
+ * Adds 1000 sessions of 10 MB each, 20 ms apart, and prints GC counts and pause times at the end.
+ * <p>
+ * Run with {@code heap} (default) to load {@link MemoryManager}'s on-heap cache, or with {@code offheap}
+ * to load an {@link OffHeapSessionDataStore} with a 512 MB budget. Compare both with the same heap settings,
+ * e.g. {@code -Xmx1g -Xlog:gc}.
+ */
 public class MemoryLeakSimulator {
+    private static final int SESSIONS = 1000;
+    private static final int SESSION_DATA_SIZE = 10 * 1024 * 1024;  // 10MB
+    private static final long OFF_HEAP_BUDGET = 512L * 1024 * 1024;
+
     public static void main(String[] args) throws InterruptedException {
-        for (int i = 0; i < 1000; i++) {
-            MemoryManager.addSessionData("sess-" + i);
+        boolean offHeap = args.length > 0 && args[0].equalsIgnoreCase("offheap");
+        OffHeapSessionDataStore store = offHeap ? new OffHeapSessionDataStore(OFF_HEAP_BUDGET) : null;
+        MemoryManager memoryManager = offHeap ? null : new MemoryManager(MemoryManager.DEFAULT_SESSION_TIMEOUT);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < SESSIONS; i++) {
+            if (offHeap) {
+                store.allocate("sess-" + i, SESSION_DATA_SIZE);
+            } else {
+                memoryManager.addSessionData("sess-" + i);
+            }
             System.out.println("added " + i);
             Thread.sleep(20);
         }
         System.out.println("finished adding large SessionData.");
+        printGcStats(offHeap ? "offheap" : "heap", System.nanoTime() - start);
+        if (offHeap) {
+            System.out.printf("off-heap: %d sessions, %d MB used, %d MB allocated, %d evicted%n", store.size(),
+                    store.usedBytes() >> 20, store.allocatedBytes() >> 20, store.evictionCount());
+        }
+    }
+
+    private static void printGcStats(String mode, long elapsedNanos) {
+        System.out.printf("mode=%s, elapsed=%d ms%n", mode, elapsedNanos / 1_000_000);
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // Collection time is the accumulated pause time for the stop-the-world collectors
+            System.out.printf("%-25s collections=%d, time=%d ms%n",
+                    gc.getName(), gc.getCollectionCount(), gc.getCollectionTime());
+        }
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        System.out.printf("heap used=%d MB, committed=%d MB%n", heap.getUsed() >> 20, heap.getCommitted() >> 20);
     }
 }
@@ -2,26 +2,379 @@ package com.unravel.part2MemoryManagemet;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.context.event.EventListener;
+import org.springframework.session.events.SessionDestroyedEvent;
+import org.springframework.stereotype.Component;
 
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Holds large per-session data next to the HTTP session it belongs to.
+ * <p>
+ * Data lives in two tiers: a local Caffeine cache (L1) in front of a {@link RemoteSessionDataStore} shared by all
+ * nodes (L2, Redis). Writes go to both tiers and then tell the other nodes to drop their L1 copy, and an L1 miss
+ * loads from L2, so a user who moves to another node still finds their data, and repeated reads stay local.
+ * Reads served by L1 still restart the L2 time to live, at most once per quarter of the inactivity timeout, so the
+ * copy in L2 does not expire while a node keeps reading it locally.
+ * <p>
+ * Data of at least the compression threshold is compressed with the configured {@link CompressionCodec} before it
+ * enters L1, and kept compressed only if that makes it smaller. The cache weighs entries by their stored size, so
+ * compressible data lets more sessions fit, and L2 receives the same compressed bytes.
+ * <p>
+ * Data that is too large to hold as one array, or mostly cold, can be stored as a {@link ChunkedPayload} instead.
+ * Its pages are loaded from the session's {@link PageSource} on access and share one byte budget with the pages of
+ * all other sessions. Chunked data stays on the node that stored it, as its source usually does.
+ * <p>
+ * Data is released when its session ends: Spring Session publishes a {@link SessionDestroyedEvent} on every node
+ * when a session is deleted (logout) or expires in Redis, and the entry is invalidated right away. The sliding
+ * expiry and the byte limit of the cache stay as a safety net for events that are missed, e.g. while the node
+ * was not subscribed to Redis.
+ */
 @Slf4j
-public class MemoryManager {
+@Component
+public class MemoryManager implements MeterBinder {
 
-    private static final Cache<String, byte[]> largeSessionData = Caffeine.newBuilder()
-            .maximumSize(500)  // limit to 500 entries (adjust based on heap size)
-            .expireAfterAccess(10, TimeUnit.SECONDS)  // Optionally. Evict after 10 sec inactivity
-            .weakKeys()       // Optionally. Allow GC to collect if keys are unreferenced
-            .build();
+    // Same as the default of server.servlet.session.timeout, for use outside a Spring context
+    static final Duration DEFAULT_SESSION_TIMEOUT = Duration.ofSeconds(1800);
+    // Initial bound for all session data together, AdaptiveCacheSizer moves it with the heap occupancy
+    static final long MAX_WEIGHT_BYTES = 256L * 1024 * 1024;
+    static final int SESSION_DATA_SIZE = 10 * 1024 * 1024;  // 10MB
+    // Resident pages of all chunked session data together
+    static final long CHUNKED_BUDGET_BYTES = 128L * 1024 * 1024;
 
-    public static void addSessionData(String sessionId) {
-        largeSessionData.put(sessionId, new byte[10 * 1024 * 1024]);  // 10MB
+    private final Duration sessionTimeout;
+    private final RemoteSessionDataStore remote;
+    private final CompressionCodec codec;
+    private final int compressionThreshold;
+    private final Cache<String, SessionBlob> largeSessionData;
+    private final ChunkedPayloadCache pages = new ChunkedPayloadCache(CHUNKED_BUDGET_BYTES);
+    private final Map<String, ChunkedPayload> chunkedSessionData = new ConcurrentHashMap<>();
+    private final Ticker ticker;
+    // When this node last set the L2 time to live of each session in L1, in ticker nanos
+    private final Map<String, Long> remoteTouchedAt = new ConcurrentHashMap<>();
+    private final Map<RemovalCause, LongAdder> removals = new EnumMap<>(RemovalCause.class);
+    // Records nothing until bindTo adds a registry
+    private final CompositeMeterRegistry meters = new CompositeMeterRegistry();
+    private final DistributionSummary compressionRatio = DistributionSummary.builder("session.data.compression.ratio")
+            .description("Original size divided by stored size, per stored entry")
+            .publishPercentiles(0.1, 0.5, 0.9)
+            .register(meters);
+
+    @Autowired
+    public MemoryManager(ServerProperties serverProperties, RemoteSessionDataStore remote,
+                         @Value("${session.data.compression.codec:deflate}") String codec,
+                         @Value("${session.data.compression.threshold:1024}") int compressionThreshold) {
+        this(serverProperties.getServlet().getSession().getTimeout(), remote, CompressionCodec.forName(codec),
+                compressionThreshold);
+    }
+
+    /**
+     * A manager without a second tier or compression.
+     */
+    public MemoryManager(Duration sessionTimeout) {
+        this(sessionTimeout, RemoteSessionDataStore.NONE, CompressionCodec.NONE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param sessionTimeout       how long data may stay unused, like the inactivity timeout of an HTTP session
+     * @param remote               second tier shared by all nodes
+     * @param codec                compression for data of at least {@code compressionThreshold} bytes
+     * @param compressionThreshold smaller data is stored as it is, compressing it saves too little for the CPU
+     */
+    public MemoryManager(Duration sessionTimeout, RemoteSessionDataStore remote, CompressionCodec codec,
+                         int compressionThreshold) {
+        this(sessionTimeout, remote, codec, compressionThreshold, Ticker.systemTicker());
+    }
+
+    MemoryManager(Duration sessionTimeout, RemoteSessionDataStore remote, CompressionCodec codec,
+                  int compressionThreshold, Ticker ticker) {
+        this.sessionTimeout = sessionTimeout;
+        this.ticker = ticker;
+        this.remote = remote;
+        this.codec = codec;
+        this.compressionThreshold = compressionThreshold;
+        for (RemovalCause cause : RemovalCause.values()) {
+            removals.put(cause, new LongAdder());
+        }
+        this.largeSessionData = Caffeine.newBuilder()
+                // Keys are compared with equals(), so any equal session ID string finds the entry
+                .maximumWeight(MAX_WEIGHT_BYTES)  // Evict by bytes held, not by entry count
+                .weigher((String sessionId, SessionBlob blob) -> blob.stored().length)
+                .expireAfter(new SessionTimeoutExpiry())
+                .ticker(ticker)
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+        remote.onInvalidation(largeSessionData::invalidate);
+    }
+
+    public void addSessionData(String sessionId) {
+        addSessionData(sessionId, sessionTimeout);
+    }
+
+    /**
+     * Stores the data for a session whose own inactivity timeout differs from the default.
+     * The data expires after it has not been read or replaced for {@code maxInactiveInterval}.
+     */
+    public void addSessionData(String sessionId, Duration maxInactiveInterval) {
+        addSessionData(sessionId, new byte[SESSION_DATA_SIZE], maxInactiveInterval);
+    }
+
+    /**
+     * Stores {@code data} for the session, replacing its previous data on all nodes.
+     */
+    public void addSessionData(String sessionId, byte[] data, Duration maxInactiveInterval) {
+        SessionBlob blob = compress(data, maxInactiveInterval);
+        compressionRatio.record((double) blob.length() / Math.max(1, blob.stored().length));
+        largeSessionData.put(sessionId, blob);
+        // L2 first, so a node that drops its copy on the invalidation reloads the new data
+        remote.put(sessionId, SessionBlobCodec.encode(blob), remoteTimeToLive(maxInactiveInterval));
+        remoteTouchedAt.put(sessionId, ticker.read());
+        remote.publishInvalidation(sessionId);
+    }
+
+    /**
+     * Stores {@code size} bytes of data for the session as pages of {@code source}, replacing and closing its previous
+     * chunked data. Nothing is read until the returned payload is accessed. The payload is closed, together with
+     * the source, when the data is removed or the session ends, and it has no inactivity expiry of its own.
+     */
+    public ChunkedPayload addSessionData(String sessionId, PageSource source, long size) {
+        ChunkedPayload payload = pages.create(size, source);
+        close(sessionId, chunkedSessionData.put(sessionId, payload));
+        return payload;
+    }
+
+    /**
+     * @return the session's chunked data on this node, or {@code null} if it has none
+     */
+    public ChunkedPayload getChunkedSessionData(String sessionId) {
+        return chunkedSessionData.get(sessionId);
     }
 
-    // call this method when a session is invalidated or logged out to explicitly remove data
-    public static void removeSessionData(String sessionId) {
+    /**
+     * Returns the session's data from the local cache, or from the second tier if another node stored it.
+     * Compressed data is decompressed into a new array on every call. Data that is stored as it is comes back as
+     * the cached array, which must not be modified.
+     *
+     * @return the data, or {@code null} if the session has none
+     */
+    public byte[] getSessionData(String sessionId) {
+        SessionBlob blob = largeSessionData.get(sessionId, this::loadRemote);
+        if (blob == null) {
+            return null;
+        }
+        touchRemote(sessionId, blob.maxInactiveInterval());
+        CompressionCodec blobCodec = blob.codec() == codec.id() ? codec : CompressionCodec.forId(blob.codec());
+        return blobCodec.decompress(blob.stored(), blob.length());
+    }
+
+    public void removeSessionData(String sessionId) {
         log.info("Removing session data for ID: {}", sessionId);
         largeSessionData.invalidate(sessionId);
+        close(sessionId, chunkedSessionData.remove(sessionId));
+        remote.delete(sessionId);
+        remote.publishInvalidation(sessionId);
+    }
+
+    /**
+     * Covers both {@code SessionDeletedEvent} (invalidated, e.g. on logout) and {@code SessionExpiredEvent}.
+     * Every node receives the event, so each only clears its own data and nothing is published. The L2 copy is not
+     * deleted, which would send the same command from every node. Nothing reads or touches it any more, so it expires
+     * with its time to live, at most a quarter of the timeout after the session. {@link #removeSessionData} deletes it
+     * at once.
+     */
+    @EventListener
+    public void onSessionDestroyed(SessionDestroyedEvent event) {
+        log.info("Session {} ended, removing its data", event.getSessionId());
+        largeSessionData.invalidate(event.getSessionId());
+        close(event.getSessionId(), chunkedSessionData.remove(event.getSessionId()));
+    }
+
+    // Spring Boot binds MeterBinder beans, so the stats show up under /actuator/metrics/cache.*
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, largeSessionData, "sessionData");
+        meters.add(registry);
+        removals.forEach((cause, count) -> FunctionCounter.builder("session.data.removals", count, LongAdder::sum)
+                .description("Session data removed from the local cache, by cause (SIZE and EXPIRED are evictions)")
+                .tag("cause", cause.name())
+                .register(registry));
+    }
+
+    /**
+     * Bytes of session data held in the local cache, as stored, i.e. after compression.
+     */
+    public long heldBytes() {
+        largeSessionData.cleanUp();  // The weighted size only includes writes that maintenance has seen
+        return eviction().weightedSize().orElse(0);
+    }
+
+    public long entryCount() {
+        return largeSessionData.estimatedSize();
+    }
+
+    /**
+     * Bytes of chunked session data pages currently on the heap, kept within a fixed budget of 128 MB.
+     */
+    public long chunkedResidentBytes() {
+        return pages.residentBytes();
+    }
+
+    /**
+     * Entries evicted from the local cache for size or expiry since start.
+     */
+    public long evictionCount() {
+        return largeSessionData.stats().evictionCount();
+    }
+
+    /**
+     * The {@code n} sessions holding the most bytes in the local cache after compression, largest first.
+     * Sessions are identified by {@link SessionSize#hash}, never by their ID, which would let anyone who reads the
+     * list take the session over. Walks the whole cache without counting as reads, so it does not extend any expiry.
+     */
+    public List<SessionSize> largestSessions(int n) {
+        Comparator<SessionSize> bySize = Comparator.comparingLong(SessionSize::bytes);
+        PriorityQueue<SessionSize> largest = new PriorityQueue<>(bySize);
+        largeSessionData.asMap().forEach((sessionId, blob) -> {
+            largest.add(new SessionSize(SessionSize.hash(sessionId), blob.stored().length, blob.length()));
+            if (largest.size() > n) {
+                largest.poll();
+            }
+        });
+        List<SessionSize> sorted = new ArrayList<>(largest);
+        sorted.sort(bySize.reversed());
+        return sorted;
+    }
+
+    /**
+     * The size-based eviction policy of the local cache, for changing its maximum weight at runtime.
+     */
+    Policy.Eviction<String, ?> eviction() {
+        return largeSessionData.policy().eviction().orElseThrow();
+    }
+
+    // Restarts the L2 time to live once a quarter of the interval has passed since this node last set it
+    private void touchRemote(String sessionId, Duration maxInactiveInterval) {
+        long now = ticker.read();
+        Long touchedAt = remoteTouchedAt.get(sessionId);
+        if (touchedAt != null && now - touchedAt < maxInactiveInterval.toNanos() / 4) {
+            return;
+        }
+        remoteTouchedAt.put(sessionId, now);
+        remote.touch(sessionId, remoteTimeToLive(maxInactiveInterval));
+    }
+
+    // The interval plus the quarter a read may go without touching L2, so L2 outlives the last read by the interval
+    private static Duration remoteTimeToLive(Duration maxInactiveInterval) {
+        return maxInactiveInterval.plus(maxInactiveInterval.dividedBy(4));
+    }
+
+    private void onRemoval(String sessionId, SessionBlob blob, RemovalCause cause) {
+        if (cause != RemovalCause.REPLACED) {
+            remoteTouchedAt.remove(sessionId);
+        }
+        removals.get(cause).increment();
+        if (cause.wasEvicted()) {
+            log.info("Session data for ID: {} evicted ({})", sessionId, cause);
+        }
+    }
+
+    private static void close(String sessionId, ChunkedPayload payload) {
+        if (payload == null) {
+            return;
+        }
+        try {
+            payload.close();
+        } catch (IOException e) {
+            log.error("Failed to close chunked session data for ID: {}", sessionId, e);
+        }
+    }
+
+    private SessionBlob compress(byte[] data, Duration maxInactiveInterval) {
+        if (data.length >= compressionThreshold) {
+            byte[] compressed = codec.compress(data);
+            if (compressed.length < data.length) {
+                return new SessionBlob(compressed, data.length, codec.id(), maxInactiveInterval);
+            }
+        }
+        return new SessionBlob(data, data.length, CompressionCodec.NONE.id(), maxInactiveInterval);
+    }
+
+    private SessionBlob loadRemote(String sessionId) {
+        byte[] encoded = remote.get(sessionId);
+        return encoded == null ? null : SessionBlobCodec.decode(encoded);
+    }
+
+    /**
+     * @param stored the data as held, compressed with the codec of ID {@code codec}
+     * @param length size of the original data
+     */
+    record SessionBlob(byte[] stored, int length, byte codec, Duration maxInactiveInterval) {
+    }
+
+    /**
+     * @param sessionHash   {@link #hash} of the session ID
+     * @param bytes         size as held in the cache
+     * @param originalBytes size before compression
+     */
+    public record SessionSize(String sessionHash, long bytes, long originalBytes) {
+
+        /**
+         * The first 12 hex digits of the SHA-256 of the session ID. Enough to match a known session,
+         * too little to recover its ID.
+         */
+        public static String hash(String sessionId) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(sessionId.getBytes(StandardCharsets.UTF_8));
+                return HexFormat.of().formatHex(digest, 0, 6);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);  // Every JVM must provide it
+            }
+        }
+    }
+
+    // Sliding expiry per entry, like the inactivity timeout of the session the data belongs to
+    private static final class SessionTimeoutExpiry implements Expiry<String, SessionBlob> {
+        @Override
+        public long expireAfterCreate(String sessionId, SessionBlob blob, long currentTime) {
+            return blob.maxInactiveInterval().toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(String sessionId, SessionBlob blob, long currentTime, long currentDuration) {
+            return blob.maxInactiveInterval().toNanos();
+        }
+
+        @Override
+        public long expireAfterRead(String sessionId, SessionBlob blob, long currentTime, long currentDuration) {
+            return blob.maxInactiveInterval().toNanos();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,295 @@
+package com.unravel.part2MemoryManagemet;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link SessionDataStore} that keeps payloads outside the Java heap, so large session data does not
+ * add to GC work and a full heap no longer forces full collections.
+ * <p>
+ * Memory comes from direct {@link ByteBuffer} slabs allocated once, up to the budget, and cut into fixed-size
+ * pages. A payload takes as many pages as it needs, and pages go back to a free-page stack when the payload is
+ * replaced, removed or evicted, so nothing depends on the GC freeing direct memory. When a new payload does not
+ * fit, the least recently used payloads are evicted until it does, which makes the eviction weighted by size.
+ * <p>
+ * Reads hand out read-only slices of the pages. Eviction skips payloads that are being read. One that is removed or
+ * replaced while someone reads it keeps its pages until the {@link SessionData} view is closed. The JVM must allow at least the budget as direct memory
+ * ({@code -XX:MaxDirectMemorySize}, defaults to the maximum heap size).
+ */
+@Slf4j
+public class OffHeapSessionDataStore implements SessionDataStore {
+    static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+    static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private final int pageSize;
+    private final int pagesPerSlab;
+    private final long maxPages;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Access order, so iteration starts at the least recently used payload
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ArrayDeque<ByteBuffer> freePages = new ArrayDeque<>();
+    private long allocatedPages;
+    private long usedPages;
+    // Pages of payloads that are being read, which eviction cannot free
+    private long pinnedPages;
+    private long usedBytes;
+    private long evictions;
+
+    public OffHeapSessionDataStore(long budgetBytes) {
+        this(budgetBytes, DEFAULT_PAGE_SIZE, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param budgetBytes maximum off-heap memory for payloads, rounded down to whole pages
+     * @param pageSize    allocation unit, a payload wastes less than one page
+     * @param slabSize    size of each direct buffer allocation, a multiple of the page size
+     */
+    public OffHeapSessionDataStore(long budgetBytes, int pageSize, int slabSize) {
+        if (pageSize <= 0 || slabSize < pageSize || slabSize % pageSize != 0) {
+            throw new IllegalArgumentException("Slab size must be a positive multiple of the page size: "
+                    + slabSize + " / " + pageSize);
+        }
+        if (budgetBytes < pageSize) {
+            throw new IllegalArgumentException("Budget is smaller than a page: " + budgetBytes);
+        }
+        this.pageSize = pageSize;
+        this.pagesPerSlab = slabSize / pageSize;
+        this.maxPages = budgetBytes / pageSize;
+    }
+
+    @Override
+    public void allocate(String sessionId, int size) {
+        ByteBuffer[] pages = reservePages(size);
+        for (ByteBuffer page : pages) {
+            zero(page);  // Pages are reused, so they may still hold another session's data
+        }
+        publish(sessionId, new Entry(pages, size));
+    }
+
+    @Override
+    public void put(String sessionId, ByteBuffer data) {
+        int size = data.remaining();
+        ByteBuffer[] pages = reservePages(size);
+        int offset = data.position();
+        for (ByteBuffer page : pages) {
+            int count = Math.min(pageSize, data.limit() - offset);
+            page.put(0, data, offset, count);
+            offset += count;
+        }
+        publish(sessionId, new Entry(pages, size));
+    }
+
+    @Override
+    public SessionData get(String sessionId) {
+        Entry entry;
+        lock.lock();
+        try {
+            entry = entries.get(sessionId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.readers++ == 0) {
+                pinnedPages += entry.pages.length;
+            }
+        } finally {
+            lock.unlock();
+        }
+        ByteBuffer[] views = new ByteBuffer[entry.pages.length];
+        int remaining = entry.length;
+        for (int i = 0; i < views.length; i++) {
+            int count = Math.min(pageSize, remaining);
+            views[i] = entry.pages[i].asReadOnlyBuffer().limit(count);
+            remaining -= count;
+        }
+        return new SessionData(views, entry.length, () -> endRead(entry));
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        lock.lock();
+        try {
+            Entry entry = entries.remove(sessionId);
+            if (entry != null) {
+                discard(entry);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Off-heap memory taken by slabs so far. It only grows, up to the budget.
+     */
+    public long allocatedBytes() {
+        lock.lock();
+        try {
+            return allocatedPages * pageSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of payloads evicted to make room for new ones.
+     */
+    public long evictionCount() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Takes the pages for a new payload, evicting least recently used payloads if they are needed.
+    // That may include the session's own previous payload, which the new one replaces anyway
+    private ByteBuffer[] reservePages(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must not be negative: " + size);
+        }
+        int pageCount = (int) ((size + (long) pageSize - 1) / pageSize);
+        if (pageCount > maxPages) {
+            throw new IllegalArgumentException("Payload of " + size + " bytes exceeds the budget of "
+                    + maxPages * pageSize + " bytes");
+        }
+        lock.lock();
+        try {
+            if (maxPages - pinnedPages < pageCount) {
+                // Evicting would not help, the payloads in the way are all being read
+                throw new IllegalStateException("No room for " + size + " bytes, the budget is held by payloads"
+                        + " that are still being read");
+            }
+            // Payloads being read keep their pages until the read ends, evicting them would not free anything
+            Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+            while (maxPages - usedPages < pageCount) {
+                if (!leastRecentlyUsed.hasNext()) {
+                    // Pages reserved by concurrent puts that have not published their payload yet
+                    throw new IllegalStateException("No room for " + size + " bytes, the budget is held by payloads"
+                            + " that are still being written");
+                }
+                Map.Entry<String, Entry> eldest = leastRecentlyUsed.next();
+                if (eldest.getValue().readers > 0) {
+                    continue;
+                }
+                leastRecentlyUsed.remove();
+                evictions++;
+                log.debug("Evicting session data for ID: {}", eldest.getKey());
+                discard(eldest.getValue());
+            }
+            ByteBuffer[] pages = new ByteBuffer[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pages[i] = takePage();
+            }
+            usedPages += pageCount;
+            usedBytes += size;
+            return pages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void publish(String sessionId, Entry entry) {
+        lock.lock();
+        try {
+            Entry previous = entries.put(sessionId, entry);
+            if (previous != null) {
+                discard(previous);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ByteBuffer takePage() {
+        ByteBuffer page = freePages.pollFirst();
+        if (page != null) {
+            return page;
+        }
+        long slabPages = Math.min(pagesPerSlab, maxPages - allocatedPages);
+        ByteBuffer slab = ByteBuffer.allocateDirect((int) (slabPages * pageSize));
+        for (int i = 1; i < slabPages; i++) {
+            freePages.addLast(slab.slice(i * pageSize, pageSize));
+        }
+        allocatedPages += slabPages;
+        return slab.slice(0, pageSize);
+    }
+
+    // Called with the lock held
+    private void discard(Entry entry) {
+        entry.removed = true;
+        if (entry.readers == 0) {
+            release(entry);
+        }
+    }
+
+    private void endRead(Entry entry) {
+        lock.lock();
+        try {
+            if (--entry.readers == 0) {
+                pinnedPages -= entry.pages.length;
+                if (entry.removed) {
+                    release(entry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Entry entry) {
+        for (ByteBuffer page : entry.pages) {
+            freePages.addFirst(page);  // Recently used pages first, they are more likely to be resident
+        }
+        usedPages -= entry.pages.length;
+        usedBytes -= entry.length;
+    }
+
+    private static void zero(ByteBuffer page) {
+        int i = 0;
+        for (; i + Long.BYTES <= page.capacity(); i += Long.BYTES) {
+            page.putLong(i, 0L);
+        }
+        for (; i < page.capacity(); i++) {
+            page.put(i, (byte) 0);
+        }
+    }
+
+    private static final class Entry {
+        private final ByteBuffer[] pages;
+        private final int length;
+        private int readers;
+        private boolean removed;
+
+        private Entry(ByteBuffer[] pages, int length) {
+            this.pages = pages;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Backing store of a {@link ChunkedPayload}. Pages are loaded from it on first access and after they were evicted,
+ * and modified pages are stored back to it when they are evicted.
+ */
+public interface PageSource extends Closeable {
+
+    /**
+     * Fills {@code page} with the content of page {@code index}. Parts that were never stored read as zeros.
+     * The array is freshly allocated and zero-filled, and shorter than the page size for the last page.
+     */
+    void load(int index, byte[] page) throws IOException;
+
+    /**
+     * Stores the content of page {@code index}, so the next {@link #load} returns it.
+     */
+    void store(int index, byte[] page) throws IOException;
+
+    @Override
+    default void close() throws IOException {
+    }
+}
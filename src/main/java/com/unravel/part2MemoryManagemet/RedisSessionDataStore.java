@@ -0,0 +1,109 @@
+package com.unravel.part2MemoryManagemet;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link RemoteSessionDataStore} on the Redis instance that also holds the HTTP sessions. Data is stored as raw
+ * bytes under {@code session:data:<id>}, and invalidations go out on the {@code session:data:invalidations}
+ * pub/sub channel as {@code <node id> <session id>}, so each node can skip its own.
+ */
+@Slf4j
+@Component
+public class RedisSessionDataStore implements RemoteSessionDataStore, MessageListener, InitializingBean,
+        DisposableBean {
+    static final String KEY_PREFIX = "session:data:";
+    static final String INVALIDATIONS = "session:data:invalidations";
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final RedisTemplate<String, byte[]> redis = new RedisTemplate<>();
+    private final StringRedisTemplate messages;
+    private final RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisSessionDataStore(RedisConnectionFactory connectionFactory) {
+        redis.setConnectionFactory(connectionFactory);
+        redis.setKeySerializer(RedisSerializer.string());
+        redis.setValueSerializer(RedisSerializer.byteArray());
+        messages = new StringRedisTemplate(connectionFactory);
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(this, new ChannelTopic(INVALIDATIONS));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        redis.afterPropertiesSet();
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            container.destroy();
+        } catch (Exception e) {
+            log.warn("Could not stop listening on {}", INVALIDATIONS, e);
+        }
+    }
+
+    @Override
+    public byte[] get(String sessionId) {
+        return redis.opsForValue().get(KEY_PREFIX + sessionId);
+    }
+
+    @Override
+    public void put(String sessionId, byte[] encoded, Duration timeToLive) {
+        redis.opsForValue().set(KEY_PREFIX + sessionId, encoded, timeToLive);
+    }
+
+    @Override
+    public void touch(String sessionId, Duration timeToLive) {
+        redis.expire(KEY_PREFIX + sessionId, timeToLive);
+    }
+
+    @Override
+    public void delete(String sessionId) {
+        redis.delete(KEY_PREFIX + sessionId);
+    }
+
+    @Override
+    public void publishInvalidation(String sessionId) {
+        messages.convertAndSend(INVALIDATIONS, nodeId + " " + sessionId);
+    }
+
+    @Override
+    public void onInvalidation(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(' ');
+        if (separator < 0 || body.startsWith(nodeId + " ")) {
+            return;
+        }
+        String sessionId = body.substring(separator + 1);
+        log.debug("Session data for ID {} changed on another node", sessionId);
+        for (Consumer<String> listener : listeners) {
+            listener.accept(sessionId);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Second tier for {@link MemoryManager} data, shared by all nodes, together with a channel that tells the other
+ * nodes to drop their local copy of a session's data.
+ */
+public interface RemoteSessionDataStore {
+
+    /**
+     * No second tier, every node only sees the data it stored itself.
+     */
+    RemoteSessionDataStore NONE = new RemoteSessionDataStore() {
+        @Override
+        public byte[] get(String sessionId) {
+            return null;
+        }
+
+        @Override
+        public void put(String sessionId, byte[] encoded, Duration timeToLive) {
+        }
+
+        @Override
+        public void touch(String sessionId, Duration timeToLive) {
+        }
+
+        @Override
+        public void delete(String sessionId) {
+        }
+
+        @Override
+        public void publishInvalidation(String sessionId) {
+        }
+
+        @Override
+        public void onInvalidation(Consumer<String> listener) {
+        }
+    };
+
+    /**
+     * @return the encoded data, or {@code null} if there is none
+     */
+    byte[] get(String sessionId);
+
+    void put(String sessionId, byte[] encoded, Duration timeToLive);
+
+    /**
+     * Restarts the time to live of the session's data, if there is any, without transferring it.
+     */
+    void touch(String sessionId, Duration timeToLive);
+
+    void delete(String sessionId);
+
+    /**
+     * Tells the other nodes that their copy of the session's data is stale. This node is not notified.
+     */
+    void publishInvalidation(String sessionId);
+
+    /**
+     * Registers a listener for the session IDs that other nodes invalidated.
+     */
+    void onInvalidation(Consumer<String> listener);
+}
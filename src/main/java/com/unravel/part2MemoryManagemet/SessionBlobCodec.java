@@ -0,0 +1,45 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+
+/**
+ * Binary form of {@link MemoryManager.SessionBlob} for the second tier:
+ * version (1 byte), {@link CompressionCodec#id() codec ID} (1 byte), inactive interval in ms (8 bytes),
+ * original data length (4 bytes), then the stored bytes. Blobs are compressed before they reach the local cache,
+ * so they go to Redis as they are, without compressing twice.
+ */
+final class SessionBlobCodec {
+    static final int HEADER_SIZE = 14;
+    private static final byte VERSION = 1;
+
+    private SessionBlobCodec() {
+    }
+
+    static byte[] encode(MemoryManager.SessionBlob blob) {
+        return ByteBuffer.allocate(HEADER_SIZE + blob.stored().length)
+                .put(VERSION)
+                .put(blob.codec())
+                .putLong(blob.maxInactiveInterval().toMillis())
+                .putInt(blob.length())
+                .put(blob.stored())
+                .array();
+    }
+
+    static MemoryManager.SessionBlob decode(byte[] encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        byte version = buffer.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported session data version: " + version);
+        }
+        byte codec = buffer.get();
+        Duration maxInactiveInterval = Duration.ofMillis(buffer.getLong());
+        int length = buffer.getInt();
+        byte[] stored = new byte[buffer.remaining()];
+        buffer.get(stored);
+        if (codec == CompressionCodec.NONE.id() && stored.length != length) {
+            throw new IllegalArgumentException("Session data is truncated: " + stored.length + " of " + length);
+        }
+        return new MemoryManager.SessionBlob(stored, length, codec, maxInactiveInterval);
+    }
+}
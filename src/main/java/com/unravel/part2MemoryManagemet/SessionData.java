@@ -0,0 +1,53 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of a stored payload, split into one buffer per page. Closing it releases the payload's memory
+ * for reuse if the payload was evicted or removed in the meantime.
+ */
+public final class SessionData implements AutoCloseable {
+    private final ByteBuffer[] buffers;
+    private final int length;
+    private final Runnable onClose;
+    private boolean closed;
+
+    SessionData(ByteBuffer[] buffers, int length, Runnable onClose) {
+        this.buffers = buffers;
+        this.length = length;
+        this.onClose = onClose;
+    }
+
+    /**
+     * Read-only buffers that together hold the payload in order, each positioned at its start.
+     */
+    public ByteBuffer[] buffers() {
+        return buffers;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Copies the payload into a new array, for callers that need it in one piece.
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        for (ByteBuffer buffer : buffers) {
+            int count = buffer.remaining();
+            buffer.get(buffer.position(), bytes, offset, count);
+            offset += count;
+        }
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            onClose.run();
+        }
+    }
+}
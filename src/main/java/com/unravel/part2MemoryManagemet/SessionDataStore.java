@@ -0,0 +1,40 @@
+package com.unravel.part2MemoryManagemet;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Holds a binary payload per session, evicting payloads when a memory budget is exceeded.
+ */
+public interface SessionDataStore {
+
+    /**
+     * Stores a zero-filled payload of {@code size} bytes, replacing any previous payload of the session.
+     */
+    void allocate(String sessionId, int size);
+
+    /**
+     * Stores a copy of the remaining bytes of {@code data}, replacing any previous payload of the session.
+     * The position of {@code data} is not changed.
+     */
+    void put(String sessionId, ByteBuffer data);
+
+    /**
+     * Gives read access to the payload without copying it. The returned view must be closed,
+     * until then the memory behind it is not reused even if the session is evicted or removed.
+     *
+     * @return the payload, or {@code null} if the session has none
+     */
+    SessionData get(String sessionId);
+
+    void remove(String sessionId);
+
+    /**
+     * Number of sessions with a payload.
+     */
+    long size();
+
+    /**
+     * Bytes held by payloads, including ones that were removed but are still being read.
+     */
+    long usedBytes();
+}
@@ -0,0 +1,40 @@
+package com.unravel.part2MemoryManagemet;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/sessionmemory}: how much heap the session data takes, which sessions hold the most, and how fast
+ * data is evicted and memory allocated. {@code ?top=N} sets the number of sessions listed, 10 by default.
+ * Sessions are listed by a hash of their ID. The endpoint is not exposed over HTTP by default, as it has no access
+ * control of its own.
+ */
+@Component
+@Endpoint(id = "sessionmemory")
+@RequiredArgsConstructor
+public class SessionMemoryEndpoint {
+    static final int DEFAULT_TOP = 10;
+
+    private final MemoryManager memoryManager;
+    private final SessionMemoryTelemetry telemetry;
+
+    @ReadOperation
+    public SessionMemoryReport report(@Nullable Integer top) {
+        return new SessionMemoryReport(
+                memoryManager.heldBytes(),
+                memoryManager.eviction().getMaximum(),
+                memoryManager.entryCount(),
+                telemetry.evictionRate(),
+                telemetry.allocationRate(),
+                memoryManager.largestSessions(top == null ? DEFAULT_TOP : top));
+    }
+
+    public record SessionMemoryReport(long heldBytes, long limitBytes, long entries, double evictionsPerSecond,
+                                      double allocatedBytesPerSecond, List<MemoryManager.SessionSize> largestSessions) {
+    }
+}
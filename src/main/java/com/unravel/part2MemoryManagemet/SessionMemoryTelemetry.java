@@ -0,0 +1,110 @@
+package com.unravel.part2MemoryManagemet;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongSupplier;
+
+/**
+ * Gauges for the memory taken by {@link MemoryManager} data, plus the eviction and heap allocation rates.
+ * <p>
+ * The rates are sampled every 10 seconds. A steadily high allocation rate while the held bytes stay flat is normal
+ * churn. Held bytes that keep growing with no evictions, like in {@link MemoryLeakSimulator} before the cache was
+ * bounded, point to a leak.
+ */
+@Slf4j
+@Component
+public class SessionMemoryTelemetry implements MeterBinder {
+    static final long SAMPLE_INTERVAL_MS = 10_000;
+
+    private final MemoryManager memoryManager;
+    private final LongSupplier allocatedBytes;
+    private long lastSampleNanos;
+    private long lastEvictions;
+    private long lastAllocatedBytes;
+    private volatile double evictionRate;
+    private volatile double allocationRate = Double.NaN;
+
+    @Autowired
+    public SessionMemoryTelemetry(MemoryManager memoryManager) {
+        this(memoryManager, allocatedBytesCounter(), System.nanoTime());
+    }
+
+    SessionMemoryTelemetry(MemoryManager memoryManager, LongSupplier allocatedBytes, long nowNanos) {
+        this.memoryManager = memoryManager;
+        this.allocatedBytes = allocatedBytes;
+        this.lastSampleNanos = nowNanos;
+        this.lastEvictions = memoryManager.evictionCount();
+        this.lastAllocatedBytes = allocatedBytes.getAsLong();
+    }
+
+    @Scheduled(fixedRate = SAMPLE_INTERVAL_MS)
+    public void sample() {
+        sample(System.nanoTime());
+    }
+
+    synchronized void sample(long nowNanos) {
+        double seconds = (nowNanos - lastSampleNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+        long evictions = memoryManager.evictionCount();
+        long allocated = allocatedBytes.getAsLong();
+        evictionRate = (evictions - lastEvictions) / seconds;
+        allocationRate = allocated < 0 ? Double.NaN : (allocated - lastAllocatedBytes) / seconds;
+        lastSampleNanos = nowNanos;
+        lastEvictions = evictions;
+        lastAllocatedBytes = allocated;
+        log.debug("Session data: {} MB held, {} evictions/s, {} MB/s allocated", memoryManager.heldBytes() >> 20,
+                evictionRate, allocationRate / (1 << 20));
+    }
+
+    /**
+     * Session data entries evicted per second over the last sample interval.
+     */
+    public double evictionRate() {
+        return evictionRate;
+    }
+
+    /**
+     * Heap bytes allocated per second by all threads over the last sample interval, {@code NaN} if the JVM does
+     * not measure allocations.
+     */
+    public double allocationRate() {
+        return allocationRate;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("session.data.held", memoryManager, MemoryManager::heldBytes)
+                .description("Bytes of session data held on the heap")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("session.data.entries", memoryManager, MemoryManager::entryCount)
+                .description("Sessions with data on the heap")
+                .register(registry);
+        Gauge.builder("session.data.eviction.rate", this, SessionMemoryTelemetry::evictionRate)
+                .description("Session data evictions per second")
+                .register(registry);
+        Gauge.builder("jvm.memory.allocation.rate", this, SessionMemoryTelemetry::allocationRate)
+                .description("Heap bytes allocated per second by all threads")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    // Includes threads that have ended, unlike summing getThreadAllocatedBytes over the live threads
+    private static LongSupplier allocatedBytesCounter() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads::getTotalThreadAllocatedBytes;
+        }
+        return () -> -1;
+    }
+}
@@ -0,0 +1,171 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Multi-level scheduler with one lock-free FIFO lane per {@link TaskPriority}.
+ * <p>
+ * Tasks never move inside a lane, so the order no longer depends on when a comparison happens.
+ * Aging is a single promotion step: once the head of a lane is older than {@link Constants#AGE_THRESHOLD_NS}
+ * it competes with the head of the lane one level above, and the older of the two is taken first.
+ * Enqueue is a single CAS and dequeue looks at no more than two heads per level, which is O(1)
+ * for the fixed number of priorities.
+ */
+class AgingLaneScheduler implements TaskScheduler {
+
+    private static final int LEVELS = TaskPriority.values().length;
+
+    @SuppressWarnings("unchecked")
+    private final ConcurrentLinkedQueue<LogTask>[] lanes = new ConcurrentLinkedQueue[LEVELS];
+    // ConcurrentLinkedQueue.size() is O(n), so each lane keeps a striped counter for observability
+    private final LongAdder[] depths = new LongAdder[LEVELS];
+    private final LongAdder promotions = new LongAdder();
+
+    AgingLaneScheduler() {
+        for (int level = 0; level < LEVELS; level++) {
+            lanes[level] = new ConcurrentLinkedQueue<>();
+            depths[level] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void offer(LogTask task) {
+        int level = task.getPriority().ordinal();
+        depths[level].increment();  // counted before it becomes visible, so the depth never goes negative
+        lanes[level].offer(task);
+    }
+
+    // Counts by lane, a promoted task is still counted under its own priority
+    @Override
+    public long depth(TaskPriority priority) {
+        return depths[priority.ordinal()].sum();
+    }
+
+    @Override
+    public LogTask poll() {
+        return poll(System.nanoTime());
+    }
+
+    // Reads the clock once for the whole batch
+    @Override
+    public int drainTo(Collection<? super LogTask> batch, int maxItems) {
+        long now = System.nanoTime();
+        int drained = 0;
+        while (drained < maxItems) {
+            LogTask task = poll(now);
+            if (task == null) {
+                break;
+            }
+            batch.add(task);
+            drained++;
+        }
+        return drained;
+    }
+
+    private LogTask poll(long now) {
+        for (int level = 0; level < LEVELS; level++) {
+            LogTask task = pollLevel(level, now);
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the next task that runs at the given effective level: either the head of that lane,
+     * or the aged head of the lane directly below it, whichever was created first.
+     */
+    LogTask pollLevel(int level, long now) {
+        ConcurrentLinkedQueue<LogTask> lane = lanes[level];
+        ConcurrentLinkedQueue<LogTask> lower = level + 1 < LEVELS ? lanes[level + 1] : null;
+        while (true) {
+            LogTask head = lane.peek();
+            LogTask aged = lower != null ? agedHead(lower, now) : null;
+
+            // A concurrent consumer may take the peeked head first. poll() then returns the next entry,
+            // which is still the oldest one left in that lane, or null, in which case the heads are re-read.
+            LogTask task;
+            if (aged != null && (head == null || aged.getCreatedAtNanos() < head.getCreatedAtNanos())) {
+                task = pollLane(level + 1);
+                if (task != null) {
+                    promotions.increment();
+                }
+            } else if (head == null) {
+                return null;
+            } else {
+                task = pollLane(level);
+            }
+            if (task != null) {
+                return task;
+            }
+        }
+    }
+
+    @Override
+    public LogTask pollLowestBelow(TaskPriority priority) {
+        for (int level = LEVELS - 1; level > priority.ordinal(); level--) {
+            LogTask task = pollLane(level);
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public LogTask pollOldest() {
+        while (true) {
+            int oldestLevel = -1;
+            long oldestCreatedAt = Long.MAX_VALUE;
+            for (int level = 0; level < LEVELS; level++) {
+                LogTask head = lanes[level].peek();
+                if (head != null && (oldestLevel < 0 || head.getCreatedAtNanos() < oldestCreatedAt)) {
+                    oldestLevel = level;
+                    oldestCreatedAt = head.getCreatedAtNanos();
+                }
+            }
+            if (oldestLevel < 0) {
+                return null;
+            }
+            LogTask task = pollLane(oldestLevel);
+            if (task != null) {
+                return task;
+            }
+        }
+    }
+
+    private LogTask pollLane(int level) {
+        LogTask task = lanes[level].poll();
+        if (task != null) {
+            depths[level].decrement();
+        }
+        return task;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (ConcurrentLinkedQueue<LogTask> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long promotions() {
+        return promotions.sum();
+    }
+
+    private static LogTask agedHead(ConcurrentLinkedQueue<LogTask> lane, long now) {
+        LogTask head = lane.peek();
+        return head != null && isAged(head.getCreatedAtNanos(), now) ? head : null;
+    }
+
+    static boolean isAged(long createdAtNanos, long now) {
+        return now - createdAtNanos > Constants.AGE_THRESHOLD_NS;
+    }
+}
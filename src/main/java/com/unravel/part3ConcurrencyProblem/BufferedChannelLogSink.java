@@ -0,0 +1,329 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File sink that formats straight into a reusable per-thread {@link ByteBuffer} and appends whole buffers
+ * to a {@link FileChannel}.
+ * <p>
+ * Nothing is allocated per task once a thread has its buffer: the time of day, the age and the text are
+ * encoded by hand instead of going through {@code String.format}. A buffer is written out when it is
+ * nearly full, when {@link #flush()} is called (batch consumers do that once per batch) or when the
+ * thread writes after {@code flushInterval} has passed since its last write-out.
+ * A consumer that exits calls {@link #release()}, which writes out its buffer and keeps it for the next thread,
+ * so threads coming and going do not add a buffer each.
+ * The line layout matches {@link ConsoleLogSink}, except that the time is printed with millisecond precision.
+ */
+class BufferedChannelLogSink implements LogSink {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+    private static final byte[] SEPARATOR = " | ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PROCESSED = " processed ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AGE = " | age=".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MS = " ms".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AGED_NOTE = " (AGED ↑)".getBytes(StandardCharsets.UTF_8);
+    // Time, separators, age and note take well under this, the rest of a line is thread name and message
+    private static final int FIXED_PART_BYTES = 96;
+
+    private final FileChannel channel;
+    private final ReentrantLock channelLock = new ReentrantLock();
+    private final int bufferSize;
+    private final long flushIntervalNanos;
+    private final ThreadLocal<ThreadBuffer> buffers;
+    // Virtual threads live for a single task, so they share a few striped buffers instead of getting one each
+    private final ThreadBuffer[] virtualThreadBuffers;
+    // Every buffer, so close() can write out what other threads still hold
+    private final List<ThreadBuffer> allBuffers = new CopyOnWriteArrayList<>();
+    // Empty buffers given up by exited threads, handed to the next thread that needs one
+    private final Queue<ThreadBuffer> releasedBuffers = new ConcurrentLinkedQueue<>();
+    private volatile ZoneWindow zone;
+
+    BufferedChannelLogSink(Path file) throws IOException {
+        this(file, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    BufferedChannelLogSink(Path file, int bufferSize, long flushInterval, TimeUnit unit) throws IOException {
+        if (bufferSize < FIXED_PART_BYTES * 2) {
+            throw new IllegalArgumentException("Buffer size is too small: " + bufferSize);
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.bufferSize = bufferSize;
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.buffers = new ThreadLocal<>();
+        this.virtualThreadBuffers = new ThreadBuffer[Integer.highestOneBit(Runtime.getRuntime().availableProcessors()) * 2];
+        for (int i = 0; i < virtualThreadBuffers.length; i++) {
+            virtualThreadBuffers[i] = newThreadBuffer();
+        }
+        this.zone = ZoneWindow.at(System.currentTimeMillis());
+    }
+
+    @Override
+    public void write(LogTask task, long ageNs) throws IOException {
+        ThreadBuffer buffer = currentBuffer();
+        long now = System.nanoTime();
+        // Uncontended for platform threads, except while close() drains this buffer.
+        // A lock rather than synchronized, so a virtual thread writing to the channel does not pin its carrier
+        buffer.lock.lock();
+        try {
+            ByteBuffer bytes = buffer.bytes;
+            String threadName = Thread.currentThread().getName();
+            String message = task.getMessage();
+            int maxTextBytes = bytes.capacity() - FIXED_PART_BYTES;
+            if (bytes.remaining() < FIXED_PART_BYTES + 3 * (threadName.length() + message.length())) {
+                writeOut(bytes);
+            }
+
+            putTimeOfDay(bytes, System.currentTimeMillis());
+            bytes.put(SEPARATOR);
+            maxTextBytes -= putUtf8(bytes, threadName, maxTextBytes);
+            bytes.put(PROCESSED);
+            putUtf8(bytes, message, maxTextBytes);
+            bytes.put(AGE);
+            putTenths(bytes, ageNs);
+            bytes.put(MS);
+            if (ageNs > Constants.AGE_THRESHOLD_NS) {
+                bytes.put(AGED_NOTE);
+            }
+            bytes.put((byte) '\n');
+
+            if (now - buffer.lastWriteOutNanos > flushIntervalNanos) {
+                writeOut(bytes);
+                buffer.lastWriteOutNanos = now;
+            }
+        } finally {
+            buffer.lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ThreadBuffer buffer = currentBuffer();
+        buffer.lock.lock();
+        try {
+            writeOut(buffer.bytes);
+            buffer.lastWriteOutNanos = System.nanoTime();
+        } finally {
+            buffer.lock.unlock();
+        }
+    }
+
+    @Override
+    public void release() throws IOException {
+        Thread thread = Thread.currentThread();
+        if (thread.isVirtual()) {
+            flush();  // Striped buffers stay with the sink
+            return;
+        }
+        ThreadBuffer buffer = buffers.get();
+        if (buffer == null) {
+            return;
+        }
+        buffers.remove();
+        buffer.lock.lock();
+        try {
+            writeOut(buffer.bytes);
+        } finally {
+            buffer.lock.unlock();
+        }
+        releasedBuffers.offer(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (ThreadBuffer buffer : allBuffers) {
+                buffer.lock.lock();
+                try {
+                    writeOut(buffer.bytes);
+                } finally {
+                    buffer.lock.unlock();
+                }
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private ThreadBuffer currentBuffer() {
+        Thread thread = Thread.currentThread();
+        if (thread.isVirtual()) {
+            return virtualThreadBuffers[(int) (thread.threadId() & (virtualThreadBuffers.length - 1))];
+        }
+        ThreadBuffer buffer = buffers.get();
+        if (buffer == null) {
+            buffer = releasedBuffers.poll();
+            if (buffer == null) {
+                buffer = newThreadBuffer();
+            }
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Number of platform thread buffers allocated so far, which is the peak number of threads that held one
+     * at the same time.
+     */
+    int getBufferCount() {
+        return allBuffers.size() - virtualThreadBuffers.length;
+    }
+
+    private ThreadBuffer newThreadBuffer() {
+        ThreadBuffer buffer = new ThreadBuffer(ByteBuffer.allocateDirect(bufferSize));
+        allBuffers.add(buffer);
+        return buffer;
+    }
+
+    // Appends the buffer as one unit, so lines from different threads never interleave
+    private void writeOut(ByteBuffer bytes) throws IOException {
+        if (bytes.position() == 0) {
+            return;
+        }
+        bytes.flip();
+        channelLock.lock();
+        try {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+        } finally {
+            channelLock.unlock();
+            bytes.clear();
+        }
+    }
+
+    private void putTimeOfDay(ByteBuffer bytes, long epochMillis) {
+        ZoneWindow window = zone;
+        if (epochMillis >= window.validUntilMillis) {
+            window = ZoneWindow.at(epochMillis);
+            zone = window;
+        }
+        long localMillis = Math.floorMod(epochMillis + window.offsetMillis, TimeUnit.DAYS.toMillis(1));
+        putTwoDigits(bytes, (int) (localMillis / 3_600_000));
+        bytes.put((byte) ':');
+        putTwoDigits(bytes, (int) (localMillis / 60_000 % 60));
+        bytes.put((byte) ':');
+        putTwoDigits(bytes, (int) (localMillis / 1_000 % 60));
+        bytes.put((byte) '.');
+        int millis = (int) (localMillis % 1_000);
+        bytes.put((byte) ('0' + millis / 100));
+        putTwoDigits(bytes, millis % 100);
+    }
+
+    private static void putTwoDigits(ByteBuffer bytes, int value) {
+        bytes.put((byte) ('0' + value / 10));
+        bytes.put((byte) ('0' + value % 10));
+    }
+
+    // Same rounding as "%.1f" of the age in milliseconds
+    private static void putTenths(ByteBuffer bytes, long ageNs) {
+        long tenths = Math.round(ageNs / 100_000.0);
+        if (tenths < 0) {
+            bytes.put((byte) '-');
+            tenths = -tenths;
+        }
+        putLong(bytes, tenths / 10);
+        bytes.put((byte) '.');
+        bytes.put((byte) ('0' + tenths % 10));
+    }
+
+    private static void putLong(ByteBuffer bytes, long value) {
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            bytes.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Encodes the text as UTF-8 without an intermediate array, stopping before {@code maxBytes} is exceeded.
+     *
+     * @return the number of bytes written
+     */
+    static int putUtf8(ByteBuffer bytes, CharSequence text, int maxBytes) {
+        int start = bytes.position();
+        int limit = start + maxBytes;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (bytes.position() + 1 > limit) {
+                    break;
+                }
+                bytes.put((byte) c);
+            } else if (c < 0x800) {
+                if (bytes.position() + 2 > limit) {
+                    break;
+                }
+                bytes.put((byte) (0xC0 | c >> 6));
+                bytes.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                if (bytes.position() + 4 > limit) {
+                    break;
+                }
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                bytes.put((byte) (0xF0 | codePoint >> 18));
+                bytes.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                bytes.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                bytes.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate has no UTF-8 form, it is written as '?' like String.getBytes does
+                if (bytes.position() + 1 > limit) {
+                    break;
+                }
+                bytes.put((byte) '?');
+            } else {
+                if (bytes.position() + 3 > limit) {
+                    break;
+                }
+                bytes.put((byte) (0xE0 | c >> 12));
+                bytes.put((byte) (0x80 | c >> 6 & 0x3F));
+                bytes.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        return bytes.position() - start;
+    }
+
+    private static final class ThreadBuffer {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final ByteBuffer bytes;
+        private long lastWriteOutNanos = System.nanoTime();
+
+        private ThreadBuffer(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * The zone offset together with the moment it stops being valid (the next DST transition),
+     * so the offset is looked up once per transition instead of once per line.
+     */
+    private record ZoneWindow(long offsetMillis, long validUntilMillis) {
+        static ZoneWindow at(long epochMillis) {
+            ZoneRules rules = ZoneId.systemDefault().getRules();
+            Instant instant = Instant.ofEpochMilli(epochMillis);
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            long validUntil = next != null ? next.toEpochSecond() * 1_000 : Long.MAX_VALUE;
+            return new ZoneWindow(rules.getOffset(instant).getTotalSeconds() * 1_000L, validUntil);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Allocation-free alternative to {@link LogProcessor} built on a preallocated pool of {@link LogSlot}s.
+ * <p>
+ * Producers claim a free slot, fill it and publish it. Consumers take a slot, process it and release it
+ * back to the pool. Free slots and the per-priority lanes are array-based {@link SlotRing}s, so once the
+ * pool is built the steady state creates no garbage. Scheduling follows the same rules as
+ * {@link AgingLaneScheduler}: FIFO per priority with a single aging promotion step.
+ * The pool size is also the capacity: {@link #claimSlot} blocks while all slots are in use.
+ */
+class CompactLogProcessor {
+    private static final int LEVELS = TaskPriority.values().length;
+
+    private final SlotRing freeSlots;
+    private final SlotRing[] lanes = new SlotRing[LEVELS];
+
+    // Same "lock only when idle" scheme as LogProcessor, for consumers and for producers waiting for a slot
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition notEmpty = idleLock.newCondition();
+    private final Condition slotFreed = idleLock.newCondition();
+    private final AtomicInteger idleConsumers = new AtomicInteger();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+
+    /**
+     * @param capacity        number of slots, a power of two
+     * @param messageCapacity maximum message length in bytes, longer messages are cut off
+     */
+    CompactLogProcessor(int capacity, int messageCapacity) {
+        this.freeSlots = new SlotRing(capacity);
+        for (int level = 0; level < LEVELS; level++) {
+            lanes[level] = new SlotRing(capacity);
+        }
+        for (int i = 0; i < capacity; i++) {
+            freeSlots.offer(new LogSlot(messageCapacity));
+        }
+    }
+
+    /**
+     * Takes a free slot, stamped with the priority and the current time, waiting while the pool is exhausted.
+     */
+    LogSlot claimSlot(TaskPriority priority) throws InterruptedException {
+        LogSlot slot = freeSlots.poll();
+        while (slot == null) {
+            slot = awaitFreeSlot();
+        }
+        slot.reset(priority, System.nanoTime());
+        return slot;
+    }
+
+    void produceLog(LogSlot slot) {
+        // Lanes are as large as the pool, so there is always room for a claimed slot
+        lanes[slot.getPriority().ordinal()].offer(slot);
+        if (idleConsumers.get() > 0) {
+            signal(notEmpty);
+        }
+    }
+
+    LogSlot consumeLog() throws InterruptedException {
+        LogSlot slot = poll();
+        while (slot == null) {
+            slot = awaitPublishedSlot();
+        }
+        return slot;
+    }
+
+    void release(LogSlot slot) {
+        freeSlots.offer(slot);
+        if (blockedProducers.get() > 0) {
+            signal(slotFreed);
+        }
+    }
+
+    long getQueueDepth(TaskPriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+
+    int getFreeSlots() {
+        return freeSlots.size();
+    }
+
+    private LogSlot poll() {
+        long now = System.nanoTime();
+        for (int level = 0; level < LEVELS; level++) {
+            LogSlot slot = pollLevel(level, now);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    // The head of this lane or the aged head of the lane below, whichever is older (see AgingLaneScheduler)
+    private LogSlot pollLevel(int level, long now) {
+        SlotRing lane = lanes[level];
+        SlotRing lower = level + 1 < LEVELS ? lanes[level + 1] : null;
+        while (true) {
+            LogSlot head = lane.peek();
+            LogSlot aged = lower != null ? lower.peek() : null;
+            if (aged != null && !AgingLaneScheduler.isAged(aged.getCreatedAtNanos(), now)) {
+                aged = null;
+            }
+
+            LogSlot slot;
+            if (aged != null && (head == null || aged.getCreatedAtNanos() < head.getCreatedAtNanos())) {
+                slot = lower.poll();
+            } else if (head == null) {
+                return null;
+            } else {
+                slot = lane.poll();
+            }
+            if (slot != null) {
+                return slot;
+            }
+        }
+    }
+
+    private LogSlot awaitPublishedSlot() throws InterruptedException {
+        idleLock.lockInterruptibly();
+        try {
+            idleConsumers.incrementAndGet();
+            try {
+                // Re-check after registering as idle, so a producer that missed the counter is not missed here
+                LogSlot slot = poll();
+                if (slot == null) {
+                    notEmpty.await();
+                }
+                return slot;
+            } finally {
+                idleConsumers.decrementAndGet();
+            }
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private LogSlot awaitFreeSlot() throws InterruptedException {
+        idleLock.lockInterruptibly();
+        try {
+            blockedProducers.incrementAndGet();
+            try {
+                LogSlot slot = freeSlots.poll();
+                if (slot == null) {
+                    slotFreed.await();
+                }
+                return slot;
+            } finally {
+                blockedProducers.decrementAndGet();
+            }
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        idleLock.lock();
+        try {
+            condition.signal();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+}
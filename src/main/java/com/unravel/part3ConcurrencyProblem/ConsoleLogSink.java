@@ -0,0 +1,41 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.io.PrintStream;
+import java.time.LocalTime;
+
+/**
+ * The original console output: one {@code printf} per task on a shared {@link PrintStream}.
+ * Simple, but it allocates a {@link LocalTime}, a formatter and boxed values per line and takes the stream lock.
+ */
+class ConsoleLogSink implements LogSink {
+    static final ConsoleLogSink STDOUT = new ConsoleLogSink(System.out);
+
+    private final PrintStream out;
+
+    ConsoleLogSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(LogTask task, long ageNs) {
+        String agingNote = ageNs > Constants.AGE_THRESHOLD_NS ? " (AGED ↑)" : "";
+
+        out.printf("%s | %s processed %s | age=%.1f ms%s%n",
+                LocalTime.now(),
+                Thread.currentThread().getName(),
+                task.getMessage(),
+                ageNs / Constants.NS_TO_MS,
+                agingNote);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // System.out is shared with the rest of the application, so it is only flushed
+        flush();
+    }
+}
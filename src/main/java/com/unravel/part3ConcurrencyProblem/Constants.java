@@ -4,4 +4,5 @@ public class Constants {
     public static final long AGE_THRESHOLD_NS = 100_000_000L;  // 100 ms threshold for aging
     public static final double NS_TO_MS = 1_000_000.0;  // Conversion factor from nanoseconds to milliseconds
     public static final int TOTAL_TASKS = 100;
+    public static final long BATCH_MAX_WAIT_MS = 10;  // How long a batch consumer waits for the first task of a batch
 }
\ No newline at end of file
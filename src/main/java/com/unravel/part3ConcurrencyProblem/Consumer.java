@@ -2,36 +2,113 @@ package com.unravel.part3ConcurrencyProblem;
 
 import lombok.AllArgsConstructor;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 @AllArgsConstructor
 class Consumer implements Runnable {
     private LogProcessor processor;
     private CountDownLatch latch;
+    private int batchSize;  // 1 takes tasks one by one, anything larger drains batches
+    private LogSink sink;
+
+    Consumer(LogProcessor processor, CountDownLatch latch) {
+        this(processor, latch, 1);
+    }
+
+    Consumer(LogProcessor processor, CountDownLatch latch, int batchSize) {
+        this(processor, latch, batchSize, ConsoleLogSink.STDOUT);
+    }
+
+    // For consumers that run until the processor is drained, there is nothing to count down
+    Consumer(LogProcessor processor, int batchSize, LogSink sink) {
+        this(processor, new CountDownLatch(0), batchSize, sink);
+    }
 
     @Override
     public void run() {
         try {
-            while (true) {
-                LogTask task = processor.consumeLog();
-
-                long now = System.nanoTime();
-                long ageNs = now - task.getCreatedAtNanos();
+            if (batchSize > 1) {
+                runBatched();
+            } else {
+                runSingle();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Log sink failed", e);
+        } finally {
+            releaseSink();
+        }
+    }
 
-                String agingNote = ageNs > Constants.AGE_THRESHOLD_NS ? " (AGED ↑)" : "";
+    private void releaseSink() {
+        try {
+            sink.release();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to release the log sink", e);
+        }
+    }
 
-                System.out.printf("%s | %s processed %s | age=%.1f ms%s%n",
-                        java.time.LocalTime.now(),
-                        Thread.currentThread().getName(),
-                        task.getMessage(),
-                        ageNs / Constants.NS_TO_MS,
-                        agingNote);
+    // Both loops end once the processor is shut down and drained
+    private void runSingle() throws InterruptedException, IOException {
+        LogTask task;
+        while ((task = processor.consumeLog()) != null) {
+            try {
+                process(task, sink, processor.getMetrics());
+            } catch (InterruptedException e) {
+                processor.requeue(task);
+                throw e;
+            }
+            latch.countDown();
+        }
+    }
 
-                Thread.sleep(1);  // Simulate processing delay to allow aging
-                latch.countDown();
+    private void runBatched() throws InterruptedException, IOException {
+        List<LogTask> batch = new ArrayList<>(batchSize);
+        while (!processor.isDrained()) {
+            batch.clear();
+            if (processor.drainTo(batch, batchSize, Constants.BATCH_MAX_WAIT_MS, TimeUnit.MILLISECONDS) == 0) {
+                continue;
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    process(batch.get(i), sink, processor.getMetrics());
+                } catch (InterruptedException e) {
+                    // Hand back what this batch did not get to, and still acknowledge what it did
+                    for (LogTask unprocessed : batch.subList(i, batch.size())) {
+                        processor.requeue(unprocessed);
+                    }
+                    sink.flush();
+                    acknowledge(i);
+                    throw e;
+                }
+            }
+            sink.flush();
+            acknowledge(batch.size());
+        }
+    }
+
+    static void process(LogTask task, LogSink sink, LogPipelineMetrics metrics)
+            throws InterruptedException, IOException {
+        long startedAt = System.nanoTime();
+        long ageNs = startedAt - task.getCreatedAtNanos();
+        Thread.sleep(1);  // Simulate processing delay to allow aging
+
+        // Written last, so a task interrupted above has left no trace and can be requeued
+        sink.write(task, ageNs);
+        metrics.recordProcessed(task.getPriority(), ageNs, System.nanoTime() - startedAt);
+    }
+
+    // The whole batch is acknowledged at once, after it has been processed.
+    // CountDownLatch has no bulk countDown, but each call is a single CAS that only wakes waiters at zero.
+    private void acknowledge(int processed) {
+        for (int i = 0; i < processed; i++) {
+            latch.countDown();
         }
     }
 }
@@ -0,0 +1,11 @@
+package com.unravel.part3ConcurrencyProblem;
+
+/**
+ * How {@link LogProcessingApp} runs its consumers.
+ */
+enum ConsumerMode {
+    // A fixed pool of platform threads, each running a Consumer loop
+    PLATFORM_THREADS,
+    // One virtual thread per in-flight task, see VirtualThreadConsumerPool
+    VIRTUAL_THREADS
+}
@@ -0,0 +1,144 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a {@link LogProcessor} with its consumers as part of the application lifecycle.
+ * <p>
+ * Consumers start with the context. On shutdown the processor stops accepting tasks, consumers drain what is
+ * queued and exit, and whatever is left when {@code log.pipeline.shutdown-timeout} runs out is interrupted and
+ * reported per priority. The pipeline stops after the web server, so requests that are still finishing can
+ * queue their last tasks. Its metrics are bound to the application's meter registry.
+ */
+@Slf4j
+@Component
+public class LogPipeline implements SmartLifecycle, MeterBinder {
+    // Lower than the web server phases, so the pipeline starts before and stops after the server
+    static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final LogProcessor processor;
+    private final int consumers;
+    private final int batchSize;
+    private final LogSink sink;
+    private final Duration shutdownTimeout;
+    private ExecutorService consumerExecutor;
+    private volatile boolean running;
+    private volatile Map<TaskPriority, Long> undrained = Map.of();
+
+    public LogPipeline(@Value("${log.pipeline.capacity:100000}") int capacity,
+                       @Value("${log.pipeline.overflow-policy:DROP_LOW_FIRST}") OverflowPolicy overflowPolicy,
+                       @Value("${log.pipeline.consumers:2}") int consumers,
+                       @Value("${log.pipeline.batch-size:16}") int batchSize,
+                       @Value("${log.pipeline.shutdown-timeout:10s}") Duration shutdownTimeout) {
+        this(new LogProcessor(capacity, overflowPolicy), consumers, batchSize, ConsoleLogSink.STDOUT, shutdownTimeout);
+    }
+
+    LogPipeline(LogProcessor processor, int consumers, int batchSize, LogSink sink, Duration shutdownTimeout) {
+        if (consumers <= 0) {
+            throw new IllegalArgumentException("Consumer count must be positive: " + consumers);
+        }
+        this.processor = processor;
+        this.consumers = consumers;
+        this.batchSize = batchSize;
+        this.sink = sink;
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    /**
+     * Queues a task, see {@link LogProcessor#produceLog(LogTask)}.
+     *
+     * @return {@code false} if the task was dropped or the pipeline is shutting down
+     */
+    public boolean submit(TaskPriority priority, String message) {
+        return processor.produceLog(new LogTask(priority, message, System.nanoTime()));
+    }
+
+    public LogProcessor getProcessor() {
+        return processor;
+    }
+
+    /**
+     * Tasks per priority that were still queued when the last shutdown gave up, empty if it drained everything.
+     */
+    public Map<TaskPriority, Long> getUndrainedCounts() {
+        return undrained;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        consumerExecutor = Executors.newFixedThreadPool(consumers);
+        for (int i = 0; i < consumers; i++) {
+            consumerExecutor.submit(new Consumer(processor, batchSize, sink));
+        }
+        running = true;
+        log.info("Log pipeline started with {} consumers", consumers);
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        processor.shutdown();
+        consumerExecutor.shutdown();
+        try {
+            if (!consumerExecutor.awaitTermination(shutdownTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                // Interrupted consumers put their unfinished tasks back, so they show up in the report below
+                consumerExecutor.shutdownNow();
+                consumerExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            consumerExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        reportUndrained();
+        try {
+            sink.close();
+        } catch (IOException e) {
+            log.error("Failed to close the log sink", e);
+        }
+        processor.close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        processor.getMetrics().bindTo(registry);
+    }
+
+    private void reportUndrained() {
+        Map<TaskPriority, Long> counts = processor.getUndrainedCounts();
+        if (counts.values().stream().allMatch(count -> count == 0)) {
+            undrained = Map.of();
+            log.info("Log pipeline drained completely");
+        } else {
+            undrained = counts;
+            log.warn("Log pipeline stopped after {} with undrained tasks: {}", shutdownTimeout, counts);
+        }
+    }
+}
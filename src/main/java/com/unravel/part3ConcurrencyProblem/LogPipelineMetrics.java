@@ -0,0 +1,100 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and starvation metrics of one {@link LogProcessor}, published through Micrometer.
+ * <p>
+ * Per {@link TaskPriority} there is a timer for the queue wait (creation until processing starts) and one
+ * for the processing time, each with p50/p99/p99.9 and a bucket at {@link Constants#AGE_THRESHOLD_NS}, so an
+ * alert on LOW tasks waiting past the aging threshold needs no extra instrumentation. Queue depth, dropped
+ * tasks and aged promotions are read from the processor only when a registry polls them.
+ * <p>
+ * The timers record into HdrHistogram recorders, which are wait-free for writers. Until {@link #bindTo} is
+ * called the meters have no backing registry and recording costs a lookup of an empty child list.
+ */
+public class LogPipelineMetrics implements MeterBinder {
+    static final String QUEUE_WAIT = "log.pipeline.queue.wait";
+    static final String PROCESSING = "log.pipeline.processing";
+    static final String QUEUE_DEPTH = "log.pipeline.queue.depth";
+    static final String DROPPED = "log.pipeline.dropped";
+    static final String PROMOTIONS = "log.pipeline.promotions";
+
+    private static final String PRIORITY_TAG = "priority";
+
+    // Meters are registered here once, bindTo() only attaches further registries
+    private final CompositeMeterRegistry registries = new CompositeMeterRegistry();
+    private final Timer[] queueWait = new Timer[TaskPriority.values().length];
+    private final Timer[] processing = new Timer[TaskPriority.values().length];
+
+    LogPipelineMetrics(LogProcessor processor) {
+        for (TaskPriority priority : TaskPriority.values()) {
+            int level = priority.ordinal();
+            queueWait[level] = latencyTimer(QUEUE_WAIT, "Time from task creation until processing starts", priority);
+            processing[level] = latencyTimer(PROCESSING, "Time spent processing a task", priority);
+            Gauge.builder(QUEUE_DEPTH, processor, p -> p.getQueueDepth(priority))
+                    .description("Tasks currently queued")
+                    .tag(PRIORITY_TAG, priority.name())
+                    .strongReference(true)
+                    .register(registries);
+            FunctionCounter.builder(DROPPED, processor, p -> p.getDroppedCount(priority))
+                    .description("Tasks rejected or evicted by the overflow policy")
+                    .tag(PRIORITY_TAG, priority.name())
+                    .register(registries);
+        }
+        FunctionCounter.builder(PROMOTIONS, processor, LogProcessor::getPromotionCount)
+                .description("Tasks taken one level above their priority because they had aged")
+                .register(registries);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        registries.add(registry);
+    }
+
+    /**
+     * @param waitNs       time from task creation until processing started
+     * @param processingNs time spent processing the task
+     */
+    void recordProcessed(TaskPriority priority, long waitNs, long processingNs) {
+        queueWait[priority.ordinal()].record(waitNs, TimeUnit.NANOSECONDS);
+        processing[priority.ordinal()].record(processingNs, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Prints count, mean and percentiles of the queue wait per priority, taken from the first bound registry.
+     */
+    void printSummary(PrintStream out) {
+        for (TaskPriority priority : TaskPriority.values()) {
+            HistogramSnapshot wait = queueWait[priority.ordinal()].takeSnapshot();
+            StringBuilder line = new StringBuilder()
+                    .append(String.format("%-6s wait: count=%d mean=%.1f ms", priority, wait.count(),
+                            wait.mean(TimeUnit.MILLISECONDS)));
+            for (ValueAtPercentile percentile : wait.percentileValues()) {
+                line.append(String.format(" p%s=%.1f ms", percentile.percentile() * 100,
+                        percentile.value(TimeUnit.MILLISECONDS)));
+            }
+            out.println(line.append(String.format(" max=%.1f ms", wait.max(TimeUnit.MILLISECONDS))));
+        }
+    }
+
+    private Timer latencyTimer(String name, String description, TaskPriority priority) {
+        return Timer.builder(name)
+                .description(description)
+                .tag(PRIORITY_TAG, priority.name())
+                .publishPercentiles(0.5, 0.99, 0.999)
+                .serviceLevelObjectives(Duration.ofNanos(Constants.AGE_THRESHOLD_NS))
+                .register(registries);
+    }
+}
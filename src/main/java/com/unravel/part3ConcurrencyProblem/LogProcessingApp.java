@@ -1,30 +1,56 @@
 package com.unravel.part3ConcurrencyProblem;
 
-import java.util.concurrent.CountDownLatch;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
-import static com.unravel.part3ConcurrencyProblem.Constants.TOTAL_TASKS;
-
 public class LogProcessingApp {
-    public static void main(String[] args) throws InterruptedException {
-        LogProcessor processor = new LogProcessor();
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int numProducers = 1;
+        // With several producers each one writes to its own shard, consumers steal across shards
+        LogProcessor processor = numProducers > 1 ? LogProcessor.sharded(numProducers) : new LogProcessor();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        processor.getMetrics().bindTo(registry);
 
-        ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
-        producerExecutor.submit(new Producer(processor));
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(numProducers);
+        for (int i = 0; i < numProducers; i++) {
+            producerExecutor.submit(new Producer(processor));
+        }
 
+        ConsumerMode consumerMode = ConsumerMode.PLATFORM_THREADS;
         int numConsumers = 1;
-        CountDownLatch latch = new CountDownLatch(TOTAL_TASKS);  // Matches the number of tasks produced
-        ExecutorService consumerExecutor = Executors.newFixedThreadPool(numConsumers);
-        for (int i = 0; i < numConsumers; i++) {
-            consumerExecutor.submit(new Consumer(processor, latch));
+        int batchSize = 1;  // > 1 switches consumers to batched draining
+        int maxInFlight = 64;  // Concurrency limit for VIRTUAL_THREADS mode
+        // Swap for new BufferedChannelLogSink(Path.of("log-processing.log")) to write to a file instead
+        LogSink sink = ConsoleLogSink.STDOUT;
+        ExecutorService consumerExecutor;
+        if (consumerMode == ConsumerMode.VIRTUAL_THREADS) {
+            consumerExecutor = Executors.newSingleThreadExecutor();  // Runs the dispatcher loop
+            consumerExecutor.submit(new VirtualThreadConsumerPool(processor, maxInFlight, sink));
+        } else {
+            consumerExecutor = Executors.newFixedThreadPool(numConsumers);
+            for (int i = 0; i < numConsumers; i++) {
+                consumerExecutor.submit(new Consumer(processor, batchSize, sink));
+            }
         }
 
         producerExecutor.shutdown();
         producerExecutor.awaitTermination(10, TimeUnit.SECONDS);
 
-        latch.await();
-        consumerExecutor.shutdownNow();
+        // Everything is produced: stop accepting, let consumers finish what is queued, then give up on the rest
+        processor.shutdown();
+        consumerExecutor.shutdown();
+        if (!consumerExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+            consumerExecutor.shutdownNow();
+            consumerExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        sink.close();
+        System.out.println("Undrained tasks: " + processor.getUndrainedCounts());
+
+        processor.getMetrics().printSummary(System.out);
+        System.out.println("Aged promotions: " + processor.getPromotionCount());
     }
 }
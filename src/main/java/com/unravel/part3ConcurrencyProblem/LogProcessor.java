@@ -1,15 +1,524 @@
 package com.unravel.part3ConcurrencyProblem;
 
-import java.util.concurrent.PriorityBlockingQueue;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
 
-public class LogProcessor {
-    private final PriorityBlockingQueue<LogTask> queue = new PriorityBlockingQueue<>();
+public class LogProcessor implements Closeable {
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+    // 128 bytes between two producer counters, which also covers adjacent line prefetching
+    private static final int PRODUCER_COUNTER_STRIDE = 16;
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
 
-    public void produceLog(LogTask task) {
-        queue.put(task);
+    private final TaskScheduler scheduler;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    // Tasks on the heap. Only maintained in bounded and spill mode, the unbounded path never touches it
+    private final AtomicInteger size = new AtomicInteger();
+    // Spill mode only: tasks beyond inMemoryDepth go to the spool
+    private final LogSpool spool;
+    private final int inMemoryDepth;
+    private final LongAdder[] dropped = new LongAdder[TaskPriority.values().length];
+    private final LogPipelineMetrics metrics = new LogPipelineMetrics(this);
+
+    // Consumers only take the lock when the lanes are empty, producers only when someone is waiting.
+    // The same applies to producers blocked on a full queue
+    private final ReentrantLock idleLock = new ReentrantLock();
+    private final Condition notEmpty = idleLock.newCondition();
+    private final Condition notFull = idleLock.newCondition();
+    private final AtomicInteger idleConsumers = new AtomicInteger();
+    private final AtomicInteger blockedProducers = new AtomicInteger();
+    // Producers between their shutdown check and the end of their enqueue, counted per shard of the scheduler and
+    // padded to a cache line each, so producers of different shards do not contend. The processor is not drained
+    // while there are any, or a task accepted just before shutdown could land after the consumers have exited
+    private final AtomicLongArray activeProducers;
+    private volatile boolean shutdown;
+
+    public LogProcessor() {
+        this(UNBOUNDED, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates a processor that holds at most {@code capacity} tasks. A {@link LogTask} with a short message
+     * takes roughly 100 bytes including its lane node, which is a reasonable start for sizing against a memory budget.
+     *
+     * @param capacity       maximum number of queued tasks
+     * @param overflowPolicy what happens to a new task when the queue is full
+     */
+    public LogProcessor(int capacity, OverflowPolicy overflowPolicy) {
+        this(new AgingLaneScheduler(), capacity, overflowPolicy);
+    }
+
+    LogProcessor(TaskScheduler scheduler, int capacity, OverflowPolicy overflowPolicy) {
+        this(scheduler, capacity, overflowPolicy, null, UNBOUNDED);
     }
 
+    private LogProcessor(TaskScheduler scheduler, int capacity, OverflowPolicy overflowPolicy,
+                         LogSpool spool, int inMemoryDepth) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (inMemoryDepth <= 0) {
+            throw new IllegalArgumentException("In-memory depth must be positive: " + inMemoryDepth);
+        }
+        this.scheduler = scheduler;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.spool = spool;
+        this.inMemoryDepth = inMemoryDepth;
+        this.activeProducers = new AtomicLongArray(scheduler.shardCount() * PRODUCER_COUNTER_STRIDE);
+        for (int i = 0; i < dropped.length; i++) {
+            dropped[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Creates an unbounded processor with one shard per producer thread (round-robin when there are more
+     * producers than shards). Idle consumers steal from other shards.
+     */
+    public static LogProcessor sharded(int shardCount) {
+        return new LogProcessor(new ShardedLaneScheduler(shardCount), UNBOUNDED, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Creates an unbounded processor that keeps at most {@code inMemoryDepth} tasks on the heap and appends
+     * the rest to a memory-mapped {@link LogSpool} in {@code spoolDirectory}. Spooled tasks move back into memory
+     * in priority order as consumers catch up, and a spooled task is never taken after a lower-priority one that stayed
+     * on the heap. Tasks left in the spool by a previous run are picked up again,
+     * tasks that were on the heap when the JVM died are lost.
+     */
+    public static LogProcessor spilling(int inMemoryDepth, Path spoolDirectory) throws IOException {
+        return new LogProcessor(new AgingLaneScheduler(), UNBOUNDED, OverflowPolicy.BLOCK,
+                new LogSpool(spoolDirectory), inMemoryDepth);
+    }
+
+    /**
+     * Queues the task. In bounded mode the {@link OverflowPolicy} decides what happens when the queue is full.
+     *
+     * @return {@code false} if this task was dropped instead of queued, or the processor is shut down
+     */
+    public boolean produceLog(LogTask task) {
+        // A thread keeps its home shard, so the decrement below hits the same counter
+        int counter = scheduler.homeShard() * PRODUCER_COUNTER_STRIDE;
+        activeProducers.incrementAndGet(counter);
+        try {
+            if (shutdown) {
+                return false;
+            }
+            if (isBounded() && !reserveSlot(task)) {
+                if (!shutdown) {  // A producer blocked on a full queue during shutdown is turned away, not dropped
+                    dropped[task.getPriority().ordinal()].increment();
+                }
+                return false;
+            }
+            enqueue(task);
+            return true;
+        } finally {
+            // The last producer out after shutdown wakes the consumers waiting for it, so they can see the drain
+            if (activeProducers.decrementAndGet(counter) == 0 && shutdown && activeProducerCount() == 0) {
+                signalAll(notEmpty);
+            }
+        }
+    }
+
+    /**
+     * Puts back a task that a consumer took but could not process, even after {@link #shutdown()},
+     * so it is either picked up again or reported by {@link #getUndrainedCounts()}.
+     */
+    void requeue(LogTask task) {
+        if (isBounded()) {
+            size.incrementAndGet();  // May briefly exceed the capacity, the task already had a slot
+        }
+        enqueue(task);
+    }
+
+    /**
+     * Takes the next task, waiting while the queue is empty.
+     *
+     * @return the task, or {@code null} once the processor is shut down and everything queued has been taken
+     */
     public LogTask consumeLog() throws InterruptedException {
-        return queue.take();
+        LogTask task = poll();
+        while (task == null) {
+            if (isDrained()) {
+                return null;
+            }
+            task = awaitTask();
+        }
+        return task;
+    }
+
+    /**
+     * Stops accepting new tasks. Consumers keep taking what is queued, including the tasks of producers that were
+     * already past the shutdown check. After that {@link #consumeLog()} returns {@code null} and {@link #drainTo}
+     * returns 0 without waiting. Producers blocked on a full queue are released and their tasks rejected.
+     */
+    public void shutdown() {
+        shutdown = true;
+        idleLock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Whether the processor is shut down, no producer is still queuing a task and no task is left queued.
+     * Tasks already taken may still be in progress.
+     */
+    public boolean isDrained() {
+        // Producers are read before the queue, a producer that has left has already enqueued
+        return shutdown && activeProducerCount() == 0 && isEmpty();
+    }
+
+    // Exact for the drain check: a producer that increments a counter already read then sees the shutdown and
+    // does not enqueue, one that decrements a counter not yet read has already enqueued
+    private long activeProducerCount() {
+        long count = 0;
+        for (int i = 0; i < activeProducers.length(); i += PRODUCER_COUNTER_STRIDE) {
+            count += activeProducers.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Tasks still queued per priority, including spooled ones. After {@link #shutdown()} and the drain deadline
+     * this is the work that was not processed.
+     */
+    public Map<TaskPriority, Long> getUndrainedCounts() {
+        Map<TaskPriority, Long> counts = new EnumMap<>(TaskPriority.class);
+        for (TaskPriority priority : TaskPriority.values()) {
+            counts.put(priority, getQueueDepth(priority));
+        }
+        return counts;
+    }
+
+    private void enqueue(LogTask task) {
+        if (shouldSpill(task)) {
+            try {
+                spool.append(task);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to spool " + task.getMessage(), e);
+            }
+        } else {
+            if (spool != null) {
+                size.incrementAndGet();
+            }
+            scheduler.offer(task);
+        }
+        if (idleConsumers.get() > 0) {
+            signal(notEmpty);
+        }
+    }
+
+    /**
+     * Waits up to {@code maxWait} for the first task, then moves up to {@code maxItems} tasks into the batch
+     * without blocking. Tasks come out in the same priority and aging order as {@link #consumeLog()}.
+     *
+     * @return the number of tasks added, 0 if nothing arrived within {@code maxWait} or the processor is drained
+     */
+    public int drainTo(Collection<? super LogTask> batch, int maxItems, long maxWait, TimeUnit unit)
+            throws InterruptedException {
+        if (maxItems <= 0) {
+            return 0;
+        }
+        int drained = drainAvailable(batch, maxItems);
+        long remainingNanos = unit.toNanos(maxWait);
+        while (drained == 0 && remainingNanos > 0 && !isDrained()) {
+            long deadline = System.nanoTime() + remainingNanos;
+            LogTask first = awaitTask(remainingNanos);
+            if (first != null) {
+                batch.add(first);
+                drained = 1 + drainAvailable(batch, maxItems - 1);
+            }
+            remainingNanos = deadline - System.nanoTime();
+        }
+        return drained;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of tasks currently queued with the given priority, including spooled ones.
+     */
+    public long getQueueDepth(TaskPriority priority) {
+        return spool != null ? scheduler.depth(priority) + spool.depth(priority) : scheduler.depth(priority);
+    }
+
+    /**
+     * Number of tasks of the given priority that are waiting in the spool rather than on the heap.
+     */
+    public long getSpooledCount(TaskPriority priority) {
+        return spool != null ? spool.depth(priority) : 0;
+    }
+
+    /**
+     * Number of tasks of the given priority lost to the {@link OverflowPolicy}, either rejected or evicted.
+     */
+    public long getDroppedCount(TaskPriority priority) {
+        return dropped[priority.ordinal()].sum();
+    }
+
+    /**
+     * Number of tasks that were consumed one level above their priority because they had aged.
+     */
+    public long getPromotionCount() {
+        return scheduler.promotions();
+    }
+
+    /**
+     * Latency histograms and counters of this processor, bind them to a {@code MeterRegistry} to publish them.
+     */
+    public LogPipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getShardCount() {
+        return scheduler.shardCount();
+    }
+
+    /**
+     * Number of tasks queued in the given shard, across all priorities.
+     */
+    public long getShardDepth(int shard) {
+        return scheduler.shardDepth(shard);
+    }
+
+    /**
+     * Closes the spool, forcing spooled tasks to disk. Does nothing unless the processor is in spill mode.
+     */
+    @Override
+    public void close() {
+        if (spool != null) {
+            spool.close();
+        }
+    }
+
+    private boolean isEmpty() {
+        return scheduler.isEmpty() && (spool == null || spool.isEmpty());
+    }
+
+    private boolean isBounded() {
+        return capacity != UNBOUNDED;
+    }
+
+    // Once a lane has spooled tasks, newer tasks of that priority follow them to keep the lane FIFO
+    private boolean shouldSpill(LogTask task) {
+        return spool != null && (size.get() >= inMemoryDepth || spool.depth(task.getPriority()) > 0);
+    }
+
+    // Moves spooled tasks back onto the heap while there is room. Concurrent consumers may overshoot
+    // inMemoryDepth by a few tasks, which only delays the next spill
+    private void refill() {
+        if (spool == null || spool.isEmpty()) {
+            return;
+        }
+        while (size.get() < inMemoryDepth) {
+            if (!moveSpooledToHeap()) {
+                return;
+            }
+        }
+    }
+
+    // A task spills when the heap is full, whatever its priority. Before consumers take from the heap, spooled tasks
+    // that outrank a task on it are moved up too, up to limit of them, so they are not taken after lower ones.
+    // They are taken before those, so the heap is only over inMemoryDepth until then
+    private void promoteSpooled(int limit) {
+        if (spool == null || spool.isEmpty()) {
+            return;
+        }
+        for (int moved = 0; moved < limit && highestLevel(spool::depth) < lowestLevel(scheduler::depth); moved++) {
+            if (!moveSpooledToHeap()) {
+                return;
+            }
+        }
+    }
+
+    private boolean moveSpooledToHeap() {
+        LogTask task;
+        try {
+            task = spool.poll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read from the spool", e);
+        }
+        if (task == null) {
+            return false;
+        }
+        size.incrementAndGet();
+        scheduler.offer(task);
+        return true;
+    }
+
+    // Level of the highest priority with queued tasks, or the number of levels if there are none
+    private static int highestLevel(ToLongFunction<TaskPriority> depth) {
+        for (TaskPriority priority : PRIORITIES) {
+            if (depth.applyAsLong(priority) > 0) {
+                return priority.ordinal();
+            }
+        }
+        return PRIORITIES.length;
+    }
+
+    // Level of the lowest priority with queued tasks, or -1 if there are none
+    private static int lowestLevel(ToLongFunction<TaskPriority> depth) {
+        for (int level = PRIORITIES.length - 1; level >= 0; level--) {
+            if (depth.applyAsLong(PRIORITIES[level]) > 0) {
+                return level;
+            }
+        }
+        return -1;
+    }
+
+    private LogTask poll() {
+        refill();
+        promoteSpooled(1);
+        LogTask task = scheduler.poll();
+        if (task != null) {
+            releaseSlots(1);
+        }
+        return task;
+    }
+
+    private int drainAvailable(Collection<? super LogTask> batch, int maxItems) {
+        refill();
+        promoteSpooled(maxItems);
+        int drained = scheduler.drainTo(batch, maxItems);
+        releaseSlots(drained);
+        return drained;
+    }
+
+    /**
+     * Claims room for one more task, applying the overflow policy when the queue is full.
+     * An evicted task hands its slot over to the new one, so the size does not change in that case.
+     */
+    private boolean reserveSlot(LogTask task) {
+        while (true) {
+            int current = size.get();
+            if (current < capacity) {
+                if (size.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+                continue;
+            }
+            LogTask evicted;
+            switch (overflowPolicy) {
+                case BLOCK:
+                    if (shutdown || !awaitSlot()) {
+                        return false;
+                    }
+                    continue;
+                case DROP_LOW_FIRST:
+                    evicted = scheduler.pollLowestBelow(task.getPriority());
+                    break;
+                case SHED_OLDEST:
+                    evicted = scheduler.pollOldest();
+                    break;
+                default:
+                    return false;
+            }
+            if (evicted != null) {
+                dropped[evicted.getPriority().ordinal()].increment();
+                return true;
+            }
+            if (overflowPolicy == OverflowPolicy.DROP_LOW_FIRST && size.get() >= capacity) {
+                return false;  // Nothing ranks below the new task
+            }
+            // Consumers emptied the queue in the meantime, try to claim a free slot again
+        }
+    }
+
+    private void releaseSlots(int count) {
+        if (count == 0 || !isBounded() && spool == null) {
+            return;
+        }
+        size.addAndGet(-count);
+        if (blockedProducers.get() > 0) {
+            signal(notFull);
+        }
+    }
+
+    private boolean awaitSlot() {
+        idleLock.lock();
+        try {
+            blockedProducers.incrementAndGet();
+            try {
+                // Re-check after registering, so a consumer that missed the counter is not missed here
+                if (size.get() >= capacity && !shutdown) {
+                    notFull.await();
+                }
+                return true;
+            } finally {
+                blockedProducers.decrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private LogTask awaitTask() throws InterruptedException {
+        return awaitTask(Long.MAX_VALUE);
+    }
+
+    private LogTask awaitTask(long timeoutNanos) throws InterruptedException {
+        idleLock.lockInterruptibly();
+        try {
+            idleConsumers.incrementAndGet();
+            try {
+                // Re-check after registering as idle, so a producer that missed the counter is not missed here
+                LogTask task = poll();
+                if (task == null && !isDrained()) {
+                    if (timeoutNanos == Long.MAX_VALUE) {
+                        notEmpty.await();
+                    } else {
+                        notEmpty.awaitNanos(timeoutNanos);
+                    }
+                }
+                return task;
+            } finally {
+                idleConsumers.decrementAndGet();
+            }
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        idleLock.lock();
+        try {
+            condition.signal();
+        } finally {
+            idleLock.unlock();
+        }
+    }
+
+    private void signalAll(Condition condition) {
+        idleLock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            idleLock.unlock();
+        }
     }
-}
\ No newline at end of file
+}
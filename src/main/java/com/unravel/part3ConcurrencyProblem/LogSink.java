@@ -0,0 +1,35 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for the line a {@link Consumer} writes for every processed task.
+ * Implementations must be safe to call from several consumer threads at once.
+ */
+interface LogSink extends Closeable {
+
+    /**
+     * Records that the current thread processed the task after it waited {@code ageNs} in the queue.
+     */
+    void write(LogTask task, long ageNs) throws IOException;
+
+    /**
+     * Pushes out whatever the current thread has buffered. Batch consumers call it once per batch.
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * Called by a consumer thread before it exits. Writes out what the thread has buffered and gives up
+     * whatever the sink holds for that thread.
+     */
+    default void release() throws IOException {
+        flush();
+    }
+
+    @Override
+    default void close() throws IOException {
+        flush();
+    }
+}
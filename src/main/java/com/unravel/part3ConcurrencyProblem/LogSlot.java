@@ -0,0 +1,72 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import lombok.Getter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable, mutable counterpart of {@link LogTask} handed out by {@link CompactLogProcessor}.
+ * <p>
+ * The message is kept as bytes in a fixed-size array owned by the slot, so filling a slot allocates nothing.
+ * A slot must not be touched after it was given back with {@link CompactLogProcessor#release(LogSlot)}.
+ */
+@Getter
+class LogSlot {
+    private TaskPriority priority;
+    private long createdAtNanos;
+    private final byte[] message;
+    private int messageLength;
+
+    LogSlot(int messageCapacity) {
+        this.message = new byte[messageCapacity];
+    }
+
+    void reset(TaskPriority priority, long createdAtNanos) {
+        this.priority = priority;
+        this.createdAtNanos = createdAtNanos;
+        this.messageLength = 0;
+    }
+
+    /**
+     * Appends the text, replacing non-ASCII characters with '?'. Text beyond the capacity is cut off.
+     */
+    LogSlot appendAscii(CharSequence text) {
+        int length = Math.min(text.length(), message.length - messageLength);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            message[messageLength++] = (byte) (c < 0x80 ? c : '?');
+        }
+        return this;
+    }
+
+    LogSlot appendLong(long value) {
+        if (value < 0) {
+            appendByte('-');
+            if (value == Long.MIN_VALUE) {
+                return appendAscii("9223372036854775808");
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            appendByte('0' + (int) (value / divisor % 10));
+        }
+        return this;
+    }
+
+    private void appendByte(int b) {
+        if (messageLength < message.length) {
+            message[messageLength++] = (byte) b;
+        }
+    }
+
+    /**
+     * Decodes the message. Allocates, so it is meant for tests and diagnostics, not for the hot path.
+     */
+    String messageAsString() {
+        return new String(message, 0, messageLength, StandardCharsets.US_ASCII);
+    }
+}
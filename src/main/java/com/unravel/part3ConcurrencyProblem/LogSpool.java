@@ -0,0 +1,363 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Disk-backed FIFO lanes, one per {@link TaskPriority}, that {@link LogProcessor} spills into when its
+ * in-memory depth is exceeded.
+ * <p>
+ * Each lane is a chain of memory-mapped segment files named {@code <PRIORITY>-<sequence>.spool}. A record is
+ * a 4-byte header, the creation time and the UTF-8 message, padded to 4 bytes. The header is stored last with
+ * release semantics, so a process that dies mid-append leaves a zero header, which reads as the end of the lane.
+ * Taking a record negates its header in place, and a segment is unmapped and deleted once it has been read to the end.
+ * Opening a directory that already holds segments recovers every record that was not taken.
+ * <p>
+ * Creation times are stored as wall-clock nanoseconds and mapped back onto {@link System#nanoTime()} on read,
+ * so a recovered task keeps aging from when it was created, including the time the JVM was down.
+ * Records are written to the page cache only; {@link #close()} forces them to disk.
+ */
+@Slf4j
+class LogSpool implements AutoCloseable {
+    static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final int LEVELS = TaskPriority.values().length;
+    private static final String SUFFIX = ".spool";
+    // What addSegment names them, anything else in the directory is left alone
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(" + Arrays.stream(TaskPriority.values())
+            .map(Enum::name)
+            .collect(Collectors.joining("|")) + ")-(\\d{19})" + Pattern.quote(SUFFIX));
+    // Header (message length + 1, negated once taken, 0 = not written) and creation time
+    private static final int RECORD_OVERHEAD = Integer.BYTES + Long.BYTES;
+    private static final MethodHandle INVOKE_CLEANER = invokeCleaner();
+    private static final VarHandle HEADER =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final Lane[] lanes = new Lane[LEVELS];
+    private final long nanoTimeAnchor = System.nanoTime();
+    private final long epochNanosAnchor = epochNanos(Instant.now());
+
+    LogSpool(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    LogSpool(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes < 64 || segmentBytes % Integer.BYTES != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of 4 and at least 64: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        for (TaskPriority priority : TaskPriority.values()) {
+            lanes[priority.ordinal()] = new Lane(priority);
+        }
+        recover();
+    }
+
+    void append(LogTask task) throws IOException {
+        byte[] message = task.getMessage().getBytes(StandardCharsets.UTF_8);
+        int recordBytes = align(RECORD_OVERHEAD + message.length);
+        if (recordBytes > segmentBytes) {
+            throw new IllegalArgumentException("Message does not fit into a spool segment: " + message.length + " bytes");
+        }
+        Lane lane = lanes[task.getPriority().ordinal()];
+        lane.lock.lock();
+        try {
+            Segment segment = lane.segments.peekLast();
+            if (segment == null || segment.full || segment.writePosition + recordBytes > segmentBytes) {
+                segment = lane.addSegment();
+            }
+            MappedByteBuffer buffer = segment.buffer;
+            int position = segment.writePosition;
+            buffer.putLong(position + Integer.BYTES, toEpochNanos(task.getCreatedAtNanos()));
+            buffer.put(position + RECORD_OVERHEAD, message);
+            HEADER.setRelease(buffer, position, message.length + 1);
+            segment.writePosition += recordBytes;
+            lane.depth++;
+        } finally {
+            lane.lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next record in the same order as {@link AgingLaneScheduler}: lane by lane, where the aged head
+     * of the lane below competes with the head of the current lane and the older one wins.
+     *
+     * @return the task, or {@code null} if the spool is empty
+     */
+    LogTask poll() throws IOException {
+        long now = System.nanoTime();
+        for (int level = 0; level < LEVELS; level++) {
+            Lane lane = lanes[level];
+            Lane lower = level + 1 < LEVELS ? lanes[level + 1] : null;
+            while (true) {
+                long head = lane.headCreatedAt();
+                long aged = lower != null ? lower.headCreatedAt() : Long.MAX_VALUE;
+                boolean takeAged = aged != Long.MAX_VALUE && AgingLaneScheduler.isAged(aged, now)
+                        && (head == Long.MAX_VALUE || aged < head);
+                if (!takeAged && head == Long.MAX_VALUE) {
+                    break;
+                }
+                LogTask task = (takeAged ? lower : lane).poll();
+                if (task != null) {
+                    return task;
+                }
+                // Another consumer took the head in the meantime, look again
+            }
+        }
+        return null;
+    }
+
+    long depth(TaskPriority priority) {
+        return lanes[priority.ordinal()].depth;
+    }
+
+    boolean isEmpty() {
+        for (Lane lane : lanes) {
+            if (lane.depth > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forces every segment to disk and unmaps it. Records stay on disk and are recovered by the next spool on this directory.
+     */
+    @Override
+    public void close() {
+        for (Lane lane : lanes) {
+            lane.lock.lock();
+            try {
+                for (Segment segment : lane.segments) {
+                    segment.buffer.force();
+                    unmap(segment.buffer);
+                }
+                lane.segments.clear();
+                lane.depth = 0;
+            } finally {
+                lane.lock.unlock();
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(file -> file.getFileName().toString()));
+        for (Path file : files) {
+            Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+            if (!name.matches()) {
+                log.warn("Skipping {}, not a spool segment", file);
+                continue;
+            }
+            Lane lane = lanes[TaskPriority.valueOf(name.group(1)).ordinal()];
+            lane.recover(Long.parseLong(name.group(2)), file);
+        }
+    }
+
+    private long toEpochNanos(long nanoTime) {
+        return epochNanosAnchor + (nanoTime - nanoTimeAnchor);
+    }
+
+    private long toNanoTime(long epochNanos) {
+        return nanoTimeAnchor + (epochNanos - epochNanosAnchor);
+    }
+
+    private static long epochNanos(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+
+    private static int align(int bytes) {
+        return (bytes + Integer.BYTES - 1) & -Integer.BYTES;
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is garbage collected. The buffer must not be used
+     * afterwards, so callers hold the lane's lock and drop the segment. Java 21 has no public API for this outside
+     * the preview of {@code Arena}, without the JDK's cleaner the mapping stays until the next GC.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to unmap a spool segment", e);
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Spool segments are unmapped by the garbage collector only: {}", e.toString());
+            return null;
+        }
+    }
+
+    private MappedByteBuffer map(Path file, boolean create) throws IOException {
+        try (FileChannel channel = create
+                ? FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed, so no file descriptor is held per segment
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, create ? segmentBytes : channel.size());
+        }
+    }
+
+    private final class Lane {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final TaskPriority priority;
+        // Oldest first, appends go to the last one
+        private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+        private long nextSequence;
+        private volatile long depth;
+
+        private Lane(TaskPriority priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * Creation time of the next record, or {@link Long#MAX_VALUE} if the lane is empty.
+         */
+        private long headCreatedAt() throws IOException {
+            if (depth == 0) {
+                return Long.MAX_VALUE;
+            }
+            lock.lock();
+            try {
+                Segment segment = readableSegment();
+                return segment != null
+                        ? toNanoTime(segment.buffer.getLong(segment.readPosition + Integer.BYTES))
+                        : Long.MAX_VALUE;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private LogTask poll() throws IOException {
+            if (depth == 0) {
+                return null;
+            }
+            lock.lock();
+            try {
+                Segment segment = readableSegment();
+                if (segment == null) {
+                    return null;
+                }
+                MappedByteBuffer buffer = segment.buffer;
+                int position = segment.readPosition;
+                int header = (int) HEADER.getAcquire(buffer, position);
+                long createdAt = toNanoTime(buffer.getLong(position + Integer.BYTES));
+                byte[] message = new byte[header - 1];
+                buffer.get(position + RECORD_OVERHEAD, message);
+                HEADER.setRelease(buffer, position, -header);
+                segment.readPosition += align(RECORD_OVERHEAD + message.length);
+                depth--;
+                return new LogTask(priority, new String(message, StandardCharsets.UTF_8), createdAt);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // The segment holding the next record, deleting segments that have been read to the end
+        private Segment readableSegment() throws IOException {
+            while (true) {
+                Segment segment = segments.peekFirst();
+                if (segment == null) {
+                    return null;
+                }
+                if (segment.readPosition < segment.writePosition) {
+                    return segment;
+                }
+                if (segment == segments.peekLast()) {
+                    return null;
+                }
+                segments.removeFirst();
+                // The file can only be deleted everywhere, and its space is only freed, once it is no longer mapped
+                unmap(segment.buffer);
+                Files.deleteIfExists(segment.file);
+            }
+        }
+
+        private Segment addSegment() throws IOException {
+            Path file = directory.resolve(String.format("%s-%019d%s", priority, nextSequence++, SUFFIX));
+            Segment segment = new Segment(file, map(file, true));
+            segments.addLast(segment);
+            return segment;
+        }
+
+        // Taken records form a prefix of the segment, the first zero header marks the end of what was written
+        private void recover(long sequence, Path file) throws IOException {
+            MappedByteBuffer buffer = map(file, false);
+            Segment segment = new Segment(file, buffer);
+            int position = 0;
+            int pending = 0;
+            while (position + RECORD_OVERHEAD <= buffer.capacity()) {
+                int header = (int) HEADER.getAcquire(buffer, position);
+                if (header == 0) {
+                    break;
+                }
+                if (header < 0) {
+                    segment.readPosition = position + align(RECORD_OVERHEAD - header - 1);
+                } else {
+                    pending++;
+                }
+                position += align(RECORD_OVERHEAD + Math.abs(header) - 1);
+            }
+            segment.writePosition = position;
+            // A recovered segment is never appended to again, new records go to a fresh one
+            segment.full = true;
+            segments.addLast(segment);
+            depth += pending;
+            nextSequence = Math.max(nextSequence, sequence + 1);
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int readPosition;
+        private int writePosition;
+        private boolean full;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+}
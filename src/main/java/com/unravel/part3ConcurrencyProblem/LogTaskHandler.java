@@ -0,0 +1,11 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.io.IOException;
+
+/**
+ * Processing step applied to each consumed {@link LogTask}.
+ */
+@FunctionalInterface
+interface LogTaskHandler {
+    void handle(LogTask task) throws InterruptedException, IOException;
+}
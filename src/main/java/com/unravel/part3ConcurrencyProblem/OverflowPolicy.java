@@ -0,0 +1,17 @@
+package com.unravel.part3ConcurrencyProblem;
+
+/**
+ * What a bounded {@link LogProcessor} does with a new task when it is already at capacity.
+ * Every task lost this way is counted per priority, see {@link LogProcessor#getDroppedCount(TaskPriority)}.
+ */
+public enum OverflowPolicy {
+    // Wait until a consumer frees a slot (the task is dropped only if the producer is interrupted)
+    BLOCK,
+    // Evict the oldest task of the lowest priority below the new one, LOW goes first.
+    // If nothing ranks below the new task, the new task is dropped
+    DROP_LOW_FIRST,
+    // Evict the oldest queued task regardless of its priority
+    SHED_OLDEST,
+    // Drop the new task
+    REJECT
+}
@@ -0,0 +1,151 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TaskScheduler} split into independent {@link AgingLaneScheduler} shards, for many producers.
+ * <p>
+ * Every thread gets a home shard on first use (round-robin), so producers mostly write to lanes no other
+ * producer touches. A consumer searches level by level: for each effective priority it tries its home
+ * shard first and then steals from the others, so an idle consumer drains any shard and a HIGH task in
+ * another shard still wins over a MEDIUM task at home. The global order is best effort only: ties between
+ * shards are not resolved by creation time.
+ */
+class ShardedLaneScheduler implements TaskScheduler {
+    private static final int LEVELS = TaskPriority.values().length;
+
+    private final AgingLaneScheduler[] shards;
+    private final AtomicInteger nextHomeShard = new AtomicInteger();
+    private final ThreadLocal<Integer> homeShard;
+    private final LongAdder steals = new LongAdder();
+
+    ShardedLaneScheduler(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.shards = new AgingLaneScheduler[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new AgingLaneScheduler();
+        }
+        this.homeShard = ThreadLocal.withInitial(() -> Math.floorMod(nextHomeShard.getAndIncrement(), shardCount));
+    }
+
+    @Override
+    public void offer(LogTask task) {
+        shards[homeShard.get()].offer(task);
+    }
+
+    @Override
+    public LogTask poll() {
+        return poll(homeShard.get(), System.nanoTime());
+    }
+
+    // Reads the clock once for the whole batch
+    @Override
+    public int drainTo(Collection<? super LogTask> batch, int maxItems) {
+        int home = homeShard.get();
+        long now = System.nanoTime();
+        int drained = 0;
+        while (drained < maxItems) {
+            LogTask task = poll(home, now);
+            if (task == null) {
+                break;
+            }
+            batch.add(task);
+            drained++;
+        }
+        return drained;
+    }
+
+    private LogTask poll(int home, long now) {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int offset = 0; offset < shards.length; offset++) {
+                LogTask task = shards[(home + offset) % shards.length].pollLevel(level, now);
+                if (task != null) {
+                    if (offset > 0) {
+                        steals.increment();
+                    }
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public LogTask pollLowestBelow(TaskPriority priority) {
+        int home = homeShard.get();
+        for (int offset = 0; offset < shards.length; offset++) {
+            LogTask task = shards[(home + offset) % shards.length].pollLowestBelow(priority);
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    // Best effort: the oldest task of the first non-empty shard, starting at home
+    @Override
+    public LogTask pollOldest() {
+        int home = homeShard.get();
+        for (int offset = 0; offset < shards.length; offset++) {
+            LogTask task = shards[(home + offset) % shards.length].pollOldest();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public long depth(TaskPriority priority) {
+        long depth = 0;
+        for (AgingLaneScheduler shard : shards) {
+            depth += shard.depth(priority);
+        }
+        return depth;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (AgingLaneScheduler shard : shards) {
+            if (!shard.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long promotions() {
+        long promotions = 0;
+        for (AgingLaneScheduler shard : shards) {
+            promotions += shard.promotions();
+        }
+        return promotions;
+    }
+
+    @Override
+    public int shardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public int homeShard() {
+        return homeShard.get();
+    }
+
+    @Override
+    public long shardDepth(int shard) {
+        return shards[shard].shardDepth(0);
+    }
+
+    /**
+     * Number of tasks consumers took from a shard other than their own.
+     */
+    long steals() {
+        return steals.sum();
+    }
+}
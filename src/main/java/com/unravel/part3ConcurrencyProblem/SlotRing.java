@@ -0,0 +1,95 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free multi-producer multi-consumer FIFO of {@link LogSlot} references.
+ * <p>
+ * Array based with a sequence number per cell (D. Vyukov's bounded MPMC queue), so unlike
+ * {@code ConcurrentLinkedQueue} it allocates nothing per offer or poll.
+ */
+class SlotRing {
+    private final LogSlot[] cells;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    /**
+     * @param capacity a power of two
+     */
+    SlotRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.cells = new LogSlot[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return {@code false} if the ring is full
+     */
+    boolean offer(LogSlot slot) {
+        long position = enqueuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    cells[index] = slot;
+                    sequences.set(index, position + 1);  // Publishes the cell to consumers
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * @return the oldest slot, or {@code null} if the ring is empty
+     */
+    LogSlot poll() {
+        long position = dequeuePosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    LogSlot slot = cells[index];
+                    cells[index] = null;
+                    sequences.set(index, position + mask + 1);  // Hands the cell back to producers
+                    return slot;
+                }
+                position = dequeuePosition.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Returns the oldest slot without removing it. Under concurrent polls the result may already be gone,
+     * so it is only a hint for scheduling decisions.
+     */
+    LogSlot peek() {
+        long position = dequeuePosition.get();
+        int index = (int) (position & mask);
+        return sequences.get(index) == position + 1 ? cells[index] : null;
+    }
+
+    int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, cells.length));
+    }
+}
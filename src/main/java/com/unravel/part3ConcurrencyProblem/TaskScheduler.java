@@ -0,0 +1,69 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import java.util.Collection;
+
+/**
+ * Non-blocking task store behind {@link LogProcessor}. Waiting, capacity and overflow handling
+ * stay in the processor, implementations only decide where tasks live and in which order they come out.
+ */
+interface TaskScheduler {
+
+    void offer(LogTask task);
+
+    /**
+     * Removes the task with the highest effective priority, or returns {@code null} if nothing is queued.
+     */
+    LogTask poll();
+
+    /**
+     * Moves up to {@code maxItems} tasks into the batch in scheduling order.
+     *
+     * @return the number of tasks added
+     */
+    int drainTo(Collection<? super LogTask> batch, int maxItems);
+
+    /**
+     * Removes the oldest task of the lowest-priority non-empty lane that ranks below the given priority,
+     * or returns {@code null} if there is none.
+     */
+    LogTask pollLowestBelow(TaskPriority priority);
+
+    /**
+     * Removes the task with the earliest creation time, ignoring priorities.
+     */
+    LogTask pollOldest();
+
+    /**
+     * Number of queued tasks with the given priority.
+     */
+    long depth(TaskPriority priority);
+
+    boolean isEmpty();
+
+    /**
+     * Number of tasks that were taken one level above their own priority because they had aged.
+     */
+    long promotions();
+
+    default int shardCount() {
+        return 1;
+    }
+
+    /**
+     * The shard the calling thread offers its tasks to.
+     */
+    default int homeShard() {
+        return 0;
+    }
+
+    /**
+     * Number of tasks queued in the given shard, across all priorities.
+     */
+    default long shardDepth(int shard) {
+        long depth = 0;
+        for (TaskPriority priority : TaskPriority.values()) {
+            depth += depth(priority);
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,90 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Consumer mode that runs every in-flight task on its own virtual thread.
+ * <p>
+ * A single dispatcher loop takes tasks from the {@link LogProcessor} and hands them to a virtual thread,
+ * so blocking I/O in the handler only parks a virtual thread instead of holding a platform thread.
+ * The number of tasks in flight is capped by {@code maxConcurrency}. The dispatcher claims a permit
+ * before it takes a task, so tasks wait in the priority queue (and keep aging there) rather than
+ * piling up in front of the executor.
+ */
+@Slf4j
+class VirtualThreadConsumerPool implements Runnable {
+    private final LogProcessor processor;
+    private final CountDownLatch latch;
+    private final LogTaskHandler handler;
+    private final Semaphore inFlight;
+
+    VirtualThreadConsumerPool(LogProcessor processor, CountDownLatch latch, int maxConcurrency) {
+        this(processor, latch, maxConcurrency, ConsoleLogSink.STDOUT);
+    }
+
+    VirtualThreadConsumerPool(LogProcessor processor, CountDownLatch latch, int maxConcurrency, LogSink sink) {
+        this(processor, latch, maxConcurrency, task -> Consumer.process(task, sink, processor.getMetrics()));
+    }
+
+    // For a pool that runs until the processor is drained, there is nothing to count down
+    VirtualThreadConsumerPool(LogProcessor processor, int maxConcurrency, LogSink sink) {
+        this(processor, new CountDownLatch(0), maxConcurrency, sink);
+    }
+
+    VirtualThreadConsumerPool(LogProcessor processor, CountDownLatch latch, int maxConcurrency,
+                              LogTaskHandler handler) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("Concurrency limit must be positive: " + maxConcurrency);
+        }
+        this.processor = processor;
+        this.latch = latch;
+        this.handler = handler;
+        this.inFlight = new Semaphore(maxConcurrency);
+    }
+
+    @Override
+    public void run() {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            try {
+                while (true) {
+                    inFlight.acquire();
+                    LogTask task;
+                    try {
+                        task = processor.consumeLog();
+                    } catch (InterruptedException e) {
+                        inFlight.release();
+                        throw e;
+                    }
+                    if (task == null) {
+                        break;  // Shut down and drained, close() waits for the tasks still running
+                    }
+                    executor.execute(() -> handle(task));
+                }
+            } catch (InterruptedException e) {
+                // Stop handing out work and interrupt what is still running, close() then waits for it
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void handle(LogTask task) {
+        try {
+            handler.handle(task);
+            latch.countDown();
+        } catch (InterruptedException e) {
+            processor.requeue(task);
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Failed to handle {}", task.getMessage(), e);
+        } finally {
+            inFlight.release();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.unravel.part1SessionManagement;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import io.lettuce.core.api.StatefulConnection;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stands in for Redis in benchmarks and the load test. Speaks just enough RESP2 for Lettuce's handshake and for the
+ * session subsystem to start, save and load sessions: hashes, sets and strings are stored, subscriptions are
+ * confirmed, other commands are acknowledged without effect. Nothing expires and published messages are not delivered,
+ * which a single node does not need.
+ * <p>
+ * Replies are held back until all commands that arrived together are answered, then sent after the round trip
+ * time, like a network between the node and Redis.
+ */
+final class FakeRedisServer implements Closeable {
+    private final ServerSocket server = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+    private final long roundTripNanos;
+    private final Map<String, Map<String, byte[]>> hashes = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> strings = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> sets = new ConcurrentHashMap<>();
+    final LongAdder commands = new LongAdder();
+    final LongAdder roundTrips = new LongAdder();
+
+    FakeRedisServer(Duration roundTrip) throws IOException {
+        this.roundTripNanos = roundTrip.toNanos();
+        Thread.ofPlatform().daemon().name("fake-redis").start(this::accept);
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * A started Lettuce connection factory for this server, with a pool for pipelines.
+     */
+    LettuceConnectionFactory connect() {
+        // Without a Spring context Logback logs at DEBUG, and Lettuce logs every command
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+        GenericObjectPoolConfig<StatefulConnection<?, ?>> pool = new GenericObjectPoolConfig<>();
+        pool.setMaxTotal(16);
+        pool.setMaxIdle(16);
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration("localhost", port()),
+                LettucePoolingClientConfiguration.builder().poolConfig(pool).build());
+        new LettucePipeliningPolicy().postProcessBeforeInitialization(connectionFactory, "redisConnectionFactory");
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        return connectionFactory;
+    }
+
+    /**
+     * Spring Session's repository, with the serializers its configuration uses by default.
+     */
+    static RedisIndexedSessionRepository sessionRepository(RedisConnectionFactory connectionFactory) {
+        return sessionRepository(connectionFactory, RedisSerializer.java());
+    }
+
+    /**
+     * Spring Session's repository, with the given serializer for values like its configuration sets it up.
+     */
+    static RedisIndexedSessionRepository sessionRepository(RedisConnectionFactory connectionFactory,
+                                                           RedisSerializer<Object> valueSerializer) {
+        RedisTemplate<String, Object> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(valueSerializer);
+        template.setHashValueSerializer(valueSerializer);
+        template.afterPropertiesSet();
+        RedisIndexedSessionRepository repository = new RedisIndexedSessionRepository(template);
+        repository.setDefaultSerializer(valueSerializer);
+        return repository;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread.ofPlatform().daemon().start(() -> serve(socket));  // Parks more precisely than a virtual thread
+            }
+        } catch (IOException e) {
+            // Closed
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            List<byte[]> command;
+            while ((command = readCommand(in)) != null) {
+                reply(command, out);
+                commands.increment();
+                if (in.available() == 0) {
+                    LockSupport.parkNanos(roundTripNanos);
+                    out.flush();
+                    roundTrips.increment();
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        }
+    }
+
+    private void reply(List<byte[]> command, OutputStream out) throws IOException {
+        String name = string(command.get(0)).toUpperCase();
+        switch (name) {
+            case "HELLO" -> simple(out, "-ERR unknown command 'HELLO'");  // Lettuce falls back to RESP2
+            case "PING" -> simple(out, "+PONG");
+            case "CLIENT", "SELECT", "RENAME" -> simple(out, "+OK");
+            case "HMSET", "HSET" -> {
+                Map<String, byte[]> hash = hashes.computeIfAbsent(string(command.get(1)),
+                        key -> new ConcurrentHashMap<>());
+                for (int i = 2; i + 1 < command.size(); i += 2) {
+                    hash.put(string(command.get(i)), command.get(i + 1));
+                }
+                simple(out, name.equals("HMSET") ? "+OK" : ":1");
+            }
+            case "HGETALL" -> {
+                Map<String, byte[]> hash = hashes.getOrDefault(string(command.get(1)), Map.of());
+                List<byte[]> entries = new ArrayList<>();
+                hash.forEach((field, value) -> {
+                    entries.add(field.getBytes(StandardCharsets.UTF_8));
+                    entries.add(value);
+                });
+                out.write(("*" + entries.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                for (byte[] entry : entries) {
+                    bulk(out, entry);
+                }
+            }
+            case "DEL" -> {
+                int deleted = 0;
+                for (int i = 1; i < command.size(); i++) {
+                    String key = string(command.get(i));
+                    deleted += (hashes.remove(key) != null | strings.remove(key) != null | sets.remove(key) != null) ? 1 : 0;
+                }
+                simple(out, ":" + deleted);
+            }
+            case "SET" -> {
+                boolean ifAbsent = command.stream().skip(3).anyMatch(arg -> string(arg).equalsIgnoreCase("NX"));
+                String key = string(command.get(1));
+                if (ifAbsent && strings.putIfAbsent(key, command.get(2)) != null) {
+                    simple(out, "$-1");
+                } else {
+                    strings.put(key, command.get(2));
+                    simple(out, "+OK");
+                }
+            }
+            case "GET" -> {
+                byte[] value = strings.get(string(command.get(1)));
+                if (value == null) {
+                    simple(out, "$-1");
+                } else {
+                    bulk(out, value);
+                }
+            }
+            case "CONFIG" -> {
+                if (string(command.get(1)).equalsIgnoreCase("GET")) {
+                    out.write("*2\r\n".getBytes(StandardCharsets.US_ASCII));
+                    bulk(out, command.get(2));
+                    bulk(out, new byte[0]);
+                } else {
+                    simple(out, "+OK");
+                }
+            }
+            case "SUBSCRIBE", "PSUBSCRIBE" -> {
+                // One confirmation per channel, after which the connection only receives messages
+                for (int i = 1; i < command.size(); i++) {
+                    out.write("*3\r\n".getBytes(StandardCharsets.US_ASCII));
+                    bulk(out, name.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+                    bulk(out, command.get(i));
+                    simple(out, ":" + i);
+                }
+            }
+            case "UNSUBSCRIBE", "PUNSUBSCRIBE" -> {
+                out.write("*3\r\n".getBytes(StandardCharsets.US_ASCII));
+                bulk(out, name.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+                if (command.size() > 1) {
+                    bulk(out, command.get(1));
+                } else {
+                    simple(out, "$-1");
+                }
+                simple(out, ":0");
+            }
+            case "SADD", "SREM" -> {
+                Set<String> set = sets.computeIfAbsent(string(command.get(1)), key -> ConcurrentHashMap.newKeySet());
+                int changed = 0;
+                for (int i = 2; i < command.size(); i++) {
+                    String member = new String(command.get(i), StandardCharsets.ISO_8859_1);  // Any bytes, lossless
+                    changed += (name.equals("SADD") ? set.add(member) : set.remove(member)) ? 1 : 0;
+                }
+                simple(out, ":" + changed);
+            }
+            case "SMEMBERS" -> {
+                Set<String> set = sets.getOrDefault(string(command.get(1)), Set.of());
+                out.write(("*" + set.size() + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                for (String member : set) {
+                    bulk(out, member.getBytes(StandardCharsets.ISO_8859_1));
+                }
+            }
+            case "SCAN" -> simple(out, "*2\r\n$1\r\n0\r\n*0");
+            case "PUBLISH" -> simple(out, ":0");
+            default -> simple(out, ":1");  // SADD, SREM, EXPIRE, APPEND, PUBLISH, ZADD, ...
+        }
+    }
+
+    private static void simple(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void bulk(OutputStream out, byte[] value) throws IOException {
+        out.write(("$" + value.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(value);
+        out.write('\r');
+        out.write('\n');
+    }
+
+    // An array of bulk strings
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) {
+            return null;
+        }
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> arguments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = Integer.parseInt(readLine(in).substring(1));
+            arguments.add(in.readNBytes(length));
+            in.readNBytes(2);  // CRLF
+        }
+        return arguments;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
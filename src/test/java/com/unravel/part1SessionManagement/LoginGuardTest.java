@@ -0,0 +1,119 @@
+package com.unravel.part1SessionManagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.session.MapSession;
+import org.springframework.session.events.SessionDeletedEvent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoginGuardTest {
+
+    private static final Duration TTL = Duration.ofMinutes(30);
+
+    private FakeClaims redis;
+    private LoginGuard nodeA;
+    private LoginGuard nodeB;
+
+    @BeforeEach
+    void setUp() {
+        redis = new FakeClaims();
+        nodeA = new LoginGuard(redis);
+        nodeB = new LoginGuard(redis);
+    }
+
+    @Test
+    void tryLogin_ConcurrentSameSession_ShouldLetExactlyOneThrough() throws Exception {
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < threads; i++) {
+                LoginGuard node = i % 2 == 0 ? nodeA : nodeB;
+                String userId = "user-" + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return node.tryLogin("sess-1", userId, TTL);
+                }));
+            }
+            start.countDown();
+            List<String> winners = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                if (results.get(i).get()) {
+                    winners.add("user-" + i);
+                }
+            }
+            assertEquals(List.of(redis.claims.get("sess-1")), winners);
+        }
+    }
+
+    @Test
+    void tryLogin_DuplicateOnSameNode_ShouldNotReachRedis() {
+        assertTrue(nodeA.tryLogin("sess-1", "user-1", TTL));
+        assertFalse(nodeA.tryLogin("sess-1", "user-2", TTL));
+
+        assertEquals(1, redis.roundTrips);
+        assertEquals("user-1", redis.claims.get("sess-1"));
+    }
+
+    @Test
+    void tryLogin_DuplicateOnOtherNode_ShouldLoseAndKeepNoLocalClaim() {
+        assertTrue(nodeA.tryLogin("sess-1", "user-1", TTL));
+        assertFalse(nodeB.tryLogin("sess-1", "user-2", TTL));
+
+        nodeA.release("sess-1");
+
+        assertTrue(nodeB.tryLogin("sess-1", "user-2", TTL));
+    }
+
+    @Test
+    void tryLogin_RedisFails_ShouldKeepNoLocalClaim() {
+        redis.failNext = true;
+        assertThrows(QueryTimeoutException.class, () -> nodeA.tryLogin("sess-1", "user-1", TTL));
+
+        assertTrue(nodeA.tryLogin("sess-1", "user-1", TTL));
+    }
+
+    @Test
+    void onSessionDestroyed_ShouldDropLocalClaim() {
+        LoginGuard singleNode = new LoginGuard(LoginClaims.NONE);
+        assertTrue(singleNode.tryLogin("sess-1", "user-1", TTL));
+
+        singleNode.onSessionDestroyed(new SessionDeletedEvent(this, new MapSession("sess-1")));
+
+        assertTrue(singleNode.tryLogin("sess-1", "user-2", TTL));
+    }
+
+    // Redis SET NX, shared by both nodes
+    private static final class FakeClaims implements LoginClaims {
+        private final Map<String, String> claims = new ConcurrentHashMap<>();
+        private volatile int roundTrips;
+        private volatile boolean failNext;
+
+        @Override
+        public synchronized boolean claim(String sessionId, String userId, Duration timeToLive) {
+            roundTrips++;
+            if (failNext) {
+                failNext = false;
+                throw new QueryTimeoutException("Redis command timed out");
+            }
+            return claims.putIfAbsent(sessionId, userId) == null;
+        }
+
+        @Override
+        public void release(String sessionId) {
+            claims.remove(sessionId);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.unravel.part1SessionManagement;
+
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.redis.connection.RedisPipelineException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository.RedisSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PipelinedSessionRepositoryTest {
+
+    private static final String SESSION_ID = "sess-1";
+
+    private RedisIndexedSessionRepository delegate;
+    private RedisOperations<String, Object> redis;
+    private RedisSession session;
+    private PipelinedSessionRepository repository;
+    // Thread and pipeline state seen by each save of the delegate
+    private final List<String> saves = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Boolean> inPipeline = ThreadLocal.withInitial(() -> false);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        delegate = mock(RedisIndexedSessionRepository.class);
+        redis = mock(RedisOperations.class);
+        session = mock(RedisSession.class);
+        when(session.getId()).thenReturn(SESSION_ID);
+        when(delegate.getSessionRedisOperations()).thenReturn(redis);
+        when(redis.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            inPipeline.set(true);
+            try {
+                invocation.getArgument(0, SessionCallback.class).execute(redis);
+            } finally {
+                inPipeline.set(false);
+            }
+            return List.of();
+        });
+        doAnswer(invocation -> saves.add(Thread.currentThread().getName() + (inPipeline.get() ? " pipelined" : "")))
+                .when(delegate).save(session);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        repository.destroy();
+    }
+
+    // --- Write modes ---
+
+    @Test
+    void save_Pipelined_ShouldRunWholeSaveInOnePipeline() {
+        repository = repository(SessionWriteMode.PIPELINED);
+
+        repository.save(session);
+
+        verify(redis, times(1)).executePipelined(any(SessionCallback.class));
+        assertEquals(List.of(Thread.currentThread().getName() + " pipelined"), saves);
+    }
+
+    @Test
+    void save_Immediate_ShouldNotPipeline() {
+        repository = repository(SessionWriteMode.IMMEDIATE);
+
+        repository.save(session);
+
+        verify(redis, never()).executePipelined(any(SessionCallback.class));
+        assertEquals(List.of(Thread.currentThread().getName()), saves);
+    }
+
+    @Test
+    void save_Async_ShouldWriteInOrderAndBeforeNextLoad() throws InterruptedException {
+        repository = repository(SessionWriteMode.ASYNC);
+        CountDownLatch redisSlow = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            redisSlow.await();
+            return saves.add(Thread.currentThread().getName() + (inPipeline.get() ? " pipelined" : ""));
+        }).when(delegate).save(session);
+
+        repository.save(session);
+        repository.save(session);
+
+        // Both saves are queued, the request thread has not waited for Redis
+        assertTrue(saves.isEmpty());
+        assertEquals(1, repository.pendingWrites());
+
+        redisSlow.countDown();
+        repository.findById(SESSION_ID);
+
+        InOrder order = inOrder(delegate);
+        order.verify(delegate, times(2)).save(session);
+        order.verify(delegate).findById(SESSION_ID);
+        assertEquals(2, saves.size());
+        assertTrue(saves.stream().allMatch(save -> save.startsWith("session-writer-") && save.endsWith("pipelined")));
+    }
+
+    @Test
+    void save_PipelineFailsOnlyWithNoSuchKey_ShouldBeIgnored() {
+        repository = repository(SessionWriteMode.PIPELINED);
+        List<Object> results = List.of("OK", new InvalidDataAccessApiUsageException("ERR no such key"));
+        when(redis.executePipelined(any(SessionCallback.class)))
+                .thenThrow(new RedisPipelineException("Pipeline contained one or more invalid commands", results));
+
+        assertDoesNotThrow(() -> repository.save(session));
+    }
+
+    @Test
+    void save_PipelineFailsOtherwise_ShouldThrow() {
+        repository = repository(SessionWriteMode.PIPELINED);
+        List<Object> results = List.of(new InvalidDataAccessApiUsageException("OOM command not allowed"));
+        when(redis.executePipelined(any(SessionCallback.class)))
+                .thenThrow(new RedisPipelineException("Pipeline contained one or more invalid commands", results));
+
+        assertThrows(RedisPipelineException.class, () -> repository.save(session));
+    }
+
+    // --- Policy ---
+
+    @Test
+    void modeFor_ShouldPreferImmediateOverAsyncPaths() {
+        SessionWritePolicy policy = new SessionWritePolicy(SessionWriteMode.PIPELINED,
+                List.of("/api/login"), List.of("/api/**"));
+        repository = new PipelinedSessionRepository(delegate, policy, 1, 10);
+
+        assertEquals(SessionWriteMode.IMMEDIATE, policy.modeFor("/api/login"));
+        assertEquals(SessionWriteMode.ASYNC, policy.modeFor("/api/sessions/details"));
+        assertEquals(SessionWriteMode.PIPELINED, policy.modeFor("/actuator/health"));
+    }
+
+    @Test
+    void doFilter_ShouldSetModeForTheRequestOnly() throws Exception {
+        SessionWritePolicy policy = new SessionWritePolicy(SessionWriteMode.PIPELINED,
+                List.of(), List.of("/api/**"));
+        repository = new PipelinedSessionRepository(delegate, policy, 1, 10);
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/app/api/login");
+        request.setContextPath("/app");
+        MockFilterChain chain = new MockFilterChain() {
+            @Override
+            public void doFilter(ServletRequest req, ServletResponse res) {
+                repository.save(session);
+            }
+        };
+
+        policy.doFilter(request, new MockHttpServletResponse(), chain);
+        repository.destroy();
+
+        assertTrue(saves.get(0).startsWith("session-writer-"));
+        assertEquals(SessionWriteMode.PIPELINED, policy.current());
+    }
+
+    private PipelinedSessionRepository repository(SessionWriteMode mode) {
+        return new PipelinedSessionRepository(delegate, new SessionWritePolicy(mode, List.of(), List.of()), 1, 10);
+    }
+}
@@ -0,0 +1,132 @@
+package com.unravel.part1SessionManagement;
+
+import jakarta.servlet.http.HttpSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.session.MapSession;
+import org.springframework.session.events.SessionExpiredEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionAttributeCacheTest {
+
+    private FakeChannel channelA;
+    private SessionAttributeCache nodeA;
+    private SessionAttributeCache nodeB;
+    private HttpSession session;
+
+    @BeforeEach
+    void setUp() {
+        List<FakeChannel> nodes = new CopyOnWriteArrayList<>();
+        channelA = new FakeChannel(nodes);
+        nodeA = new SessionAttributeCache(channelA, Duration.ofSeconds(5));
+        nodeB = new SessionAttributeCache(new FakeChannel(nodes), Duration.ofSeconds(5));
+        session = new MockHttpSession(null, "sess-1");
+        session.setAttribute("userId", "user-1");
+    }
+
+    @Test
+    void get_BySessionId_ShouldHitOnlyAfterSessionWasRead() {
+        assertNull(nodeA.get("sess-1", "userId"));
+
+        assertEquals("user-1", nodeA.get(session, "userId"));
+        assertEquals("user-1", nodeA.get("sess-1", "userId"));
+
+        assertEquals(1, nodeA.redisRoundTripsSaved());
+        // The first miss by ID fell back to the session read, which counted it
+        assertEquals(0.5, nodeA.hitRatio(), 1e-9);
+    }
+
+    @Test
+    void get_WithSessionLoadedBeforeInvalidation_ShouldNotCacheIt() throws InterruptedException {
+        MockHttpSession loaded = new MockHttpSession(null, "sess-1");
+        loaded.setAttribute("userId", "user-1");
+        Thread.sleep(5);
+        nodeA.invalidate("sess-1");  // A logout on node A while node B still serves a request with the old session
+
+        assertEquals("user-1", nodeB.get(loaded, "userId"));
+        assertNull(nodeB.get("sess-1", "userId"));
+
+        Thread.sleep(5);
+        MockHttpSession reloaded = new MockHttpSession(null, "sess-1");
+        reloaded.setAttribute("userId", "user-2");
+        assertEquals("user-2", nodeB.get(reloaded, "userId"));
+        assertEquals("user-2", nodeB.get("sess-1", "userId"));
+    }
+
+    @Test
+    void invalidate_ShouldDropCopiesOnAllNodes() {
+        nodeA.get(session, "userId");
+        nodeB.get(session, "userId");
+
+        session.setAttribute("userId", "user-2");
+        nodeA.invalidate("sess-1");
+
+        assertNull(nodeA.get("sess-1", "userId"));
+        assertNull(nodeB.get("sess-1", "userId"));
+        assertEquals("user-2", nodeB.get(session, "userId"));
+        assertEquals(1, channelA.published);
+    }
+
+    @Test
+    void onSessionDestroyed_ShouldDropLocalCopy() {
+        nodeA.get(session, "userId");
+
+        nodeA.onSessionDestroyed(new SessionExpiredEvent(this, new MapSession("sess-1")));
+
+        assertNull(nodeA.get("sess-1", "userId"));
+        assertEquals(0, channelA.published);
+    }
+
+    @Test
+    void get_AfterTimeToLive_ShouldMiss() {
+        SessionAttributeCache shortLived = new SessionAttributeCache(InvalidationChannel.NONE, Duration.ofMillis(100));
+        shortLived.get(session, "userId");
+
+        await().atMost(2, TimeUnit.SECONDS).until(() -> shortLived.get("sess-1", "userId") == null);
+    }
+
+    @Test
+    void get_MissingAttribute_ShouldNotBeCached() {
+        assertNull(nodeA.get(session, "cart"));
+
+        session.setAttribute("cart", "3 items");
+
+        assertEquals("3 items", nodeA.get(session, "cart"));
+    }
+
+    // Delivers each message to every other channel in the list, like Redis pub/sub between nodes
+    private static class FakeChannel implements InvalidationChannel {
+        private final List<FakeChannel> nodes;
+        private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+        private int published;
+
+        private FakeChannel(List<FakeChannel> nodes) {
+            this.nodes = nodes;
+            nodes.add(this);
+        }
+
+        @Override
+        public void publish(String id) {
+            published++;
+            for (FakeChannel node : nodes) {
+                if (node != this) {
+                    node.listeners.forEach(listener -> listener.accept(id));
+                }
+            }
+        }
+
+        @Override
+        public void subscribe(Consumer<String> listener) {
+            listeners.add(listener);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.unravel.part1SessionManagement;
+
+import com.unravel.part1SessionManagement.SessionAttributeSerializer.Format;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionAttributeSerializerTest {
+
+    private final SessionAttributeSerializer compact = new SessionAttributeSerializer(Format.COMPACT);
+    private final SessionAttributeSerializer jdk = new SessionAttributeSerializer(Format.JDK);
+
+    @Test
+    void roundTrip_CommonTypes_ShouldKeepValueAndType() {
+        List<Object> values = List.of("user-1", "", "ünïcødé", 0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                1_760_000_000_000L, Long.MIN_VALUE, true, false, 0.25, Instant.parse("2026-10-18T10:00:00.123456789Z"),
+                Instant.ofEpochSecond(-5, 1));
+        for (Object value : values) {
+            Object read = compact.deserialize(compact.serialize(value));
+            assertEquals(value, read, value.getClass().getSimpleName());
+            assertEquals(value.getClass(), read.getClass());
+        }
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) compact.deserialize(compact.serialize(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    void serialize_Strings_ShouldBeSameInEitherFormat() {
+        // Set members such as session IDs in the principal index are removed by exact bytes
+        byte[] expected = new JdkSerializationRedisSerializer().serialize("session-1");
+
+        assertArrayEquals(expected, compact.serialize("session-1"));
+        assertArrayEquals(expected, jdk.serialize("session-1"));
+    }
+
+    @Test
+    void deserialize_TaggedString_ShouldStillBeRead() {
+        byte[] written = ("\u0001user-1").getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("user-1", compact.deserialize(written));
+        assertEquals("user-1", jdk.deserialize(written));
+    }
+
+    @Test
+    void serialize_SpringSessionFields_ShouldBeSmallerThanJdk() {
+        long lastAccessedTime = 1_760_000_000_000L;
+
+        assertEquals(7, compact.serialize(lastAccessedTime).length);
+        assertEquals(3, compact.serialize(1800).length);
+        assertTrue(jdk.serialize(lastAccessedTime).length > 70);
+    }
+
+    @Test
+    void deserialize_JdkPayloads_ShouldBeReadInEitherFormat() {
+        Map<String, Object> delta = new HashMap<>(Map.of("sessionAttr:userId", "user-1"));
+        byte[] written = new JdkSerializationRedisSerializer().serialize(delta);
+
+        assertEquals(delta, compact.deserialize(written));
+        assertEquals("user-1", jdk.deserialize(compact.serialize("user-1")));
+        assertEquals(delta, compact.deserialize(compact.serialize(delta)));  // Other types are JDK serialized
+    }
+
+    @Test
+    void nullAndUnknownTags_ShouldBeHandled() {
+        assertEquals(0, compact.serialize(null).length);
+        assertNull(compact.deserialize(null));
+        assertNull(compact.deserialize(new byte[0]));
+        assertThrows(SerializationException.class, () -> compact.deserialize(new byte[]{42}));
+    }
+
+    @Test
+    void deserialize_TruncatedValues_ShouldThrowSerializationException() {
+        byte[] number = compact.serialize(1_760_000_000_000L);
+        byte[] decimal = compact.serialize(0.25);
+        byte[] instant = compact.serialize(Instant.parse("2026-10-18T10:00:00.123456789Z"));
+
+        for (byte[] bytes : List.of(number, decimal, instant)) {
+            byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+            assertThrows(SerializationException.class, () -> compact.deserialize(truncated));
+        }
+    }
+}
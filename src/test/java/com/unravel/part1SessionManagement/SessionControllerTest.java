@@ -0,0 +1,65 @@
+package com.unravel.part1SessionManagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.session.web.http.CookieHttpSessionIdResolver;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Clock;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class SessionControllerTest {
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        SessionManager sessionManager = new SessionManager(
+                new SessionAttributeCache(InvalidationChannel.NONE, Duration.ofSeconds(5)),
+                new LoginGuard(LoginClaims.NONE),
+                new SessionTokens(false, new byte[32], Duration.ofMinutes(30), Duration.ofHours(1),
+                        new SessionTokensTest.LocalRevocations(), Clock.systemUTC()),
+                mock(UserSessionIndex.class), new CookieHttpSessionIdResolver());
+        mvc = MockMvcBuilders.standaloneSetup(new SessionController(sessionManager)).build();
+    }
+
+    @Test
+    void loginDetailsLogout_ShouldFollowSession() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+
+        mvc.perform(post("/session/login").param("userId", "user-1").session(session))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Login successful. Session ID: " + session.getId()));
+        mvc.perform(get("/session").session(session))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Session ID for user user-1: " + session.getId()));
+        mvc.perform(post("/session/logout").session(session))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Logout successful."));
+    }
+
+    @Test
+    void details_WithoutSession_ShouldReturnUnauthorized() throws Exception {
+        mvc.perform(get("/session"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(content().string("Session not found"));
+        mvc.perform(post("/session/logout"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void sessionNotFound_ShouldNotCaptureStackTrace() {
+        SessionManager.CustomSessionException e = new SessionManager.CustomSessionException("Session not found");
+
+        assertEquals(0, e.getStackTrace().length);
+    }
+}
@@ -0,0 +1,84 @@
+package com.unravel.part1SessionManagement;
+
+import com.unravel.part1SessionManagement.SessionAttributeSerializer.Format;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository.RedisSession;
+import org.springframework.session.web.http.CookieHttpSessionIdResolver;
+import org.springframework.session.web.http.SessionRepositoryFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link SessionManager#getSessionDetails} for a request whose session is not in the attribute cache, as
+ * on the first read on a node: Spring Session's filter loads the session from Redis, the details are read, and the
+ * filter saves the new last access time. Compares the formats of {@link SessionAttributeSerializer}.
+ * <p>
+ * Redis is replaced by {@link FakeRedisServer}, with no added round trip time, so serialization is not hidden behind
+ * the network.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionDetailsBenchmark {
+
+    @Param({"COMPACT", "JDK"})
+    public Format format;
+
+    private FakeRedisServer redis;
+    private LettuceConnectionFactory connectionFactory;
+    private SessionRepositoryFilter<RedisSession> filter;
+    private SessionManager sessionManager;
+    private Cookie cookie;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        redis = new FakeRedisServer(Duration.ZERO);
+        connectionFactory = redis.connect();
+        RedisIndexedSessionRepository repository = FakeRedisServer.sessionRepository(connectionFactory,
+                new SessionAttributeSerializer(format));
+        RedisSession session = repository.createSession();
+        session.setAttribute("userId", "user-12345");
+        repository.save(session);
+        cookie = new Cookie("SESSION", Base64.getEncoder().encodeToString(
+                session.getId().getBytes(StandardCharsets.UTF_8)));
+
+        filter = new SessionRepositoryFilter<>(repository);
+        // Nothing stays cached, so every request loads the session
+        sessionManager = new SessionManager(new SessionAttributeCache(InvalidationChannel.NONE, Duration.ZERO),
+                new LoginGuard(LoginClaims.NONE),
+                new SessionTokens(false, new byte[32], Duration.ofMinutes(30), Duration.ofHours(1),
+                        new SessionTokensTest.LocalRevocations(), Clock.systemUTC()),
+                null, new CookieHttpSessionIdResolver());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Benchmark
+    public String getSessionDetails() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(cookie);
+        String[] details = new String[1];
+        filter.doFilter(request, new MockHttpServletResponse(),
+                (filtered, response) -> details[0] = sessionManager.getSessionDetails((HttpServletRequest) filtered));
+        return details[0];
+    }
+}
@@ -0,0 +1,221 @@
+package com.unravel.part1SessionManagement;
+
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.http.HttpHeaders;
+import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisIndexedHttpSession;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the session endpoints of {@link SessionController}, over HTTP against the session subsystem as it is
+ * deployed: Spring Session, {@link PipelinedSessionRepository}, {@link LoginGuard} and Lettuce, with Redis replaced by
+ * {@link FakeRedisServer}. Only the part 1 beans are started, so no database is needed.
+ * <p>
+ * Each client repeats a closed loop with its own user: login, {@code reads} session details, logout, then one more
+ * details request that must get 401. Latencies are recorded per operation after the warmup, and throughput and
+ * percentiles are printed at the end. Run it with
+ * <pre>
+ * mvnw -P loadtest test-compile exec:exec -Dload.args="clients=16 duration=20s rtt=200us mode=token"
+ * </pre>
+ * Arguments and defaults: {@code clients=16 warmup=5s duration=20s reads=5 rtt=200us mode=redis}, where
+ * {@code mode=token} switches to the signed tokens of {@link SessionTokens}. The application logs at WARN, so that
+ * console output does not dominate the results.
+ */
+public class SessionLoadRunner {
+    private static final List<String> OPERATIONS = List.of("login", "details", "logout", "unauthorized");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "clients", "16", "warmup", "5s", "duration", "20s", "reads", "5", "rtt", "200us", "mode", "redis"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+        int clients = Integer.parseInt(options.get("clients"));
+        Duration warmup = duration(options.get("warmup"));
+        Duration measurement = duration(options.get("duration"));
+        int reads = Integer.parseInt(options.get("reads"));
+        Duration roundTrip = duration(options.get("rtt"));
+        boolean tokenMode = options.get("mode").equals("token");
+        System.out.printf("Session load test: %s%n", options);
+
+        try (FakeRedisServer redis = new FakeRedisServer(roundTrip);
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(LoadTestApplication.class)
+                     .run("--server.port=0",
+                             "--spring.data.redis.port=" + redis.port(),
+                             "--spring.docker.compose.enabled=false",
+                             "--session.token.enabled=" + tokenMode,
+                             "--session.token.secret=load-test-secret",
+                             "--logging.level.root=WARN")) {
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            URI base = URI.create("http://localhost:" + port + "/session");
+
+            long start = System.nanoTime();
+            long measureFrom = start + warmup.toNanos();
+            long end = measureFrom + measurement.toNanos();
+            List<Client> running = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Client client = new Client(base, "user-" + i, reads, measureFrom, end);
+                client.thread.start();
+                running.add(client);
+            }
+            for (Client client : running) {
+                client.thread.join();
+            }
+            report(running, measurement, redis);
+        }
+    }
+
+    private static void report(List<Client> clients, Duration measurement, FakeRedisServer redis) {
+        double seconds = measurement.toNanos() / 1e9;
+        long loops = clients.stream().mapToLong(client -> client.loops).sum();
+        long errors = clients.stream().mapToLong(client -> client.errors.get()).sum();
+        long requests = 0;
+        System.out.printf("%n%-13s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "req/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for (int op = 0; op < OPERATIONS.size(); op++) {
+            int index = op;
+            long[] latencies = clients.stream()
+                    .flatMapToLong(client -> Arrays.stream(client.latencies[index].toArray()))
+                    .sorted()
+                    .toArray();
+            requests += latencies.length;
+            System.out.printf("%-13s %10.0f %10.0f %10.0f %10.0f %10.0f %10.0f%n", OPERATIONS.get(op),
+                    latencies.length / seconds, percentile(latencies, 0.50), percentile(latencies, 0.90),
+                    percentile(latencies, 0.99), percentile(latencies, 0.999), percentile(latencies, 1.0));
+        }
+        System.out.printf("%nRequests/s: %.0f, loops/s: %.0f, errors: %d, Redis commands: %d%n",
+                requests / seconds, loops / seconds, errors, redis.commands.sum());
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(index, 0)] / 1000.0;
+    }
+
+    private static Duration duration(String value) {
+        if (value.endsWith("us")) {
+            return Duration.ofNanos(Long.parseLong(value.substring(0, value.length() - 2)) * 1000);
+        }
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+    }
+
+    /**
+     * One simulated user, on its own thread and HTTP connection.
+     */
+    private static final class Client {
+        private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        private final URI base;
+        private final String userId;
+        private final int reads;
+        private final long measureFrom;
+        private final long end;
+        private final Thread thread;
+        private final LongList[] latencies = new LongList[OPERATIONS.size()];
+        private final AtomicLong errors = new AtomicLong();
+        private long loops;
+        private String cookie;
+
+        private Client(URI base, String userId, int reads, long measureFrom, long end) {
+            this.base = base;
+            this.userId = userId;
+            this.reads = reads;
+            this.measureFrom = measureFrom;
+            this.end = end;
+            this.thread = Thread.ofPlatform().name("load-" + userId).unstarted(this::run);
+            Arrays.setAll(latencies, i -> new LongList());
+        }
+
+        private void run() {
+            while (System.nanoTime() < end) {
+                boolean measured = System.nanoTime() >= measureFrom;
+                send(0, HttpRequest.newBuilder(URI.create(base + "/login?userId=" + userId))
+                        .POST(HttpRequest.BodyPublishers.noBody()), 200, measured);
+                for (int i = 0; i < reads; i++) {
+                    send(1, HttpRequest.newBuilder(base).GET(), 200, measured);
+                }
+                send(2, HttpRequest.newBuilder(URI.create(base + "/logout"))
+                        .POST(HttpRequest.BodyPublishers.noBody()), 200, measured);
+                send(3, HttpRequest.newBuilder(base).GET(), 401, measured);
+                if (measured) {
+                    loops++;
+                }
+            }
+        }
+
+        private void send(int operation, HttpRequest.Builder request, int expectedStatus, boolean measured) {
+            if (cookie != null) {
+                request.header(HttpHeaders.COOKIE, cookie);
+            }
+            long start = System.nanoTime();
+            try {
+                HttpResponse<String> response = http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+                long elapsed = System.nanoTime() - start;
+                if (response.statusCode() != expectedStatus) {
+                    errors.incrementAndGet();
+                }
+                // Keeps the session or token cookie, and drops it when the server expires it
+                response.headers().firstValue(HttpHeaders.SET_COOKIE).ifPresent(setCookie -> {
+                    String pair = setCookie.substring(0, setCookie.indexOf(';'));
+                    cookie = pair.endsWith("=") || setCookie.contains("Max-Age=0") ? null : pair;
+                });
+                if (measured) {
+                    latencies[operation].add(elapsed);
+                }
+            } catch (IOException e) {
+                errors.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * The session subsystem of the application, without the other parts and their database.
+     */
+    @SpringBootConfiguration
+    @EnableAutoConfiguration(exclude = DataSourceAutoConfiguration.class)
+    @EnableRedisIndexedHttpSession
+    @ComponentScan(basePackageClasses = SessionManager.class)
+    static class LoadTestApplication {
+    }
+}
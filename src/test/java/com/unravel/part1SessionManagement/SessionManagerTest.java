@@ -1,23 +1,50 @@
 package com.unravel.part1SessionManagement;
 
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpSession;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.session.FindByIndexNameSessionRepository;
+import org.springframework.session.web.http.CookieHttpSessionIdResolver;
+import org.springframework.session.web.http.CookieSerializer;
+import org.springframework.session.web.http.DefaultCookieSerializer;
+import org.springframework.session.web.http.HttpSessionIdResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 class SessionManagerTest {
 
-    @InjectMocks
     private SessionManager sessionManager;
 
     @Mock
     private HttpSession mockSession;
 
+    @Spy
+    private SessionAttributeCache attributeCache = new SessionAttributeCache(InvalidationChannel.NONE,
+            Duration.ofSeconds(5));
+
+    @Spy
+    private LoginGuard loginGuard = new LoginGuard(LoginClaims.NONE);
+
+    @Spy
+    private SessionTokens tokens = new SessionTokens(false, new byte[32], Duration.ofMinutes(30),
+            Duration.ofHours(1), new SessionTokensTest.LocalRevocations(), Clock.systemUTC());
+
+    @Mock
+    private UserSessionIndex sessionIndex;
+
     private static final String TEST_USER_ID = "testUser123";
     private static final String TEST_SESSION_ID = "a1b2c3d4e5f6";
 
@@ -25,6 +52,8 @@ class SessionManagerTest {
     void setUp() {
         // Initialize mocks before each test
         MockitoAnnotations.openMocks(this);
+        sessionManager = new SessionManager(attributeCache, loginGuard, tokens, sessionIndex,
+                new CookieHttpSessionIdResolver());
         when(mockSession.getId()).thenReturn(TEST_SESSION_ID);
     }
 
@@ -40,6 +69,8 @@ class SessionManagerTest {
         // Verify that setAttribute was called and the return message is correct
         assertTrue(result.contains("Login successful"));
         verify(mockSession, times(1)).setAttribute("userId", TEST_USER_ID);
+        verify(mockSession).setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, TEST_USER_ID);
+        verify(attributeCache).invalidate(TEST_SESSION_ID);
     }
 
     @Test
@@ -54,6 +85,33 @@ class SessionManagerTest {
         verify(mockSession, never()).setAttribute(anyString(), any());
     }
 
+    @Test
+    void login_ConcurrentLoginClaimedSessionFirst_ShouldNotSetAttribute() {
+        when(mockSession.getAttribute("userId")).thenReturn(null);
+        // The other login has passed the same check and claimed the session, but not set its attribute yet
+        loginGuard.tryLogin(TEST_SESSION_ID, "otherUser", Duration.ZERO);
+
+        String result = sessionManager.login(TEST_USER_ID, mockSession);
+
+        assertEquals("User already logged in.", result);
+        verify(mockSession, never()).setAttribute(anyString(), any());
+    }
+
+    @Test
+    void login_SaveFailsAfterClaim_ShouldReleaseClaim() {
+        when(mockSession.getAttribute("userId")).thenReturn(null);
+        // An immediate flush saves on setAttribute, and Redis is unavailable
+        doThrow(new IllegalStateException("Redis unavailable")).when(mockSession)
+                .setAttribute(FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME, TEST_USER_ID);
+
+        assertThrows(IllegalStateException.class, () -> sessionManager.login(TEST_USER_ID, mockSession));
+
+        verify(loginGuard).release(TEST_SESSION_ID);
+        verify(attributeCache, never()).invalidate(TEST_SESSION_ID);
+        // A retry is not turned away by the claim of the failed login
+        assertTrue(loginGuard.tryLogin(TEST_SESSION_ID, TEST_USER_ID, Duration.ZERO));
+    }
+
     // --- Tests for logout() ---
 
     @Test
@@ -62,9 +120,32 @@ class SessionManagerTest {
 
         // Verify session was invalidated
         verify(mockSession, times(1)).invalidate();
+        verify(attributeCache).invalidate(TEST_SESSION_ID);
+        verify(loginGuard).release(TEST_SESSION_ID);
         assertEquals("Logout successful.", result);
     }
 
+    @Test
+    void logoutEverywhere_ShouldEndThisAndOtherSessionsOfUser() {
+        when(mockSession.getAttribute("userId")).thenReturn(TEST_USER_ID);
+        when(sessionIndex.invalidateAll(TEST_USER_ID)).thenReturn(2);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(mockSession);
+
+        String result = sessionManager.logoutEverywhere(request, new MockHttpServletResponse());
+
+        assertEquals("Logout successful. Sessions ended: 3", result);
+        verify(mockSession).invalidate();
+        verify(sessionIndex).invalidateAll(TEST_USER_ID);
+    }
+
+    @Test
+    void logoutEverywhere_NoSession_ShouldThrow() {
+        assertThrows(SessionManager.CustomSessionException.class,
+                () -> sessionManager.logoutEverywhere(new MockHttpServletRequest(), new MockHttpServletResponse()));
+        verifyNoInteractions(sessionIndex);
+    }
+
     // --- Tests for getSessionDetails() ---
 
     @Test
@@ -92,4 +173,94 @@ class SessionManagerTest {
 
         assertEquals("Session not found", thrown.getMessage());
     }
-}
\ No newline at end of file
+
+    @Test
+    void getSessionDetails_RepeatedRead_ShouldBeServedFromCache() {
+        when(mockSession.getAttribute("userId")).thenReturn(TEST_USER_ID);
+
+        sessionManager.getSessionDetails(mockSession);
+        String result = sessionManager.getSessionDetails(mockSession);
+
+        assertTrue(result.contains(TEST_USER_ID));
+        verify(mockSession, times(1)).getAttribute("userId");
+    }
+
+    // --- Tests for getSessionDetails(HttpServletRequest) ---
+
+    @Test
+    void getSessionDetails_RequestWithCachedSession_ShouldNotLoadSession() {
+        when(mockSession.getAttribute("userId")).thenReturn(TEST_USER_ID);
+        sessionManager.getSessionDetails(mockSession);  // Caches the attribute
+        MockHttpServletRequest request = requestWithSessionCookie(TEST_SESSION_ID);
+
+        String result = sessionManager.getSessionDetails(request);
+
+        assertEquals("Session ID for user " + TEST_USER_ID + ": " + TEST_SESSION_ID, result);
+        assertNull(request.getSession(false));  // Never created or loaded
+        assertEquals(1, attributeCache.redisRoundTripsSaved());
+    }
+
+    @Test
+    void getSessionDetails_RequestWithConfiguredCookieName_ShouldReadSessionIdFromIt() {
+        DefaultCookieSerializer cookieSerializer = new DefaultCookieSerializer();
+        cookieSerializer.setCookieName("SID");
+        StaticListableBeanFactory beans = new StaticListableBeanFactory();
+        beans.addBean("cookieSerializer", cookieSerializer);
+        SessionManager configured = new SessionManager(attributeCache, loginGuard, tokens, sessionIndex,
+                beans.getBeanProvider(HttpSessionIdResolver.class), beans.getBeanProvider(CookieSerializer.class));
+        when(mockSession.getAttribute("userId")).thenReturn(TEST_USER_ID);
+        configured.getSessionDetails(mockSession);  // Caches the attribute
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie("SID",
+                Base64.getEncoder().encodeToString(TEST_SESSION_ID.getBytes(StandardCharsets.UTF_8))));
+
+        String result = configured.getSessionDetails(request);
+
+        assertEquals("Session ID for user " + TEST_USER_ID + ": " + TEST_SESSION_ID, result);
+        assertNull(request.getSession(false));
+    }
+
+    @Test
+    void getSessionDetails_RequestWithoutSession_ThrowsException() {
+        MockHttpServletRequest request = requestWithSessionCookie("unknown");
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> sessionManager.getSessionDetails(request));
+
+        assertEquals("Session not found", thrown.getMessage());
+    }
+
+    // --- Tests for the stateless token mode ---
+
+    @Test
+    void tokenMode_LoginDetailsLogout_ShouldNotUseSession() {
+        SessionTokens enabledTokens = new SessionTokens(true, new byte[32], Duration.ofMinutes(30),
+                Duration.ofHours(1), new SessionTokensTest.LocalRevocations(), Clock.systemUTC());
+        SessionManager stateless = new SessionManager(attributeCache, loginGuard, enabledTokens, sessionIndex,
+                new CookieHttpSessionIdResolver());
+        MockHttpServletResponse loginResponse = new MockHttpServletResponse();
+
+        String login = stateless.login(TEST_USER_ID, new MockHttpServletRequest(), loginResponse);
+
+        assertTrue(login.startsWith("Login successful. Session ID: "));
+        String tokenId = login.substring("Login successful. Session ID: ".length());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(loginResponse.getCookie(SessionTokens.COOKIE_NAME));
+        assertEquals("Session ID for user " + TEST_USER_ID + ": " + tokenId, stateless.getSessionDetails(request));
+        assertEquals("User already logged in.", stateless.login(TEST_USER_ID, request, new MockHttpServletResponse()));
+
+        assertEquals("Logout successful.", stateless.logout(request, new MockHttpServletResponse()));
+
+        assertNull(request.getSession(false));
+        RuntimeException thrown = assertThrows(RuntimeException.class, () -> stateless.getSessionDetails(request));
+        assertEquals("Session not found", thrown.getMessage());
+    }
+
+    // Spring Session's default cookie holds the Base64 encoded session ID
+    private static MockHttpServletRequest requestWithSessionCookie(String sessionId) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setCookies(new Cookie("SESSION",
+                Base64.getEncoder().encodeToString(sessionId.getBytes(StandardCharsets.UTF_8))));
+        return request;
+    }
+}
@@ -0,0 +1,62 @@
+package com.unravel.part1SessionManagement;
+
+import com.unravel.part1SessionManagement.SessionAttributeSerializer.Format;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of writing and reading the values of a logged in session, the hash Spring Session keeps in Redis:
+ * {@code userId}, creation and last access time, and the max inactive interval. Compares
+ * {@link SessionAttributeSerializer} in both formats with the JSON serializer of Spring Data Redis. The payload size
+ * of each format is printed at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionSerializerBenchmark {
+
+    @Param({"COMPACT", "JDK", "JSON"})
+    public String format;
+
+    private final List<Object> values = List.of("user-12345", 1_760_000_000_000L, 1_760_000_123_456L, 1800);
+    private RedisSerializer<Object> serializer;
+    private List<byte[]> serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        serializer = format.equals("JSON")
+                ? new GenericJackson2JsonRedisSerializer()
+                : new SessionAttributeSerializer(Format.valueOf(format));
+        serialized = new ArrayList<>();
+        int bytes = 0;
+        for (Object value : values) {
+            byte[] payload = serializer.serialize(value);
+            serialized.add(payload);
+            bytes += payload.length;
+        }
+        System.out.printf("%n%s: %d bytes for %s%n", format, bytes, values);
+    }
+
+    @Benchmark
+    public void serialize(Blackhole blackhole) {
+        for (Object value : values) {
+            blackhole.consume(serializer.serialize(value));
+        }
+    }
+
+    @Benchmark
+    public void deserialize(Blackhole blackhole) {
+        for (byte[] payload : serialized) {
+            blackhole.consume(serializer.deserialize(payload));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.unravel.part1SessionManagement;
+
+import jakarta.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository.RedisSession;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of resolving the user of a request, by a signed token ({@link SessionTokens}) against loading the Redis
+ * session like {@link SessionManager#getSessionDetails} does. Run it for the percentiles, which JMH prints per run.
+ * <p>
+ * Redis is replaced by {@link FakeRedisServer}, with {@code roundTripMicros} of network in between.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionTokenBenchmark {
+
+    @Param({"0", "200"})
+    public int roundTripMicros;
+
+    private FakeRedisServer redis;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisIndexedSessionRepository repository;
+    private String sessionId;
+    private SessionTokens tokens;
+    private MockHttpServletRequest tokenRequest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        redis = new FakeRedisServer(Duration.ofNanos(roundTripMicros * 1000L));
+        connectionFactory = redis.connect();
+        repository = FakeRedisServer.sessionRepository(connectionFactory);
+        RedisSession session = repository.createSession();
+        session.setAttribute("userId", "user");
+        repository.save(session);
+        sessionId = session.getId();
+
+        tokens = new SessionTokens(true, "benchmark-secret".getBytes(StandardCharsets.UTF_8), Duration.ofMinutes(30),
+                Duration.ofHours(1), new SessionTokensTest.LocalRevocations(), Clock.systemUTC());
+        tokenRequest = new MockHttpServletRequest();
+        tokenRequest.setCookies(new Cookie(SessionTokens.COOKIE_NAME, tokens.issue("user").value()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Benchmark
+    public Object redisSession() {
+        return repository.findById(sessionId).getAttribute("userId");
+    }
+
+    @Benchmark
+    public Object signedToken() {
+        return tokens.verify(tokenRequest).userId();
+    }
+}
@@ -0,0 +1,190 @@
+package com.unravel.part1SessionManagement;
+
+import com.unravel.part1SessionManagement.SessionTokens.SessionToken;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class SessionTokensTest {
+
+    private static final byte[] SECRET = "test-secret-of-at-least-32-bytes!".getBytes(StandardCharsets.UTF_8);
+    private static final Duration TTL = Duration.ofMinutes(30);
+    private static final Duration ROTATION = Duration.ofMinutes(10);
+
+    private MutableClock clock;
+    private LocalRevocations revocations;
+    private SessionTokens tokens;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2026-10-18T10:00:00Z"));
+        revocations = new LocalRevocations();
+        tokens = new SessionTokens(true, SECRET, TTL, ROTATION, revocations, clock);
+    }
+
+    @Test
+    void issue_ThenVerify_ShouldReturnUser() {
+        SessionToken issued = tokens.issue("user-1");
+
+        SessionToken verified = tokens.verify(issued.value());
+
+        assertEquals(issued, verified);
+        assertEquals("user-1", verified.userId());
+        assertEquals(clock.instant().plus(TTL), verified.expiresAt());
+        assertTrue(issued.value().length() < 80, issued.value());
+    }
+
+    @Test
+    void verify_TamperedToken_ShouldReject() {
+        String value = tokens.issue("user-1").value();
+        int dot = value.indexOf('.');
+        byte[] payload = Base64.getUrlDecoder().decode(value.substring(0, dot));
+        payload[payload.length - 1] = '2';  // user-2
+        String forged = Base64.getUrlEncoder().withoutPadding().encodeToString(payload) + value.substring(dot);
+
+        assertNull(tokens.verify(forged));
+        assertNull(tokens.verify("not-a-token"));
+        assertNull(tokens.verify(value.substring(0, dot) + ".!!"));
+    }
+
+    @Test
+    void verify_SignedWithOtherSecret_ShouldReject() {
+        SessionTokens otherCluster = new SessionTokens(true, "another-secret".getBytes(StandardCharsets.UTF_8), TTL,
+                ROTATION, revocations, clock);
+
+        assertNull(tokens.verify(otherCluster.issue("user-1").value()));
+    }
+
+    @Test
+    void verify_AcrossKeyRotations_ShouldAcceptUntilExpiry() {
+        String value = tokens.issue("user-1").value();
+        SessionTokens otherNode = new SessionTokens(true, SECRET, TTL, ROTATION, revocations, clock);
+
+        clock.advance(Duration.ofMinutes(29));  // Signed 3 key periods ago
+        assertNotNull(otherNode.verify(value));
+
+        clock.advance(Duration.ofMinutes(1));
+        assertNull(otherNode.verify(value));
+    }
+
+    @Test
+    void revoke_ShouldRejectTokenAndClearCookie() {
+        MockHttpServletResponse loginResponse = new MockHttpServletResponse();
+        SessionToken token = tokens.issue("user-1", new MockHttpServletRequest(), loginResponse);
+        assertTrue(loginResponse.getHeader(HttpHeaders.SET_COOKIE).contains("HttpOnly"));
+
+        MockHttpServletResponse logoutResponse = new MockHttpServletResponse();
+        tokens.revoke(token, new MockHttpServletRequest(), logoutResponse);
+
+        assertNull(tokens.verify(token.value()));
+        assertEquals(TTL, revocations.revoked.get(token.id()));
+        assertTrue(logoutResponse.getHeader(HttpHeaders.SET_COOKIE).contains("Max-Age=0"));
+    }
+
+    @Test
+    void verify_Request_ShouldReadBearerHeaderOrCookie() {
+        String value = tokens.issue("user-1").value();
+        MockHttpServletRequest withHeader = new MockHttpServletRequest();
+        withHeader.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + value);
+        MockHttpServletRequest withCookie = new MockHttpServletRequest();
+        withCookie.setCookies(new Cookie(SessionTokens.COOKIE_NAME, value));
+
+        assertEquals("user-1", tokens.verify(withHeader).userId());
+        assertEquals("user-1", tokens.verify(withCookie).userId());
+        assertNull(tokens.verify(new MockHttpServletRequest()));
+    }
+
+    @Test
+    void context_WithTokensDisabled_ShouldNotCreateRedisRevocations() {
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withBean(RedisConnectionFactory.class, () -> connectionFactory)
+                .withUserConfiguration(RedisTokenRevocations.class, SessionTokens.class)
+                .withPropertyValues("session.token.enabled=false")
+                .run(context -> {
+                    assertNull(context.getStartupFailure());
+                    assertTrue(context.getBeansOfType(RedisTokenRevocations.class).isEmpty());
+                    assertFalse(context.getBean(SessionTokens.class).enabled());
+                });
+        verifyNoInteractions(connectionFactory);  // Neither subscribed nor scanned
+    }
+
+    @Test
+    void context_WithTokensEnabledAndNoSecret_ShouldFailStartup() {
+        new ApplicationContextRunner()
+                .withInitializer(context -> context.getBeanFactory()
+                        .setConversionService(ApplicationConversionService.getSharedInstance()))
+                .withUserConfiguration(SessionTokens.class)
+                .withPropertyValues("session.token.enabled=true", "session.token.secret=")
+                .run(context -> {
+                    assertNotNull(context.getStartupFailure());
+                    Throwable cause = NestedExceptionUtils.getMostSpecificCause(context.getStartupFailure());
+                    assertInstanceOf(IllegalStateException.class, cause);
+                    assertTrue(cause.getMessage().contains("session.token.secret"));
+                });
+    }
+
+    static final class LocalRevocations implements TokenRevocations {
+        final Map<String, Duration> revoked = new ConcurrentHashMap<>();
+
+        @Override
+        public void revoke(String tokenId, Duration remaining) {
+            revoked.put(tokenId, remaining);
+        }
+
+        @Override
+        public boolean isRevoked(String tokenId) {
+            return revoked.containsKey(tokenId);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
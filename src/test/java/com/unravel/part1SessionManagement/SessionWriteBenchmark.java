@@ -0,0 +1,70 @@
+package com.unravel.part1SessionManagement;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository.RedisSession;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Login throughput of {@link PipelinedSessionRepository} per {@link SessionWriteMode}, logging in like
+ * {@link SessionManager#login} does on a new session. Commands and round trips per login are printed after each run.
+ * One thread shows the latency a request pays, run with {@code -t 8} for concurrent logins.
+ * <p>
+ * Redis is replaced by {@link FakeRedisServer}, with {@code roundTripMicros} of network in between. Spring Session,
+ * Lettuce and the connection pool are the real ones.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Threads(1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SessionWriteBenchmark {
+
+    @Param({"IMMEDIATE", "PIPELINED", "ASYNC"})
+    public SessionWriteMode mode;
+
+    @Param({"0", "200"})
+    public int roundTripMicros;
+
+    private FakeRedisServer redis;
+    private LettuceConnectionFactory connectionFactory;
+    private PipelinedSessionRepository repository;
+    private final LongAdder logins = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void connect() throws IOException {
+        redis = new FakeRedisServer(Duration.ofNanos(roundTripMicros * 1000L));
+        connectionFactory = redis.connect();
+        repository = new PipelinedSessionRepository(FakeRedisServer.sessionRepository(connectionFactory),
+                new SessionWritePolicy(mode, List.of(), List.of()), 2, 10_000);
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws InterruptedException, IOException {
+        repository.destroy();
+        System.out.printf("%n%s, %d us round trip: %.1f commands and %.2f round trips per login%n", mode,
+                roundTripMicros, (double) redis.commands.sum() / logins.sum(),
+                (double) redis.roundTrips.sum() / logins.sum());
+        connectionFactory.destroy();
+        redis.close();
+    }
+
+    @Benchmark
+    public String login() {
+        // The attribute check and change stay in memory until the save, which is all the Redis work of a login
+        RedisSession session = repository.createSession();
+        if (session.getAttribute("userId") == null) {
+            session.setAttribute("userId", "user");
+        }
+        repository.save(session);
+        logins.increment();
+        return session.getId();
+    }
+}
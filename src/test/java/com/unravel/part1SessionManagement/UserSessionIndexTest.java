@@ -0,0 +1,89 @@
+package com.unravel.part1SessionManagement;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.session.data.redis.RedisIndexedSessionRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UserSessionIndexTest {
+
+    private static final String INDEX_KEY =
+            "spring:session:index:org.springframework.session.FindByIndexNameSessionRepository.PRINCIPAL_NAME_INDEX_NAME:user-1";
+
+    private RedisOperations<String, Object> redis;
+    private SetOperations<String, Object> sets;
+    private HashOperations<String, Object, Object> hashes;
+    private SessionAttributeCache attributeCache;
+    private UserSessionIndex index;
+    private boolean inPipeline;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redis = mock(RedisOperations.class);
+        sets = mock(SetOperations.class);
+        hashes = mock(HashOperations.class);
+        when(redis.opsForSet()).thenReturn(sets);
+        when(redis.opsForHash()).thenReturn(hashes);
+        when(redis.executePipelined(any(SessionCallback.class))).thenAnswer(invocation -> {
+            inPipeline = true;
+            try {
+                invocation.getArgument(0, SessionCallback.class).execute(redis);
+            } finally {
+                inPipeline = false;
+            }
+            return List.of();
+        });
+        RedisIndexedSessionRepository sessions = mock(RedisIndexedSessionRepository.class);
+        when(sessions.getSessionRedisOperations()).thenReturn(redis);
+        attributeCache = spy(new SessionAttributeCache(InvalidationChannel.NONE, Duration.ofSeconds(5)));
+        index = new UserSessionIndex(sessions, attributeCache, "spring:session");
+    }
+
+    @Test
+    void sessionIds_ShouldReadOnlyTheUsersSet() {
+        when(sets.members(INDEX_KEY)).thenReturn(Set.of("s1", "s2"));
+
+        assertEquals(Set.of("s1", "s2"), index.sessionIds("user-1"));
+        verify(redis, never()).keys(any());
+        verify(redis, never()).scan(any());
+    }
+
+    @Test
+    void invalidateAll_ShouldExpireEverySessionInOnePipeline() {
+        when(sets.members(INDEX_KEY)).thenReturn(Set.of("s1", "s2"));
+        doAnswer(invocation -> {
+            assertTrue(inPipeline, "write outside the pipeline");
+            return null;
+        }).when(hashes).put(any(), any(), any());
+
+        assertEquals(2, index.invalidateAll("user-1"));
+
+        verify(redis, times(1)).executePipelined(any(SessionCallback.class));
+        for (String id : List.of("s1", "s2")) {
+            verify(hashes).put("spring:session:sessions:" + id, UserSessionIndex.MAX_INACTIVE_INTERVAL_KEY, 0);
+            verify(redis).delete("spring:session:sessions:expires:" + id);
+            verify(attributeCache).invalidate(id);
+        }
+        verify(sets).remove(eq(INDEX_KEY), any(Object[].class));
+    }
+
+    @Test
+    void invalidateAll_NoSessions_ShouldNotPipeline() {
+        when(sets.members(INDEX_KEY)).thenReturn(Set.of());
+
+        assertEquals(0, index.invalidateAll("user-1"));
+        verify(redis, never()).executePipelined(any(SessionCallback.class));
+    }
+}
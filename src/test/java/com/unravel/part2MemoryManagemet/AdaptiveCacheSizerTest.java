@@ -0,0 +1,104 @@
+package com.unravel.part2MemoryManagemet;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveCacheSizerTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private MemoryManager memoryManager;
+    private AdaptiveCacheSizer sizer;
+
+    @BeforeEach
+    void setUp() {
+        memoryManager = new MemoryManager(Duration.ofMinutes(30));
+        sizer = new AdaptiveCacheSizer(memoryManager, 32 * MB, 512 * MB, 0.5, 0.75);
+    }
+
+    @Test
+    void onHeapOccupancy_AboveHighWatermark_ShouldShrinkDownToFloor() {
+        sizer.onHeapOccupancy(0.9);
+        assertEquals((long) (MemoryManager.MAX_WEIGHT_BYTES * AdaptiveCacheSizer.SHRINK_FACTOR), sizer.limit());
+
+        for (int i = 0; i < 20; i++) {
+            sizer.onHeapOccupancy(0.9);
+        }
+        assertEquals(32 * MB, sizer.limit());
+    }
+
+    @Test
+    void onHeapOccupancy_BetweenWatermarks_ShouldKeepLimit() {
+        sizer.onHeapOccupancy(0.6);
+
+        assertEquals(MemoryManager.MAX_WEIGHT_BYTES, sizer.limit());
+    }
+
+    @Test
+    void onHeapOccupancy_BelowLowWatermark_ShouldGrowOnlyWhenCacheIsFull() {
+        sizer.onHeapOccupancy(0.2);
+        assertEquals(MemoryManager.MAX_WEIGHT_BYTES, sizer.limit());  // Empty cache, nothing to gain
+
+        for (int i = 0; i < 24; i++) {  // 240 MB, within the limit but above the grow threshold
+            memoryManager.addSessionData("sess-" + i);
+        }
+        memoryManager.heldBytes();  // Runs pending maintenance, so the weighted size includes all writes
+        sizer.onHeapOccupancy(0.2);
+
+        assertEquals((long) (MemoryManager.MAX_WEIGHT_BYTES * AdaptiveCacheSizer.GROW_FACTOR), sizer.limit());
+    }
+
+    @Test
+    void constructor_ShouldClampInitialLimitToBounds() {
+        MemoryManager small = new MemoryManager(Duration.ofMinutes(30));
+        AdaptiveCacheSizer smallHeap = new AdaptiveCacheSizer(small, 16 * MB, 64 * MB, 0.5, 0.75);
+
+        assertEquals(64 * MB, smallHeap.limit());
+    }
+
+    @Test
+    void isOldCollection_ShouldSkipYoungCollections() {
+        assertFalse(AdaptiveCacheSizer.isOldCollection("end of minor GC"));
+        assertTrue(AdaptiveCacheSizer.isOldCollection("end of major GC"));
+        assertTrue(AdaptiveCacheSizer.isOldCollection("end of concurrent GC"));
+    }
+
+    @Test
+    void bindTo_ShouldExposeLimitAndAdjustments() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        sizer.bindTo(registry);
+
+        sizer.onHeapOccupancy(0.95);
+
+        assertEquals(sizer.limit(), registry.get("session.data.cache.limit").gauge().value());
+        assertEquals(0.95, registry.get("session.data.heap.occupancy").gauge().value());
+        assertEquals(1, registry.get("session.data.cache.adjustments").tag("direction", "shrink")
+                .functionCounter().count());
+        assertEquals(0, registry.get("session.data.cache.adjustments").tag("direction", "grow")
+                .functionCounter().count());
+    }
+
+    @Test
+    void afterPropertiesSet_ShouldReadOccupancyFromGcNotifications() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        sizer.bindTo(registry);
+        sizer.afterPropertiesSet();
+        try {
+            System.gc();
+
+            await().atMost(5, TimeUnit.SECONDS).until(() -> {
+                double occupancy = registry.get("session.data.heap.occupancy").gauge().value();
+                return occupancy > 0 && occupancy < 1;
+            });
+        } finally {
+            sizer.destroy();
+        }
+    }
+}
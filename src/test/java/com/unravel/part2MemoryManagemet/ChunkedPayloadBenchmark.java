@@ -0,0 +1,81 @@
+package com.unravel.part2MemoryManagemet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident memory of {@link ChunkedPayload}s under different access patterns. {@link #sessions} payloads of 10 MB
+ * each (1 GB in total, what {@link MemoryManager} would allocate up front) share a {@link #budgetMb} page cache,
+ * and every operation reads 4 KB. The footprint after the last iteration is printed with the results.
+ * <ul>
+ *     <li>{@code HEADER}: only the first 4 KB of each payload, e.g. a small header in front of the blob</li>
+ *     <li>{@code HOT_SET}: 90% of reads in the first 10% of each payload, the rest anywhere</li>
+ *     <li>{@code UNIFORM}: anywhere in any payload, the worst case for paging</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkedPayloadBenchmark {
+    private static final int PAYLOAD_SIZE = 10 * 1024 * 1024;
+    private static final int READ_SIZE = 4096;
+
+    public enum Pattern {HEADER, HOT_SET, UNIFORM}
+
+    @Param({"HEADER", "HOT_SET", "UNIFORM"})
+    public Pattern pattern;
+
+    @Param({"100"})
+    public int sessions;
+
+    @Param({"128"})
+    public int budgetMb;
+
+    private Path directory;
+    private ChunkedPayloadCache cache;
+    private ChunkedPayload[] payloads;
+    private final byte[] buffer = new byte[READ_SIZE];
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Setup(Level.Trial)
+    public void createPayloads() throws IOException {
+        directory = Files.createTempDirectory("chunked-payload-bench");
+        cache = new ChunkedPayloadCache((long) budgetMb << 20);
+        payloads = new ChunkedPayload[sessions];
+        for (int i = 0; i < sessions; i++) {
+            payloads[i] = cache.create(PAYLOAD_SIZE, FilePageSource.temporary(directory, cache.pageSize()));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePayloads() throws IOException {
+        System.out.printf("%n%s: resident %d MB of %d MB, %d page evictions%n", pattern,
+                cache.residentBytes() >> 20, (long) sessions * PAYLOAD_SIZE >> 20, cache.evictionCount());
+        for (ChunkedPayload payload : payloads) {
+            payload.close();
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public byte read() {
+        ChunkedPayload payload = payloads[random.nextInt(sessions)];
+        long offset = switch (pattern) {
+            case HEADER -> 0;
+            case HOT_SET -> random.nextInt(10) < 9
+                    ? random.nextInt(PAYLOAD_SIZE / 10 - READ_SIZE)
+                    : random.nextInt(PAYLOAD_SIZE - READ_SIZE);
+            case UNIFORM -> random.nextInt(PAYLOAD_SIZE - READ_SIZE);
+        };
+        payload.read(offset, buffer, 0, READ_SIZE);
+        return buffer[0];
+    }
+}
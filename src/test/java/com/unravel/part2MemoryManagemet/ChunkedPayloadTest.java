@@ -0,0 +1,146 @@
+package com.unravel.part2MemoryManagemet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedPayloadTest {
+
+    private static final int PAGE = 1024;
+
+    @Test
+    void read_ShouldLoadOnlyTouchedPages() throws IOException {
+        ChunkedPayloadCache cache = new ChunkedPayloadCache(64 * PAGE, PAGE);
+        RecordingSource source = new RecordingSource();
+        try (ChunkedPayload payload = cache.create(10L * 1024 * 1024, source)) {
+            assertEquals(0, payload.residentBytes());
+
+            byte[] bytes = new byte[10];
+            payload.read(3L * PAGE + 100, bytes, 0, bytes.length);
+
+            assertArrayEquals(new byte[10], bytes);
+            assertEquals(List.of(3), source.loads);
+            assertEquals(PAGE, payload.residentBytes());
+            assertEquals(PAGE, cache.residentBytes());
+        }
+    }
+
+    @Test
+    void write_AcrossPageBoundary_ShouldReadBack() throws IOException {
+        ChunkedPayloadCache cache = new ChunkedPayloadCache(64 * PAGE, PAGE);
+        try (ChunkedPayload payload = cache.create(4L * PAGE, new RecordingSource())) {
+            byte[] written = payload(PAGE + 200, 5);
+
+            payload.write(PAGE - 100, written, 0, written.length);
+
+            byte[] read = new byte[written.length];
+            payload.read(PAGE - 100, read, 0, read.length);
+            assertArrayEquals(written, read);
+            assertEquals(3 * PAGE, payload.residentBytes());
+        }
+    }
+
+    @Test
+    void write_UnderMemoryPressure_ShouldStoreEvictedPagesAndReloadThem() throws IOException {
+        ChunkedPayloadCache cache = new ChunkedPayloadCache(2 * PAGE, PAGE);
+        RecordingSource source = new RecordingSource();
+        try (ChunkedPayload payload = cache.create(8L * PAGE, source)) {
+            for (int i = 0; i < 8; i++) {
+                payload.write((long) i * PAGE, payload(PAGE, i), 0, PAGE);
+            }
+            assertTrue(cache.residentBytes() <= 2 * PAGE);
+            assertTrue(source.stored.size() >= 6);
+
+            for (int i = 0; i < 8; i++) {
+                byte[] read = new byte[PAGE];
+                payload.read((long) i * PAGE, read, 0, PAGE);
+                assertArrayEquals(payload(PAGE, i), read);
+            }
+            assertTrue(payload.residentBytes() <= 2 * PAGE);
+            assertTrue(cache.evictionCount() >= 6);
+        }
+    }
+
+    @Test
+    void close_ShouldDropPagesWithoutStoringThem() throws IOException {
+        ChunkedPayloadCache cache = new ChunkedPayloadCache(64 * PAGE, PAGE);
+        RecordingSource source = new RecordingSource();
+        ChunkedPayload payload = cache.create(4L * PAGE, source);
+        payload.write(0, payload(PAGE, 1), 0, PAGE);
+
+        payload.close();
+
+        assertEquals(0, cache.residentBytes());
+        assertEquals(0, payload.residentBytes());
+        assertTrue(source.stored.isEmpty());
+        assertTrue(source.closed);
+        assertThrows(IllegalStateException.class, () -> payload.read(0, new byte[1], 0, 1));
+    }
+
+    @Test
+    void read_OutsidePayload_ShouldThrow() throws IOException {
+        ChunkedPayloadCache cache = new ChunkedPayloadCache(64 * PAGE, PAGE);
+        try (ChunkedPayload payload = cache.create(PAGE + 10, new RecordingSource())) {
+            assertThrows(IndexOutOfBoundsException.class, () -> payload.read(PAGE, new byte[11], 0, 11));
+            assertThrows(IndexOutOfBoundsException.class, () -> payload.write(-1, new byte[1], 0, 1));
+        }
+    }
+
+    @Test
+    void filePageSource_ShouldKeepStoredPagesAndReadZerosElsewhere(@TempDir Path directory) throws IOException {
+        ChunkedPayloadCache cache = new ChunkedPayloadCache(PAGE, PAGE);
+        try (ChunkedPayload payload = cache.create(3L * PAGE + 10, FilePageSource.temporary(directory, PAGE))) {
+            byte[] tail = payload(10, 9);
+            payload.write(3L * PAGE, tail, 0, tail.length);  // Short last page
+            payload.read(0, new byte[1], 0, 1);  // Room for one page, so one of the two is evicted
+
+            byte[] read = new byte[10];
+            payload.read(3L * PAGE, read, 0, read.length);
+            assertArrayEquals(tail, read);
+            byte[] untouched = new byte[PAGE];
+            payload.read(PAGE, untouched, 0, PAGE);
+            assertArrayEquals(new byte[PAGE], untouched);
+        }
+    }
+
+    private static byte[] payload(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+
+    private static class RecordingSource implements PageSource {
+        private final List<Integer> loads = new ArrayList<>();
+        private final Map<Integer, byte[]> stored = new HashMap<>();
+        private boolean closed;
+
+        @Override
+        public synchronized void load(int index, byte[] page) {
+            loads.add(index);
+            byte[] data = stored.get(index);
+            if (data != null) {
+                System.arraycopy(data, 0, page, 0, page.length);
+            }
+        }
+
+        @Override
+        public synchronized void store(int index, byte[] page) {
+            stored.put(index, page.clone());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.unravel.part2MemoryManagemet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of {@link DeflateCodec} per 1 MB payload against the memory it saves. The stored size and ratio of each
+ * payload kind are printed before the measurements.
+ * <ul>
+ *     <li>{@code ZEROS}: the placeholder data {@link MemoryManager#addSessionData(String)} stores</li>
+ *     <li>{@code JSON}: session-like JSON, repetitive but not uniform</li>
+ *     <li>{@code RANDOM}: incompressible, e.g. already encrypted or compressed data</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionCodecBenchmark {
+    private static final int SIZE = 1024 * 1024;
+
+    public enum Payload {ZEROS, JSON, RANDOM}
+
+    @Param({"ZEROS", "JSON", "RANDOM"})
+    public Payload payload;
+
+    @Param({"1", "6"})
+    public int level;
+
+    private DeflateCodec codec;
+    private byte[] data;
+    private byte[] compressed;
+
+    @Setup(Level.Trial)
+    public void createPayload() {
+        codec = new DeflateCodec(level);
+        data = switch (payload) {
+            case ZEROS -> new byte[SIZE];
+            case JSON -> CompressionCodecTest.json(SIZE);
+            case RANDOM -> {
+                byte[] bytes = new byte[SIZE];
+                new SplittableRandom(42).nextBytes(bytes);
+                yield bytes;
+            }
+        };
+        compressed = codec.compress(data);
+        System.out.printf("%n%s level %d: %d KB -> %d KB, ratio %.1f%n", payload, level, SIZE >> 10,
+                compressed.length >> 10, (double) SIZE / compressed.length);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return codec.compress(data);
+    }
+
+    @Benchmark
+    public byte[] decompress() {
+        return codec.decompress(compressed, SIZE);
+    }
+}
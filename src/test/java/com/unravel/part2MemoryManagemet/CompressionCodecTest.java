@@ -0,0 +1,115 @@
+package com.unravel.part2MemoryManagemet;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionCodecTest {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(30);
+
+    private MemoryManager memoryManager;
+
+    @BeforeEach
+    void setUp() {
+        memoryManager = new MemoryManager(TIMEOUT, RemoteSessionDataStore.NONE, DeflateCodec.FASTEST, 1024);
+    }
+
+    @Test
+    void deflate_ShouldRoundTrip() {
+        byte[] data = json(50_000);
+
+        byte[] compressed = DeflateCodec.FASTEST.compress(data);
+
+        assertTrue(compressed.length < data.length / 4);
+        assertArrayEquals(data, DeflateCodec.FASTEST.decompress(compressed, data.length));
+    }
+
+    @Test
+    void deflate_WithTruncatedInput_ShouldThrow() {
+        byte[] data = json(50_000);
+        byte[] compressed = DeflateCodec.FASTEST.compress(data);
+
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        assertThrows(IllegalArgumentException.class, () -> DeflateCodec.FASTEST.decompress(truncated, data.length));
+    }
+
+    @Test
+    void forName_ShouldResolveBuiltInCodecs() {
+        assertSame(CompressionCodec.NONE, CompressionCodec.forName("none"));
+        assertSame(DeflateCodec.FASTEST, CompressionCodec.forName("Deflate"));
+        assertSame(DeflateCodec.FASTEST, CompressionCodec.forId(DeflateCodec.ID));
+        assertThrows(IllegalArgumentException.class, () -> CompressionCodec.forName("lz4"));
+    }
+
+    // --- MemoryManager storage ---
+
+    @Test
+    void addSessionData_AboveThreshold_ShouldHoldCompressedBytes() {
+        byte[] data = json(100_000);
+
+        memoryManager.addSessionData("sess-1", data, TIMEOUT);
+
+        assertTrue(memoryManager.heldBytes() < data.length / 4);
+        assertArrayEquals(data, memoryManager.getSessionData("sess-1"));
+        MemoryManager.SessionSize size = memoryManager.largestSessions(1).get(0);
+        assertEquals(data.length, size.originalBytes());
+        assertEquals(memoryManager.heldBytes(), size.bytes());
+    }
+
+    @Test
+    void addSessionData_BelowThreshold_ShouldHoldDataAsItIs() {
+        byte[] data = json(1000);
+
+        memoryManager.addSessionData("sess-1", data, TIMEOUT);
+
+        assertEquals(1000, memoryManager.heldBytes());
+        assertSame(data, memoryManager.getSessionData("sess-1"));
+    }
+
+    @Test
+    void addSessionData_Incompressible_ShouldHoldDataAsItIs() {
+        byte[] data = new byte[100_000];
+        new Random(1).nextBytes(data);
+
+        memoryManager.addSessionData("sess-1", data, TIMEOUT);
+
+        assertEquals(data.length, memoryManager.heldBytes());
+        assertArrayEquals(data, memoryManager.getSessionData("sess-1"));
+    }
+
+    @Test
+    void bindTo_ShouldRecordCompressionRatioPerEntry() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        memoryManager.bindTo(registry);
+
+        memoryManager.addSessionData("sess-1");  // 10 MB of zeros
+        memoryManager.addSessionData("sess-2", json(500), TIMEOUT);
+
+        DistributionSummary ratio = registry.get("session.data.compression.ratio").summary();
+        assertEquals(2, ratio.count());
+        assertTrue(ratio.max() > 100);
+        assertEquals(1.0, ratio.totalAmount() - ratio.max(), 1e-9);  // Below the threshold, stored as it is
+    }
+
+    // Session-like JSON, repetitive but not uniform
+    static byte[] json(int size) {
+        StringBuilder json = new StringBuilder(size + 100).append('[');
+        for (int i = 0; json.length() < size; i++) {
+            json.append("{\"id\":").append(i * 7919 % 100_000)
+                    .append(",\"user\":\"user-").append(i % 97)
+                    .append("\",\"cart\":[").append(i % 13).append(',').append(i % 31)
+                    .append("],\"viewed\":").append(i % 5 == 0).append("},");
+        }
+        return Arrays.copyOf(json.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+}
@@ -0,0 +1,271 @@
+package com.unravel.part2MemoryManagemet;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.session.MapSession;
+import org.springframework.session.events.SessionExpiredEvent;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryManagerNearCacheTest {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(30);
+
+    private final FakeTicker ticker = new FakeTicker();
+    private FakeRedis redis;
+    private FakeRedis.Node nodeA;
+    private FakeRedis.Node nodeB;
+    private MemoryManager managerA;
+    private MemoryManager managerB;
+
+    @BeforeEach
+    void setUp() {
+        redis = new FakeRedis(ticker);
+        nodeA = redis.node("a");
+        nodeB = redis.node("b");
+        managerA = new MemoryManager(TIMEOUT, nodeA, DeflateCodec.FASTEST, 1024, ticker);
+        managerB = new MemoryManager(TIMEOUT, nodeB, DeflateCodec.FASTEST, 1024, ticker);
+    }
+
+    @Test
+    void getSessionData_OnOtherNode_ShouldLoadFromL2OnceThenHitL1() {
+        byte[] data = payload(4096);
+        managerA.addSessionData("sess-1", data, TIMEOUT);
+
+        assertArrayEquals(data, managerB.getSessionData("sess-1"));
+        assertArrayEquals(data, managerB.getSessionData("sess-1"));
+
+        assertEquals(1, nodeB.gets.get());
+        assertEquals(0, nodeA.gets.get());  // Node A had it in L1 all along
+    }
+
+    @Test
+    void addSessionData_ShouldInvalidateStaleCopyOnOtherNode() {
+        managerA.addSessionData("sess-1", payload(16), TIMEOUT);
+        managerB.getSessionData("sess-1");
+
+        byte[] replaced = new byte[]{1, 2, 3};
+        managerA.addSessionData("sess-1", replaced, TIMEOUT);
+
+        assertArrayEquals(replaced, managerB.getSessionData("sess-1"));
+        assertEquals(2, nodeB.gets.get());
+    }
+
+    @Test
+    void removeSessionData_ShouldRemoveDataOnAllNodes() {
+        managerA.addSessionData("sess-1", payload(16), TIMEOUT);
+        managerB.getSessionData("sess-1");
+
+        managerA.removeSessionData("sess-1");
+
+        assertNull(managerB.getSessionData("sess-1"));
+        assertFalse(redis.values.containsKey("sess-1"));
+    }
+
+    @Test
+    void onSessionDestroyed_ShouldClearLocalDataAndLeaveL2ToExpire() {
+        managerA.addSessionData("sess-1", payload(16), TIMEOUT);
+        managerB.getSessionData("sess-1");
+
+        SessionExpiredEvent event = new SessionExpiredEvent(this, new MapSession("sess-1"));
+        managerA.onSessionDestroyed(event);
+        managerB.onSessionDestroyed(event);
+
+        // Every node receives the event, so a DEL from each would repeat the same command N times
+        assertEquals(0, nodeA.deletes.get() + nodeB.deletes.get());
+        assertEquals(0, managerA.entryCount());
+        assertEquals(0, managerB.entryCount());
+        ticker.advance(TIMEOUT.multipliedBy(2));
+        assertNull(managerA.getSessionData("sess-1"));
+    }
+
+    @Test
+    void getSessionData_FromL1_ShouldKeepL2CopyAliveForOtherNodes() {
+        byte[] data = payload(16);
+        managerA.addSessionData("sess-1", data, TIMEOUT);
+
+        // Node A only reads, well past the time to live that was set when the data was written
+        for (int i = 0; i < 6; i++) {
+            ticker.advance(Duration.ofMinutes(10));
+            assertArrayEquals(data, managerA.getSessionData("sess-1"));
+        }
+
+        assertArrayEquals(data, managerB.getSessionData("sess-1"));
+        assertEquals(0, nodeA.gets.get());
+    }
+
+    @Test
+    void getSessionData_FromL1_ShouldTouchL2AtMostOncePerQuarterOfTimeout() {
+        managerA.addSessionData("sess-1", payload(16), TIMEOUT);
+
+        for (int i = 0; i < 100; i++) {
+            managerA.getSessionData("sess-1");
+        }
+        assertEquals(0, nodeA.touches.get());
+
+        ticker.advance(TIMEOUT.dividedBy(4));
+        managerA.getSessionData("sess-1");
+        managerA.getSessionData("sess-1");
+        assertEquals(1, nodeA.touches.get());
+    }
+
+    @Test
+    void getSessionData_AfterL2TimeToLive_ShouldFindNothingOnOtherNode() {
+        managerA.addSessionData("sess-1", payload(16), TIMEOUT);
+
+        ticker.advance(TIMEOUT.multipliedBy(2));
+
+        assertNull(managerB.getSessionData("sess-1"));
+    }
+
+    @Test
+    void addSessionData_WithCompression_ShouldStoreCompressedBytes() {
+        managerA.addSessionData("sess-1");
+
+        byte[] stored = redis.values.get("sess-1").value();
+        assertTrue(stored.length < MemoryManager.SESSION_DATA_SIZE / 100);
+        assertEquals(MemoryManager.SESSION_DATA_SIZE, managerB.getSessionData("sess-1").length);
+    }
+
+    // --- Codec ---
+
+    @Test
+    void codec_ShouldRoundTripStoredBytesAndHeader() {
+        byte[] data = payload(100_000);
+        MemoryManager.SessionBlob blob = new MemoryManager.SessionBlob(DeflateCodec.FASTEST.compress(data),
+                data.length, DeflateCodec.ID, Duration.ofSeconds(42));
+
+        MemoryManager.SessionBlob decoded = SessionBlobCodec.decode(SessionBlobCodec.encode(blob));
+
+        assertArrayEquals(blob.stored(), decoded.stored());
+        assertEquals(data.length, decoded.length());
+        assertEquals(DeflateCodec.ID, decoded.codec());
+        assertEquals(blob.maxInactiveInterval(), decoded.maxInactiveInterval());
+    }
+
+    @Test
+    void codec_ShouldRejectUnknownVersion() {
+        byte[] encoded = SessionBlobCodec.encode(new MemoryManager.SessionBlob(new byte[1], 1, (byte) 0, TIMEOUT));
+        encoded[0] = 99;
+
+        assertThrows(IllegalArgumentException.class, () -> SessionBlobCodec.decode(encoded));
+    }
+
+    private static byte[] payload(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        return bytes;
+    }
+
+    private static class FakeTicker implements Ticker {
+        private final AtomicLong nanos = new AtomicLong();
+
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+
+        void advance(Duration duration) {
+            nanos.addAndGet(duration.toNanos());
+        }
+    }
+
+    // Stand-in for a Redis server: one key space with expiring keys and a pub/sub channel shared by all nodes
+    private static class FakeRedis {
+        private final Map<String, Entry> values = new ConcurrentHashMap<>();
+        private final List<Node> nodes = new CopyOnWriteArrayList<>();
+        private final Ticker ticker;
+
+        FakeRedis(Ticker ticker) {
+            this.ticker = ticker;
+        }
+
+        private record Entry(byte[] value, long expiresAt) {
+        }
+
+        Node node(String name) {
+            Node node = new Node(name);
+            nodes.add(node);
+            return node;
+        }
+
+        private class Node implements RemoteSessionDataStore {
+            private final String name;
+            private final AtomicInteger gets = new AtomicInteger();
+            private final AtomicInteger touches = new AtomicInteger();
+            private final AtomicInteger deletes = new AtomicInteger();
+            private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+            private Node(String name) {
+                this.name = name;
+            }
+
+            @Override
+            public byte[] get(String sessionId) {
+                gets.incrementAndGet();
+                Entry entry = live(sessionId);
+                return entry == null ? null : entry.value();
+            }
+
+            @Override
+            public void put(String sessionId, byte[] encoded, Duration timeToLive) {
+                values.put(sessionId, new Entry(encoded, ticker.read() + timeToLive.toNanos()));
+            }
+
+            @Override
+            public void touch(String sessionId, Duration timeToLive) {
+                touches.incrementAndGet();
+                Entry entry = live(sessionId);
+                if (entry != null) {
+                    values.put(sessionId, new Entry(entry.value(), ticker.read() + timeToLive.toNanos()));
+                }
+            }
+
+            private Entry live(String sessionId) {
+                Entry entry = values.get(sessionId);
+                if (entry != null && entry.expiresAt() - ticker.read() <= 0) {
+                    values.remove(sessionId, entry);
+                    return null;
+                }
+                return entry;
+            }
+
+            @Override
+            public void delete(String sessionId) {
+                deletes.incrementAndGet();
+                values.remove(sessionId);
+            }
+
+            @Override
+            public void publishInvalidation(String sessionId) {
+                for (Node node : nodes) {
+                    if (node != this) {
+                        node.listeners.forEach(listener -> listener.accept(sessionId));
+                    }
+                }
+            }
+
+            @Override
+            public void onInvalidation(Consumer<String> listener) {
+                listeners.add(listener);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        }
+    }
+}
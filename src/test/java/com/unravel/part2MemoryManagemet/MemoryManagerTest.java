@@ -2,10 +2,18 @@ package com.unravel.part2MemoryManagemet;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.session.MapSession;
+import org.springframework.session.events.SessionDeletedEvent;
+import org.springframework.session.events.SessionExpiredEvent;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.*;
@@ -13,10 +21,12 @@ import static org.junit.jupiter.api.Assertions.*;
 class MemoryManagerTest {
 
     private Cache<String, byte[]> cache;
+    private MemoryManager memoryManager;
 
     @BeforeEach
     void setUp() {
-        // Reset static cache for isolation (using reflection or recreate)
+        // A fresh manager per test, so no entries leak between tests
+        memoryManager = new MemoryManager(MemoryManager.DEFAULT_SESSION_TIMEOUT);
         cache = Caffeine.newBuilder()
                 .maximumSize(500)
                 .expireAfterAccess(10, TimeUnit.SECONDS)
@@ -27,19 +37,17 @@ class MemoryManagerTest {
     @Test
     void addSessionData_ShouldAddEntryToCache() {
         String sessionId = "test-session";
-        MemoryManager.addSessionData(sessionId);
+        memoryManager.addSessionData(sessionId);
 
-        // Access via reflection or make non-static for testing; alternatively, expose cache for test.
-        // For static, consider refactoring; here simulate by checking size post-add.
         assertEquals(1, getCacheSize());  // Helper method to get size via reflection.
     }
 
     @Test
     void removeSessionData_ShouldInvalidateEntryAndLog() {
         String sessionId = "test-session";
-        MemoryManager.addSessionData(sessionId);
+        memoryManager.addSessionData(sessionId);
 
-        MemoryManager.removeSessionData(sessionId);
+        memoryManager.removeSessionData(sessionId);
 
         assertFalse(cache.asMap().containsKey(sessionId));
     }
@@ -47,18 +55,158 @@ class MemoryManagerTest {
     @Test
     void addSessionData_ExpiresAfterAccess_ShouldEvictAfterTimeout() {
         String sessionId = "test-session";
-        MemoryManager.addSessionData(sessionId);
+        memoryManager.addSessionData(sessionId);
 
         await().atMost(11, TimeUnit.SECONDS).until(() -> !cache.asMap().containsKey(sessionId));
     }
 
-    // Helper: Use reflection to access a private static cache for assertions.
+    @Test
+    void removeSessionData_WithEqualButDistinctKey_ShouldInvalidateEntry() {
+        String sessionId = "equal-key-session";
+        memoryManager.addSessionData(sessionId);
+
+        memoryManager.removeSessionData(new String(sessionId.toCharArray()));
+
+        assertFalse(getManagerCache().asMap().containsKey(sessionId));
+    }
+
+    @Test
+    void addSessionData_UnderSimulatorLoad_ShouldStayWithinMaxWeight() {
+        Cache<String, ?> managerCache = getManagerCache();
+        try {
+            // Same load as MemoryLeakSimulator, without the pauses: 1 GB of session data in total
+            for (int i = 0; i < 100; i++) {
+                memoryManager.addSessionData("sess-" + i);
+            }
+            managerCache.cleanUp();
+
+            long maxEntries = MemoryManager.MAX_WEIGHT_BYTES / MemoryManager.SESSION_DATA_SIZE;
+            assertTrue(managerCache.policy().eviction().orElseThrow().weightedSize().orElseThrow()
+                    <= MemoryManager.MAX_WEIGHT_BYTES);
+            assertTrue(managerCache.estimatedSize() <= maxEntries);
+            assertTrue(managerCache.stats().evictionCount() >= 100 - maxEntries);
+        } finally {
+            managerCache.invalidateAll();
+            managerCache.cleanUp();
+        }
+    }
+
+    @Test
+    void addSessionData_WithOwnInactiveInterval_ShouldExpireAfterIt() {
+        String sessionId = "short-session";
+        memoryManager.addSessionData(sessionId, Duration.ofMillis(200));
+
+        // containsKey does not count as a read, so it does not extend the sliding expiry
+        await().atMost(2, TimeUnit.SECONDS).until(() -> !getManagerCache().asMap().containsKey(sessionId));
+    }
+
+    @Test
+    void onSessionDestroyed_WhenSessionExpires_ShouldRemoveData() {
+        String sessionId = "expired-session";
+        memoryManager.addSessionData(sessionId);
+
+        memoryManager.onSessionDestroyed(new SessionExpiredEvent(this, new MapSession(sessionId)));
+
+        assertFalse(getManagerCache().asMap().containsKey(sessionId));
+    }
+
+    @Test
+    void onSessionDestroyed_WhenSessionDeleted_ShouldRemoveOnlyThatSession() {
+        memoryManager.addSessionData("logged-out");
+        memoryManager.addSessionData("still-active");
+
+        memoryManager.onSessionDestroyed(new SessionDeletedEvent(this, new MapSession("logged-out")));
+
+        assertFalse(getManagerCache().asMap().containsKey("logged-out"));
+        assertTrue(getManagerCache().asMap().containsKey("still-active"));
+    }
+
+    @Test
+    void addSessionData_WithPageSource_ShouldLoadOnlyAccessedPages() {
+        List<Integer> loads = new ArrayList<>();
+        PageSource source = new PageSource() {
+            @Override
+            public void load(int index, byte[] page) {
+                loads.add(index);
+                page[0] = (byte) index;
+            }
+
+            @Override
+            public void store(int index, byte[] page) {
+            }
+        };
+        int pageSize = ChunkedPayloadCache.DEFAULT_PAGE_SIZE;
+        memoryManager.addSessionData("chunked", source, MemoryManager.SESSION_DATA_SIZE);
+
+        byte[] read = new byte[1];
+        memoryManager.getChunkedSessionData("chunked").read(5L * pageSize, read, 0, 1);
+
+        assertEquals(5, read[0]);
+        assertEquals(List.of(5), loads);
+        assertEquals(pageSize, memoryManager.chunkedResidentBytes());
+    }
+
+    @Test
+    void onSessionDestroyed_WithChunkedData_ShouldCloseSourceAndReleasePages() {
+        AtomicBoolean closed = new AtomicBoolean();
+        PageSource source = new PageSource() {
+            @Override
+            public void load(int index, byte[] page) {
+            }
+
+            @Override
+            public void store(int index, byte[] page) {
+            }
+
+            @Override
+            public void close() {
+                closed.set(true);
+            }
+        };
+        memoryManager.addSessionData("chunked", source, MemoryManager.SESSION_DATA_SIZE);
+        memoryManager.getChunkedSessionData("chunked").read(0, new byte[16], 0, 16);
+
+        memoryManager.onSessionDestroyed(new SessionDeletedEvent(this, new MapSession("chunked")));
+
+        assertTrue(closed.get());
+        assertNull(memoryManager.getChunkedSessionData("chunked"));
+        assertEquals(0, memoryManager.chunkedResidentBytes());
+    }
+
+    @Test
+    void bindTo_ShouldCountRemovalsByCause() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        memoryManager.bindTo(registry);
+
+        memoryManager.addSessionData("replaced", Duration.ofMinutes(1));
+        memoryManager.addSessionData("replaced", Duration.ofMinutes(1));
+        memoryManager.removeSessionData("replaced");
+
+        // The removal listener runs asynchronously
+        await().atMost(2, TimeUnit.SECONDS).until(() -> registry.get("session.data.removals")
+                .tag("cause", "EXPLICIT").functionCounter().count() == 1);
+        assertEquals(1, registry.get("session.data.removals").tag("cause", "REPLACED").functionCounter().count());
+        assertEquals(0, registry.get("session.data.removals").tag("cause", "SIZE").functionCounter().count());
+    }
+
+    // Helper: Use reflection to access the manager's private cache for assertions.
     private int getCacheSize() {
         try {
             java.lang.reflect.Field field = MemoryManager.class.getDeclaredField("largeSessionData");
             field.setAccessible(true);
-            Cache<?, ?> staticCache = (Cache<?, ?>) field.get(null);
-            return (int) staticCache.estimatedSize();
+            Cache<?, ?> managerCache = (Cache<?, ?>) field.get(memoryManager);
+            return (int) managerCache.estimatedSize();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Cache<String, ?> getManagerCache() {
+        try {
+            java.lang.reflect.Field field = MemoryManager.class.getDeclaredField("largeSessionData");
+            field.setAccessible(true);
+            return (Cache<String, ?>) field.get(memoryManager);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,119 @@
+package com.unravel.part2MemoryManagemet;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapSessionDataStoreTest {
+
+    private static final int PAGE = 1024;
+
+    @Test
+    void put_ShouldReturnSameBytesSplitIntoPages() {
+        OffHeapSessionDataStore store = new OffHeapSessionDataStore(16 * PAGE, PAGE, 4 * PAGE);
+        byte[] payload = payload(2500, 7);
+
+        store.put("sess-1", ByteBuffer.wrap(payload));
+
+        try (SessionData data = store.get("sess-1")) {
+            assertEquals(2500, data.length());
+            assertEquals(3, data.buffers().length);
+            assertEquals(PAGE, data.buffers()[0].remaining());
+            assertEquals(2500 - 2 * PAGE, data.buffers()[2].remaining());
+            assertArrayEquals(payload, data.toByteArray());
+            assertThrows(ReadOnlyBufferException.class, () -> data.buffers()[0].put(0, (byte) 1));
+        }
+        assertEquals(2500, store.usedBytes());
+    }
+
+    @Test
+    void put_ShouldEvictLeastRecentlyUsedByBytes() {
+        OffHeapSessionDataStore store = new OffHeapSessionDataStore(8 * PAGE, PAGE, 8 * PAGE);
+        store.allocate("sess-1", 3 * PAGE);
+        store.allocate("sess-2", 3 * PAGE);
+        store.get("sess-1").close();  // sess-2 is now the least recently used
+
+        // 2 free pages, so one large payload has to go
+        store.allocate("sess-3", 4 * PAGE);
+
+        assertNull(store.get("sess-2"));
+        assertNotNull(store.get("sess-1"));
+        assertEquals(2, store.size());
+        assertEquals(1, store.evictionCount());
+        assertEquals(7 * PAGE, store.usedBytes());
+        assertEquals(8 * PAGE, store.allocatedBytes());
+    }
+
+    @Test
+    void put_ShouldNotEvictPayloadsBeingRead() {
+        OffHeapSessionDataStore store = new OffHeapSessionDataStore(6 * PAGE, PAGE, 6 * PAGE);
+        store.put("sess-1", ByteBuffer.wrap(payload(2 * PAGE, 1)));
+        store.allocate("sess-2", 2 * PAGE);
+        store.allocate("sess-3", 2 * PAGE);
+
+        try (SessionData reading = store.get("sess-1")) {
+            store.get("sess-2").close();
+            store.get("sess-3").close();  // sess-1 is the least recently used, but is being read
+
+            store.allocate("sess-4", 2 * PAGE);
+
+            assertNull(store.get("sess-2"));
+            assertEquals(1, store.evictionCount());
+            // Only the read payload and one other fit, so nothing is evicted for nothing
+            assertThrows(IllegalStateException.class, () -> store.allocate("sess-5", 5 * PAGE));
+            assertEquals(3, store.size());
+            assertEquals(1, store.evictionCount());
+            assertArrayEquals(payload(2 * PAGE, 1), reading.toByteArray());
+        }
+
+        store.allocate("sess-5", 5 * PAGE);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void remove_ShouldKeepPagesWhileBeingRead() {
+        OffHeapSessionDataStore store = new OffHeapSessionDataStore(2 * PAGE, PAGE, 2 * PAGE);
+        store.put("sess-1", ByteBuffer.wrap(payload(2 * PAGE, 1)));
+        SessionData reading = store.get("sess-1");
+
+        store.remove("sess-1");
+        assertThrows(IllegalStateException.class, () -> store.allocate("sess-2", PAGE));
+        assertArrayEquals(payload(2 * PAGE, 1), reading.toByteArray());
+
+        reading.close();
+        store.allocate("sess-2", PAGE);
+        assertEquals(PAGE, store.usedBytes());
+    }
+
+    @Test
+    void allocate_ShouldZeroReusedPages() {
+        OffHeapSessionDataStore store = new OffHeapSessionDataStore(PAGE, PAGE, PAGE);
+        store.put("sess-1", ByteBuffer.wrap(payload(PAGE, 3)));
+
+        store.allocate("sess-2", 100);
+
+        try (SessionData data = store.get("sess-2")) {
+            assertArrayEquals(new byte[100], data.toByteArray());
+        }
+        assertNull(store.get("sess-1"));
+    }
+
+    @Test
+    void put_ShouldRejectPayloadLargerThanBudget() {
+        OffHeapSessionDataStore store = new OffHeapSessionDataStore(4 * PAGE, PAGE, 4 * PAGE);
+
+        assertThrows(IllegalArgumentException.class, () -> store.allocate("sess-1", 4 * PAGE + 1));
+        assertEquals(0, store.size());
+    }
+
+    private static byte[] payload(int size, int seed) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + seed);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,112 @@
+package com.unravel.part2MemoryManagemet;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionMemoryEndpointTest {
+
+    private static final Duration TIMEOUT = Duration.ofMinutes(30);
+    private static final long SECOND = 1_000_000_000L;
+
+    private MemoryManager memoryManager;
+    private AtomicLong allocated;
+    private SessionMemoryTelemetry telemetry;
+
+    @BeforeEach
+    void setUp() {
+        memoryManager = new MemoryManager(TIMEOUT);
+        allocated = new AtomicLong(1_000);
+        telemetry = new SessionMemoryTelemetry(memoryManager, allocated::get, 0);
+    }
+
+    @Test
+    void report_ShouldListLargestSessionsFirst() {
+        memoryManager.addSessionData("small", new byte[100], TIMEOUT);
+        memoryManager.addSessionData("large", new byte[300], TIMEOUT);
+        memoryManager.addSessionData("medium", new byte[200], TIMEOUT);
+
+        SessionMemoryEndpoint.SessionMemoryReport report =
+                new SessionMemoryEndpoint(memoryManager, telemetry).report(2);
+
+        assertEquals(600, report.heldBytes());
+        assertEquals(3, report.entries());
+        assertEquals(MemoryManager.MAX_WEIGHT_BYTES, report.limitBytes());
+        assertEquals(List.of(new MemoryManager.SessionSize(MemoryManager.SessionSize.hash("large"), 300, 300),
+                new MemoryManager.SessionSize(MemoryManager.SessionSize.hash("medium"), 200, 200)),
+                report.largestSessions());
+    }
+
+    @Test
+    void report_ShouldNotExposeSessionIds() {
+        String sessionId = "2f1c9a7e-5b3d-4e8f-9a61-0c7d2b4e8f13";
+        memoryManager.addSessionData(sessionId, new byte[100], TIMEOUT);
+
+        String hash = new SessionMemoryEndpoint(memoryManager, telemetry).report(1).largestSessions().get(0)
+                .sessionHash();
+
+        assertEquals(12, hash.length());
+        assertFalse(sessionId.contains(hash));
+        assertNotEquals(hash, MemoryManager.SessionSize.hash("another-session"));
+    }
+
+    @Test
+    void report_WithoutTop_ShouldUseDefault() {
+        for (int i = 0; i < 12; i++) {
+            memoryManager.addSessionData("sess-" + i, new byte[i + 1], TIMEOUT);
+        }
+
+        assertEquals(SessionMemoryEndpoint.DEFAULT_TOP,
+                new SessionMemoryEndpoint(memoryManager, telemetry).report(null).largestSessions().size());
+    }
+
+    @Test
+    void sample_ShouldComputeRatesOverInterval() {
+        allocated.addAndGet(20_000);
+
+        telemetry.sample(2 * SECOND);
+
+        assertEquals(10_000, telemetry.allocationRate());
+        assertEquals(0, telemetry.evictionRate());
+    }
+
+    @Test
+    void sample_WithoutAllocationCounter_ShouldReportNaN() {
+        SessionMemoryTelemetry unsupported = new SessionMemoryTelemetry(memoryManager, () -> -1, 0);
+
+        unsupported.sample(SECOND);
+
+        assertTrue(Double.isNaN(unsupported.allocationRate()));
+    }
+
+    @Test
+    void bindTo_ShouldExposeHeldBytesAndEntries() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        telemetry.bindTo(registry);
+
+        memoryManager.addSessionData("sess-1", new byte[1024], TIMEOUT);
+
+        assertEquals(1024, registry.get("session.data.held").gauge().value());
+        assertEquals(1, registry.get("session.data.entries").gauge().value());
+    }
+
+    @Test
+    void defaultAllocationCounter_ShouldMeasureThisJvm() {
+        SessionMemoryTelemetry real = new SessionMemoryTelemetry(memoryManager);
+        byte[][] garbage = new byte[64][];
+        for (int i = 0; i < garbage.length; i++) {
+            garbage[i] = new byte[64 * 1024];
+        }
+
+        real.sample(System.nanoTime() + SECOND);
+
+        assertTrue(real.allocationRate() > 0, "allocation rate: " + real.allocationRate());
+        assertEquals(64, garbage.length);
+    }
+}
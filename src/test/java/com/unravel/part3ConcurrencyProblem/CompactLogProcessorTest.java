@@ -0,0 +1,101 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactLogProcessorTest {
+
+    @Test
+    @Timeout(5)
+    void testPriorityOrderingAndMessageEncoding() throws InterruptedException {
+        CompactLogProcessor processor = new CompactLogProcessor(8, 32);
+
+        processor.produceLog(processor.claimSlot(TaskPriority.LOW).appendAscii("LOW log ").appendLong(1));
+        processor.produceLog(processor.claimSlot(TaskPriority.MEDIUM).appendAscii("MEDIUM log ").appendLong(2));
+        processor.produceLog(processor.claimSlot(TaskPriority.HIGH).appendAscii("HIGH log ").appendLong(-3));
+
+        assertEquals(1, processor.getQueueDepth(TaskPriority.HIGH));
+        assertEquals("HIGH log -3", consumeAndRelease(processor));
+        assertEquals("MEDIUM log 2", consumeAndRelease(processor));
+        assertEquals("LOW log 1", consumeAndRelease(processor));
+        assertEquals(8, processor.getFreeSlots());
+    }
+
+    @Test
+    void testMessageIsCutOffAtCapacity() throws InterruptedException {
+        CompactLogProcessor processor = new CompactLogProcessor(2, 8);
+
+        LogSlot slot = processor.claimSlot(TaskPriority.HIGH).appendAscii("HIGH log ").appendLong(123);
+
+        assertEquals("HIGH log", slot.messageAsString());
+    }
+
+    @Test
+    @Timeout(5)
+    void testSlotsAreReusedAndClaimBlocksWhenExhausted() throws Exception {
+        CompactLogProcessor processor = new CompactLogProcessor(2, 16);
+        LogSlot first = processor.claimSlot(TaskPriority.HIGH);
+        LogSlot second = processor.claimSlot(TaskPriority.HIGH);
+
+        ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+        Future<LogSlot> third = producerExecutor.submit(() -> processor.claimSlot(TaskPriority.LOW));
+        Thread.sleep(50);
+        assertFalse(third.isDone());  // Both slots are in use
+
+        processor.release(first);
+
+        assertSame(first, third.get(1, TimeUnit.SECONDS));
+        assertEquals(TaskPriority.LOW, third.get().getPriority());
+        assertNotSame(first, second);
+        producerExecutor.shutdownNow();
+    }
+
+    @Test
+    @Timeout(10)
+    void testMultipleProducersConsumersDeliverEveryMessageOnce() throws InterruptedException {
+        CompactLogProcessor processor = new CompactLogProcessor(64, 32);
+        int numProducers = 4;
+        int tasksPerProducer = 5_000;
+        Set<String> processed = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(numProducers * tasksPerProducer);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numProducers + 3);
+        for (int p = 0; p < numProducers; p++) {
+            int producerId = p;
+            executor.submit(() -> {
+                for (int i = 0; i < tasksPerProducer; i++) {
+                    TaskPriority priority = TaskPriority.values()[i % 3];
+                    processor.produceLog(processor.claimSlot(priority)
+                            .appendLong(producerId).appendAscii("-").appendLong(i));
+                }
+                return null;
+            });
+        }
+        for (int c = 0; c < 3; c++) {
+            executor.submit(() -> {
+                while (true) {
+                    LogSlot slot = processor.consumeLog();
+                    assertTrue(processed.add(slot.messageAsString()));
+                    processor.release(slot);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(8, TimeUnit.SECONDS));
+        executor.shutdownNow();
+        assertEquals(numProducers * tasksPerProducer, processed.size());
+    }
+
+    private static String consumeAndRelease(CompactLogProcessor processor) throws InterruptedException {
+        LogSlot slot = processor.consumeLog();
+        String message = slot.messageAsString();
+        processor.release(slot);
+        return message;
+    }
+}
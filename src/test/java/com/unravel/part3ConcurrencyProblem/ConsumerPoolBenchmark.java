@@ -0,0 +1,97 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform-thread consumer pools of 1, 8 and 64 threads against {@link VirtualThreadConsumerPool}
+ * on a simulated blocking sink that parks for 1 ms per task.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsumerPoolBenchmark {
+
+    static final int TASKS = 2_000;
+    static final int VIRTUAL_MAX_IN_FLIGHT = 1_024;
+
+    public enum Pool {
+        PLATFORM_1, PLATFORM_8, PLATFORM_64, VIRTUAL
+    }
+
+    @Param
+    public Pool pool;
+
+    private LogProcessor processor;
+    private final List<Thread> consumerThreads = new ArrayList<>();
+    private volatile CountDownLatch done;
+
+    private static void blockingSink(LogTask task) throws InterruptedException {
+        Thread.sleep(1);
+    }
+
+    @Setup(Level.Trial)
+    public void startConsumers() {
+        processor = new LogProcessor();
+        if (pool == Pool.VIRTUAL) {
+            // The pool's own latch is never awaited here, completion is tracked per invocation instead
+            CountDownLatch unused = new CountDownLatch(Integer.MAX_VALUE);
+            VirtualThreadConsumerPool consumerPool = new VirtualThreadConsumerPool(processor, unused,
+                    VIRTUAL_MAX_IN_FLIGHT, task -> {
+                blockingSink(task);
+                done.countDown();
+            });
+            startThread(consumerPool, "bench-dispatcher");
+            return;
+        }
+        int threads = Integer.parseInt(pool.name().substring("PLATFORM_".length()));
+        for (int i = 0; i < threads; i++) {
+            startThread(() -> {
+                try {
+                    while (true) {
+                        blockingSink(processor.consumeLog());
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-consumer-" + i);
+        }
+    }
+
+    private void startThread(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        consumerThreads.add(thread);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetLatch() {
+        done = new CountDownLatch(TASKS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void produceAndDrain() throws InterruptedException {
+        long now = System.nanoTime();
+        TaskPriority[] priorities = TaskPriority.values();
+        for (int i = 0; i < TASKS; i++) {
+            processor.produceLog(new LogTask(priorities[i % priorities.length], "log", now));
+        }
+        done.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopConsumers() {
+        consumerThreads.forEach(Thread::interrupt);
+        consumerThreads.clear();
+    }
+}
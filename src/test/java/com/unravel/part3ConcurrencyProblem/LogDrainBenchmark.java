@@ -0,0 +1,84 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link LogProcessor#drainTo} for batch sizes 1, 16 and 256.
+ * One producer pushes {@link #TASKS} tasks per invocation while four consumers drain them in batches
+ * and acknowledge each batch at once.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogDrainBenchmark {
+
+    static final int TASKS = 10_000;
+    static final int CONSUMERS = 4;
+
+    @Param({"1", "16", "256"})
+    public int batchSize;
+
+    private LogProcessor processor;
+    private final List<Thread> consumerThreads = new ArrayList<>();
+    private volatile CountDownLatch done;
+    private final LogTask[] tasks = new LogTask[TASKS];
+
+    @Setup(Level.Trial)
+    public void startConsumers() {
+        processor = new LogProcessor();
+        TaskPriority[] priorities = TaskPriority.values();
+        for (int i = 0; i < TASKS; i++) {
+            TaskPriority priority = priorities[i % priorities.length];
+            tasks[i] = new LogTask(priority, priority + " log " + i, 0);
+        }
+        for (int i = 0; i < CONSUMERS; i++) {
+            Thread consumer = new Thread(() -> {
+                List<LogTask> batch = new ArrayList<>(batchSize);
+                try {
+                    while (true) {
+                        batch.clear();
+                        int drained = processor.drainTo(batch, batchSize, 10, TimeUnit.MILLISECONDS);
+                        CountDownLatch latch = done;
+                        for (int j = 0; j < drained; j++) {
+                            latch.countDown();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-consumer-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumerThreads.add(consumer);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetLatch() {
+        done = new CountDownLatch(TASKS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void produceAndDrain() throws InterruptedException {
+        long now = System.nanoTime();
+        for (LogTask task : tasks) {
+            processor.produceLog(new LogTask(task.getPriority(), task.getMessage(), now));
+        }
+        done.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopConsumers() {
+        consumerThreads.forEach(Thread::interrupt);
+        consumerThreads.clear();
+    }
+}
@@ -0,0 +1,46 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GC pressure of the object-based log path ({@link LogTask} + concatenated message + {@link LogProcessor})
+ * against the pooled slot path ({@link CompactLogProcessor}).
+ * Each operation produces and consumes one log line. Run with {@code -prof gc} and compare
+ * {@code gc.alloc.rate.norm} (bytes per line) and {@code gc.count}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LogPathGcBenchmark {
+
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    private final LogProcessor objectProcessor = new LogProcessor();
+    private final CompactLogProcessor slotProcessor = new CompactLogProcessor(1024, 64);
+    private int sequence;
+
+    @Benchmark
+    public LogTask objectPath() throws InterruptedException {
+        int i = sequence++;
+        TaskPriority priority = PRIORITIES[i % PRIORITIES.length];
+        objectProcessor.produceLog(new LogTask(priority, priority + " log " + i, System.nanoTime()));
+        return objectProcessor.consumeLog();
+    }
+
+    @Benchmark
+    public int slotPath() throws InterruptedException {
+        int i = sequence++;
+        TaskPriority priority = PRIORITIES[i % PRIORITIES.length];
+        slotProcessor.produceLog(slotProcessor.claimSlot(priority)
+                .appendAscii(priority.name()).appendAscii(" log ").appendLong(i));
+        LogSlot slot = slotProcessor.consumeLog();
+        int length = slot.getMessageLength();
+        slotProcessor.release(slot);
+        return length;
+    }
+}
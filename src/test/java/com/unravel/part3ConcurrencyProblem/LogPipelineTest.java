@@ -0,0 +1,152 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogPipelineTest {
+
+    @Test
+    @Timeout(10)
+    void stop_DrainsEveryAcceptedTaskExactlyOnce() throws Exception {
+        Map<String, Integer> processed = new ConcurrentHashMap<>();
+        LogSink sink = (task, ageNs) -> processed.merge(task.getMessage(), 1, Integer::sum);
+        LogPipeline pipeline = new LogPipeline(new LogProcessor(), 3, 8, sink, Duration.ofSeconds(5));
+        pipeline.start();
+
+        // Producers are still going when the pipeline stops, so part of their tasks is turned away
+        Set<String> accepted = ConcurrentHashMap.newKeySet();
+        AtomicBoolean rejected = new AtomicBoolean();
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        for (int p = 0; p < 4; p++) {
+            int producer = p;
+            producers.submit(() -> {
+                for (int i = 0; i < 500 && !rejected.get(); i++) {
+                    TaskPriority priority = TaskPriority.values()[i % 3];
+                    String message = "producer-" + producer + "-" + i;
+                    if (pipeline.submit(priority, message)) {
+                        accepted.add(message);
+                    } else {
+                        rejected.set(true);
+                    }
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            });
+        }
+        Thread.sleep(200);
+
+        pipeline.stop();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(2, TimeUnit.SECONDS));
+
+        assertTrue(rejected.get());
+        assertFalse(pipeline.isRunning());
+        assertTrue(pipeline.getUndrainedCounts().isEmpty());
+        assertEquals(accepted, processed.keySet());
+        assertTrue(processed.values().stream().allMatch(count -> count == 1), "a task was processed twice");
+        assertFalse(pipeline.submit(TaskPriority.HIGH, "after stop"));
+    }
+
+    @Test
+    @Timeout(10)
+    void stop_WaitsForProducerThatPassedShutdownCheck() throws Exception {
+        CountDownLatch insideProduce = new CountDownLatch(1);
+        CountDownLatch releaseProducer = new CountDownLatch(1);
+        // Holds the producer between its shutdown check and the end of its enqueue
+        TaskScheduler slowScheduler = new AgingLaneScheduler() {
+            @Override
+            public void offer(LogTask task) {
+                hold(insideProduce, releaseProducer);
+                super.offer(task);
+            }
+        };
+
+        assertStopWaitsForProducer(slowScheduler, insideProduce, releaseProducer);
+    }
+
+    @Test
+    @Timeout(10)
+    void stop_WaitsForProducerOfAnyShard() throws Exception {
+        CountDownLatch insideProduce = new CountDownLatch(1);
+        CountDownLatch releaseProducer = new CountDownLatch(1);
+        TaskScheduler slowScheduler = new ShardedLaneScheduler(4) {
+            @Override
+            public void offer(LogTask task) {
+                hold(insideProduce, releaseProducer);
+                super.offer(task);
+            }
+        };
+        // Takes the first home shard, so the held producer counts in another one
+        slowScheduler.homeShard();
+
+        assertStopWaitsForProducer(slowScheduler, insideProduce, releaseProducer);
+    }
+
+    private static void assertStopWaitsForProducer(TaskScheduler slowScheduler, CountDownLatch insideProduce,
+                                                   CountDownLatch releaseProducer) throws Exception {
+        Map<String, Integer> processed = new ConcurrentHashMap<>();
+        LogSink sink = (task, ageNs) -> processed.merge(task.getMessage(), 1, Integer::sum);
+        LogProcessor processor = new LogProcessor(slowScheduler, LogProcessor.UNBOUNDED, OverflowPolicy.BLOCK);
+        LogPipeline pipeline = new LogPipeline(processor, 2, 1, sink, Duration.ofSeconds(5));
+        pipeline.start();
+
+        CompletableFuture<Boolean> produced =
+                CompletableFuture.supplyAsync(() -> pipeline.submit(TaskPriority.LOW, "in flight"));
+        insideProduce.await();
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(pipeline::stop);
+        while (!processor.isShutdown()) {
+            Thread.onSpinWait();
+        }
+
+        assertFalse(processor.isDrained());
+        Thread.sleep(100);
+        assertFalse(stopped.isDone(), "consumers exited while a producer was still queuing");
+
+        releaseProducer.countDown();
+        assertTrue(produced.get());
+        stopped.get();
+        assertEquals(Map.of("in flight", 1), processed);
+        assertTrue(pipeline.getUndrainedCounts().isEmpty());
+    }
+
+    private static void hold(CountDownLatch inside, CountDownLatch release) {
+        inside.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @Timeout(10)
+    void stop_ReportsUndrainedTasksWhenDeadlinePasses() {
+        Map<String, Integer> processed = new ConcurrentHashMap<>();
+        LogSink slowSink = (task, ageNs) -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            processed.merge(task.getMessage(), 1, Integer::sum);
+        };
+        LogPipeline pipeline = new LogPipeline(new LogProcessor(), 1, 16, slowSink, Duration.ofMillis(100));
+        for (int i = 0; i < 60; i++) {
+            TaskPriority priority = TaskPriority.values()[i % 3];
+            assertTrue(pipeline.submit(priority, priority + "-" + i));
+        }
+        pipeline.start();
+
+        pipeline.stop();
+
+        // Part of the batch in progress went back to the queue instead of being lost or processed twice
+        long undrained = pipeline.getUndrainedCounts().values().stream().mapToLong(Long::longValue).sum();
+        assertTrue(undrained > 0);
+        assertEquals(60, processed.size() + undrained);
+        assertTrue(processed.values().stream().allMatch(count -> count == 1), "a task was processed twice");
+    }
+}
@@ -1,12 +1,21 @@
 package com.unravel.part3ConcurrencyProblem;
 
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LogProcessorTest {
 
@@ -117,6 +126,343 @@ class LogProcessorTest {
         assertEquals(List.of("high1", "high2", "low-aged"), processed);
     }
 
+    @Test
+    @Timeout(5)
+    void testAgedTaskOvertakesNewerTaskOneLevelUp() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        long now = System.nanoTime();
+
+        // LOW is past the threshold, so it competes with MEDIUM and wins as the older one, but never with HIGH
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low-aged", now - Constants.AGE_THRESHOLD_NS * 2));
+        processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", now));
+        processor.produceLog(new LogTask(TaskPriority.HIGH, "high", now));
+
+        assertEquals("high", processor.consumeLog().getMessage());
+        assertEquals("low-aged", processor.consumeLog().getMessage());
+        assertEquals("medium", processor.consumeLog().getMessage());
+    }
+
+    @Test
+    @Timeout(5)
+    void testDrainToKeepsPriorityOrderAndLimit() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        long now = System.nanoTime();
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low", now));
+        processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", now));
+        processor.produceLog(new LogTask(TaskPriority.HIGH, "high", now));
+
+        List<LogTask> batch = new ArrayList<>();
+        int drained = processor.drainTo(batch, 2, 100, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, drained);
+        assertEquals(List.of("high", "medium"), batch.stream().map(LogTask::getMessage).toList());
+        assertEquals("low", processor.consumeLog().getMessage());
+    }
+
+    @Test
+    @Timeout(5)
+    void testDrainToReturnsZeroAfterMaxWait() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        List<LogTask> batch = new ArrayList<>();
+
+        assertEquals(0, processor.drainTo(batch, 16, 50, TimeUnit.MILLISECONDS));
+        assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    @Timeout(5)
+    void testBatchConsumerProcessesAllTasks() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        CountDownLatch latch = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++) {
+            TaskPriority prio = TaskPriority.values()[i % 3];
+            processor.produceLog(new LogTask(prio, prio + "-" + i, System.nanoTime()));
+        }
+
+        ExecutorService consumerExecutor = Executors.newFixedThreadPool(2);
+        consumerExecutor.submit(new Consumer(processor, latch, 16));
+        consumerExecutor.submit(new Consumer(processor, latch, 16));
+
+        assertTrue(latch.await(4, TimeUnit.SECONDS));
+        consumerExecutor.shutdownNow();
+    }
+
+    @Test
+    @Timeout(5)
+    void testVirtualThreadPoolRespectsConcurrencyLimit() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        int maxConcurrency = 4;
+        int totalTasks = 50;
+        CountDownLatch latch = new CountDownLatch(totalTasks);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < totalTasks; i++) {
+            processor.produceLog(new LogTask(TaskPriority.MEDIUM, "task-" + i, System.nanoTime()));
+        }
+
+        ExecutorService dispatcher = Executors.newSingleThreadExecutor();
+        dispatcher.submit(new VirtualThreadConsumerPool(processor, latch, maxConcurrency, task -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(5);  // Simulated blocking sink
+            running.decrementAndGet();
+        }));
+
+        assertTrue(latch.await(4, TimeUnit.SECONDS));
+        dispatcher.shutdownNow();
+        assertTrue(maxRunning.get() <= maxConcurrency);
+    }
+
+    // --- Sharded mode ---
+
+    @Test
+    @Timeout(5)
+    void testShardedProducersWriteToOwnShardsAndConsumerKeepsGlobalPriority() throws Exception {
+        LogProcessor processor = LogProcessor.sharded(2);
+
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(2);
+        CyclicBarrier bothStarted = new CyclicBarrier(2);  // Keeps both tasks on two distinct threads
+        Future<?> medium = producerExecutor.submit(() -> {
+            bothStarted.await();
+            return processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", System.nanoTime()));
+        });
+        Future<?> high = producerExecutor.submit(() -> {
+            bothStarted.await();
+            return processor.produceLog(new LogTask(TaskPriority.HIGH, "high", System.nanoTime()));
+        });
+        medium.get();
+        high.get();
+        producerExecutor.shutdown();
+
+        assertEquals(2, processor.getShardCount());
+        assertEquals(1, processor.getShardDepth(0));
+        assertEquals(1, processor.getShardDepth(1));
+
+        // Whatever the home shard of this thread is, HIGH from the other shard goes first
+        assertEquals("high", processor.consumeLog().getMessage());
+        assertEquals("medium", processor.consumeLog().getMessage());
+    }
+
+    @Test
+    @Timeout(10)
+    void testShardedIdleConsumersStealEverything() throws InterruptedException {
+        LogProcessor processor = LogProcessor.sharded(4);
+        int numProducers = 4;
+        int tasksPerProducer = 1_000;
+        Set<String> processed = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(numProducers * tasksPerProducer);
+
+        ExecutorService consumerExecutor = Executors.newSingleThreadExecutor();  // One consumer for four shards
+        consumerExecutor.submit(() -> {
+            try {
+                while (true) {
+                    processed.add(processor.consumeLog().getMessage());
+                    latch.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        ExecutorService producerExecutor = Executors.newFixedThreadPool(numProducers);
+        for (int p = 0; p < numProducers; p++) {
+            int producerId = p;
+            producerExecutor.submit(() -> {
+                for (int i = 0; i < tasksPerProducer; i++) {
+                    TaskPriority prio = TaskPriority.values()[i % 3];
+                    processor.produceLog(new LogTask(prio, producerId + "-" + i, System.nanoTime()));
+                }
+            });
+        }
+
+        assertTrue(latch.await(8, TimeUnit.SECONDS));
+        producerExecutor.shutdownNow();
+        consumerExecutor.shutdownNow();
+        assertEquals(numProducers * tasksPerProducer, processed.size());
+    }
+
+    // --- Metrics ---
+
+    @Test
+    @Timeout(5)
+    void testMetricsCountAgedPromotions() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        processor.getMetrics().bindTo(registry);
+        long now = System.nanoTime();
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low-aged", now - Constants.AGE_THRESHOLD_NS * 2));
+        processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", now));
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low", now));
+
+        assertEquals("low-aged", processor.consumeLog().getMessage());
+        assertEquals("medium", processor.consumeLog().getMessage());
+        assertEquals("low", processor.consumeLog().getMessage());
+
+        assertEquals(1, processor.getPromotionCount());
+        assertEquals(1.0, registry.get(LogPipelineMetrics.PROMOTIONS).functionCounter().count());
+    }
+
+    @Test
+    @Timeout(5)
+    void testMetricsRecordQueueWaitAndProcessingPerPriority() throws InterruptedException {
+        LogProcessor processor = new LogProcessor();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        processor.getMetrics().bindTo(registry);
+        long now = System.nanoTime();
+        processor.produceLog(new LogTask(TaskPriority.HIGH, "high", now));
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low-1", now - Constants.AGE_THRESHOLD_NS * 2));
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low-2", now));
+        assertEquals(2.0, registry.get(LogPipelineMetrics.QUEUE_DEPTH).tag("priority", "LOW").gauge().value());
+
+        CountDownLatch latch = new CountDownLatch(3);
+        ExecutorService consumerExecutor = Executors.newSingleThreadExecutor();
+        consumerExecutor.submit(new Consumer(processor, latch, 1, (task, ageNs) -> { }));
+        assertTrue(latch.await(4, TimeUnit.SECONDS));
+        consumerExecutor.shutdownNow();
+
+        Timer highWait = registry.get(LogPipelineMetrics.QUEUE_WAIT).tag("priority", "HIGH").timer();
+        Timer lowWait = registry.get(LogPipelineMetrics.QUEUE_WAIT).tag("priority", "LOW").timer();
+        Timer lowProcessing = registry.get(LogPipelineMetrics.PROCESSING).tag("priority", "LOW").timer();
+        assertEquals(1, highWait.count());
+        assertEquals(2, lowWait.count());
+        assertEquals(2, lowProcessing.count());
+        // The aged LOW task waited past the threshold, which is what a starvation alert looks at
+        assertTrue(lowWait.max(TimeUnit.NANOSECONDS) > Constants.AGE_THRESHOLD_NS);
+        assertTrue(lowProcessing.totalTime(TimeUnit.MILLISECONDS) >= 2);  // Consumer sleeps 1 ms per task
+        assertEquals(0.0, registry.get(LogPipelineMetrics.QUEUE_DEPTH).tag("priority", "LOW").gauge().value());
+    }
+
+    // --- Spill mode ---
+
+    @Test
+    @Timeout(5)
+    void testSpillingKeepsHeapDepthAndPriorityOrder(@TempDir Path spoolDir) throws Exception {
+        try (LogProcessor processor = LogProcessor.spilling(2, spoolDir)) {
+            long now = System.nanoTime();
+            for (int i = 0; i < 5; i++) {
+                processor.produceLog(new LogTask(TaskPriority.LOW, "low-" + i, now));
+            }
+            processor.produceLog(new LogTask(TaskPriority.HIGH, "high", now));
+
+            assertEquals(5, processor.getQueueDepth(TaskPriority.LOW));
+            assertEquals(3, processor.getSpooledCount(TaskPriority.LOW));
+            assertEquals(1, processor.getSpooledCount(TaskPriority.HIGH));
+
+            // HIGH spilled because the heap was full, but is still taken before the LOW tasks on the heap
+            List<String> consumed = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                consumed.add(processor.consumeLog().getMessage());
+            }
+            assertEquals(List.of("high", "low-0", "low-1", "low-2", "low-3", "low-4"), consumed);
+            assertEquals(0, processor.getSpooledCount(TaskPriority.LOW));
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void testSpillingDrainToTakesSpooledHigherTasksFirst(@TempDir Path spoolDir) throws Exception {
+        try (LogProcessor processor = LogProcessor.spilling(2, spoolDir)) {
+            long now = System.nanoTime();
+            for (int i = 0; i < 3; i++) {
+                processor.produceLog(new LogTask(TaskPriority.LOW, "low-" + i, now));
+            }
+            processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", now));
+            processor.produceLog(new LogTask(TaskPriority.HIGH, "high", now));
+
+            List<LogTask> batch = new ArrayList<>();
+            processor.drainTo(batch, 4, 0, TimeUnit.MILLISECONDS);
+
+            assertEquals(List.of("high", "medium", "low-0", "low-1"), batch.stream().map(LogTask::getMessage).toList());
+            assertEquals(1, processor.getSpooledCount(TaskPriority.LOW));
+        }
+    }
+
+    @Test
+    @Timeout(5)
+    void testSpilledTasksAreRecoveredAfterRestart(@TempDir Path spoolDir) throws Exception {
+        try (LogProcessor processor = LogProcessor.spilling(1, spoolDir)) {
+            for (int i = 0; i < 4; i++) {
+                processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium-" + i, System.nanoTime()));
+            }
+            assertEquals("medium-0", processor.consumeLog().getMessage());
+        }
+
+        // Spooled tasks only move onto the heap when a consumer polls again, so all three survive
+        try (LogProcessor restarted = LogProcessor.spilling(1, spoolDir)) {
+            assertEquals(3, restarted.getQueueDepth(TaskPriority.MEDIUM));
+            assertEquals("medium-1", restarted.consumeLog().getMessage());
+            assertEquals("medium-2", restarted.consumeLog().getMessage());
+            assertEquals("medium-3", restarted.consumeLog().getMessage());
+        }
+    }
+
+    // --- Bounded mode ---
+
+    @Test
+    @Timeout(5)
+    void testBoundedRejectCountsDroppedTasks() {
+        LogProcessor processor = new LogProcessor(2, OverflowPolicy.REJECT);
+
+        assertTrue(processor.produceLog(new LogTask(TaskPriority.LOW, "low", System.nanoTime())));
+        assertTrue(processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", System.nanoTime())));
+        assertFalse(processor.produceLog(new LogTask(TaskPriority.HIGH, "high", System.nanoTime())));
+
+        assertEquals(1, processor.getQueueDepth(TaskPriority.LOW));
+        assertEquals(1, processor.getQueueDepth(TaskPriority.MEDIUM));
+        assertEquals(0, processor.getQueueDepth(TaskPriority.HIGH));
+        assertEquals(1, processor.getDroppedCount(TaskPriority.HIGH));
+    }
+
+    @Test
+    @Timeout(5)
+    void testBoundedDropLowFirstEvictsLowerPriority() throws InterruptedException {
+        LogProcessor processor = new LogProcessor(2, OverflowPolicy.DROP_LOW_FIRST);
+        long now = System.nanoTime();
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low", now));
+        processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", now));
+
+        assertTrue(processor.produceLog(new LogTask(TaskPriority.HIGH, "high", now)));
+        // Nothing ranks below LOW any more, so the new LOW task is the one that goes
+        assertFalse(processor.produceLog(new LogTask(TaskPriority.LOW, "low-2", now)));
+
+        assertEquals(2, processor.getDroppedCount(TaskPriority.LOW));
+        assertEquals("high", processor.consumeLog().getMessage());
+        assertEquals("medium", processor.consumeLog().getMessage());
+    }
+
+    @Test
+    @Timeout(5)
+    void testBoundedShedOldestEvictsOldestTask() throws InterruptedException {
+        LogProcessor processor = new LogProcessor(2, OverflowPolicy.SHED_OLDEST);
+        long now = System.nanoTime();
+        processor.produceLog(new LogTask(TaskPriority.HIGH, "high-old", now - 1_000));
+        processor.produceLog(new LogTask(TaskPriority.LOW, "low", now));
+
+        assertTrue(processor.produceLog(new LogTask(TaskPriority.MEDIUM, "medium", now)));
+
+        assertEquals(1, processor.getDroppedCount(TaskPriority.HIGH));
+        assertEquals("medium", processor.consumeLog().getMessage());
+        assertEquals("low", processor.consumeLog().getMessage());
+    }
+
+    @Test
+    @Timeout(5)
+    void testBoundedBlockWaitsForConsumer() throws Exception {
+        LogProcessor processor = new LogProcessor(1, OverflowPolicy.BLOCK);
+        processor.produceLog(new LogTask(TaskPriority.HIGH, "first", System.nanoTime()));
+
+        ExecutorService producerExecutor = Executors.newSingleThreadExecutor();
+        Future<Boolean> second = producerExecutor.submit(
+                () -> processor.produceLog(new LogTask(TaskPriority.HIGH, "second", System.nanoTime())));
+
+        Thread.sleep(50);
+        assertFalse(second.isDone());  // The queue is full, the producer has to wait
+
+        assertEquals("first", processor.consumeLog().getMessage());
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        assertEquals("second", processor.consumeLog().getMessage());
+        producerExecutor.shutdownNow();
+    }
+
     @Test
     @Timeout(5)
     void testMultipleProducersConsumers() throws InterruptedException {
@@ -0,0 +1,139 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous {@code PriorityBlockingQueue} with a time-dependent comparator against
+ * the {@link AgingLaneScheduler} behind {@link LogProcessor}.
+ * One producer pushes {@link #TASKS} tasks per invocation while 1, 4 or 16 consumers drain them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogSchedulerBenchmark {
+
+    static final int TASKS = 10_000;
+
+    // The comparator LogTask used before the scheduler was introduced: it reads the clock on every call
+    private static final Comparator<LogTask> LEGACY_AGING_ORDER = (a, b) -> {
+        int priorityDiff = a.getPriority().ordinal() - b.getPriority().ordinal();
+        long now = System.nanoTime();
+        long ageA = now - a.getCreatedAtNanos();
+        long ageB = now - b.getCreatedAtNanos();
+        if (priorityDiff == 0) {
+            return Long.compare(ageB, ageA);
+        }
+        if (priorityDiff > 0 && ageA > Constants.AGE_THRESHOLD_NS) {
+            return priorityDiff - 1;
+        }
+        return priorityDiff;
+    };
+
+    interface TaskQueue {
+        void put(LogTask task);
+
+        LogTask take() throws InterruptedException;
+    }
+
+    public enum Implementation {
+        PRIORITY_BLOCKING_QUEUE {
+            @Override
+            TaskQueue create() {
+                PriorityBlockingQueue<LogTask> queue = new PriorityBlockingQueue<>(11, LEGACY_AGING_ORDER);
+                return new TaskQueue() {
+                    public void put(LogTask task) {
+                        queue.put(task);
+                    }
+
+                    public LogTask take() throws InterruptedException {
+                        return queue.take();
+                    }
+                };
+            }
+        },
+        AGING_LANES {
+            @Override
+            TaskQueue create() {
+                LogProcessor processor = new LogProcessor();
+                return new TaskQueue() {
+                    public void put(LogTask task) {
+                        processor.produceLog(task);
+                    }
+
+                    public LogTask take() throws InterruptedException {
+                        return processor.consumeLog();
+                    }
+                };
+            }
+        };
+
+        abstract TaskQueue create();
+    }
+
+    @Param
+    public Implementation implementation;
+
+    @Param({"1", "4", "16"})
+    public int consumers;
+
+    private TaskQueue queue;
+    private final List<Thread> consumerThreads = new ArrayList<>();
+    private volatile CountDownLatch done;
+    private final LogTask[] tasks = new LogTask[TASKS];
+
+    @Setup(Level.Trial)
+    public void startConsumers() {
+        queue = implementation.create();
+        TaskPriority[] priorities = TaskPriority.values();
+        for (int i = 0; i < TASKS; i++) {
+            TaskPriority priority = priorities[i % priorities.length];
+            tasks[i] = new LogTask(priority, priority + " log " + i, 0);
+        }
+        for (int i = 0; i < consumers; i++) {
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        queue.take();
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-consumer-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumerThreads.add(consumer);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetLatch() {
+        done = new CountDownLatch(TASKS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void produceAndDrain() throws InterruptedException {
+        long now = System.nanoTime();
+        for (LogTask task : tasks) {
+            queue.put(new LogTask(task.getPriority(), task.getMessage(), now));
+        }
+        done.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopConsumers() {
+        consumerThreads.forEach(Thread::interrupt);
+        consumerThreads.clear();
+    }
+}
@@ -0,0 +1,59 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost per processed task of {@link ConsoleLogSink} against {@link BufferedChannelLogSink}.
+ * Run with {@code -prof gc} to see the allocation per task ({@code gc.alloc.rate.norm}).
+ * The console sink writes to a discarding stream, so only formatting and locking are measured, not the terminal.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogSinkBenchmark {
+
+    public enum Sink {
+        CONSOLE, BUFFERED_CHANNEL
+    }
+
+    @Param
+    public Sink sink;
+
+    private LogSink logSink;
+    private Path file;
+    private final LogTask task = new LogTask(TaskPriority.MEDIUM, "MEDIUM log 42", 0);
+
+    @Setup(Level.Trial)
+    public void openSink() throws IOException {
+        if (sink == Sink.CONSOLE) {
+            logSink = new ConsoleLogSink(new PrintStream(OutputStream.nullOutputStream()));
+        } else {
+            file = Files.createTempFile("log-sink-benchmark", ".log");
+            logSink = new BufferedChannelLogSink(file);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void write() throws IOException {
+        logSink.write(task, 12_345_678L);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeSink() throws IOException {
+        logSink.close();
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
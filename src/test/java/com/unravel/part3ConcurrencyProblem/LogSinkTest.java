@@ -0,0 +1,107 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogSinkTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void consoleSink_PrintsAgeAndAgingNote() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ConsoleLogSink sink = new ConsoleLogSink(new PrintStream(output, true, StandardCharsets.UTF_8));
+
+        sink.write(new LogTask(TaskPriority.LOW, "LOW log 1", 0), 150_000_000L);
+
+        String line = output.toString(StandardCharsets.UTF_8);
+        assertTrue(line.contains("processed LOW log 1 | age=150.0 ms (AGED ↑)"));
+    }
+
+    @Test
+    void bufferedSink_WritesSameLineLayoutAsConsole() throws IOException {
+        Path file = tempDir.resolve("tasks.log");
+        try (BufferedChannelLogSink sink = new BufferedChannelLogSink(file)) {
+            sink.write(new LogTask(TaskPriority.HIGH, "HIGH log 7", 0), 2_349_999L);
+            sink.write(new LogTask(TaskPriority.LOW, "LOW log 8", 0), 150_000_000L);
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        String thread = Thread.currentThread().getName();
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).matches("\\d{2}:\\d{2}:\\d{2}\\.\\d{3} \\| .*"), lines.get(0));
+        assertTrue(lines.get(0).endsWith(" | " + thread + " processed HIGH log 7 | age=2.3 ms"), lines.get(0));
+        assertTrue(lines.get(1).endsWith(" processed LOW log 8 | age=150.0 ms (AGED ↑)"), lines.get(1));
+    }
+
+    @Test
+    void bufferedSink_CloseWritesOutBuffersOfOtherThreads() throws Exception {
+        Path file = tempDir.resolve("tasks.log");
+        BufferedChannelLogSink sink = new BufferedChannelLogSink(file, 4096, 1, TimeUnit.HOURS);
+
+        Thread writer = new Thread(() -> {
+            try {
+                sink.write(new LogTask(TaskPriority.MEDIUM, "from writer", 0), 1_000_000L);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        writer.join();
+        assertEquals(0, Files.size(file));  // Still sitting in the writer's buffer
+
+        sink.close();
+
+        assertTrue(Files.readString(file).contains("processed from writer | age=1.0 ms"));
+    }
+
+    @Test
+    void bufferedSink_ReleaseWritesOutAndReusesBufferOfExitedThread() throws Exception {
+        Path file = tempDir.resolve("tasks.log");
+        try (BufferedChannelLogSink sink = new BufferedChannelLogSink(file, 4096, 1, TimeUnit.HOURS)) {
+            for (int i = 0; i < 20; i++) {
+                int task = i;
+                Thread consumer = new Thread(() -> {
+                    try {
+                        sink.write(new LogTask(TaskPriority.LOW, "task " + task, 0), 1_000_000L);
+                        sink.release();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                consumer.start();
+                consumer.join();
+            }
+
+            // Written before close(), and the exited threads left a single buffer behind
+            assertEquals(20, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+            assertEquals(1, sink.getBufferCount());
+        }
+    }
+
+    @Test
+    void putUtf8_MatchesStringEncodingAndRespectsLimit() {
+        String text = "log é ↑ 😀";
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        int written = BufferedChannelLogSink.putUtf8(buffer, text, 64);
+
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), java.util.Arrays.copyOf(buffer.array(), written));
+
+        buffer.clear();
+        assertEquals(4, BufferedChannelLogSink.putUtf8(buffer, text, 5));  // "log " fits, "é" would not
+    }
+}
@@ -0,0 +1,124 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append throughput and recovery time of {@link LogSpool} for {@link #entries} tasks (10M by default,
+ * about 500 MB of segments). Each invocation works on a fresh directory, so run it with a few iterations only,
+ * e.g. {@code -wi 1 -i 3}, or lower the count with {@code -p entries=1000000}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LogSpoolBenchmark {
+
+    @Param({"10000000"})
+    public int entries;
+
+    private final LogTask[] tasks = new LogTask[1024];
+    private Path directory;
+    private LogSpool spool;
+
+    @Setup(Level.Trial)
+    public void createTasks() {
+        TaskPriority[] priorities = TaskPriority.values();
+        long now = System.nanoTime();
+        for (int i = 0; i < tasks.length; i++) {
+            TaskPriority priority = priorities[i % priorities.length];
+            tasks[i] = new LogTask(priority, priority + " log " + i, now);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("log-spool-bench");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteDirectory() throws IOException {
+        if (spool != null) {
+            spool.close();
+            spool = null;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Appending {@link #entries} tasks, without the final force to disk.
+     */
+    @Benchmark
+    public LogSpool append() throws IOException {
+        spool = new LogSpool(directory);
+        for (int i = 0; i < entries; i++) {
+            spool.append(tasks[i & (tasks.length - 1)]);
+        }
+        return spool;
+    }
+
+    /**
+     * Opening a directory that holds {@link #entries} untaken tasks, then taking all of them.
+     */
+    @Benchmark
+    public long recoverAndReplay(SpooledDirectory spooled) throws IOException {
+        long replayed = 0;
+        try (LogSpool recovered = new LogSpool(spooled.directory)) {
+            while (recovered.poll() != null) {
+                replayed++;
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Opening the same directory without taking anything, which is the scan done on restart.
+     */
+    @Benchmark
+    public long recoverOnly(SpooledDirectory spooled) throws IOException {
+        try (LogSpool recovered = new LogSpool(spooled.directory)) {
+            long depth = 0;
+            for (TaskPriority priority : TaskPriority.values()) {
+                depth += recovered.depth(priority);
+            }
+            return depth;
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SpooledDirectory {
+        private Path directory;
+
+        // Rebuilt before every iteration, since recoverAndReplay takes all records
+        @Setup(Level.Iteration)
+        public void fill(LogSpoolBenchmark benchmark) throws IOException {
+            directory = Files.createTempDirectory("log-spool-recovery");
+            try (LogSpool spool = new LogSpool(directory)) {
+                for (int i = 0; i < benchmark.entries; i++) {
+                    spool.append(benchmark.tasks[i & (benchmark.tasks.length - 1)]);
+                }
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void delete() throws IOException {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
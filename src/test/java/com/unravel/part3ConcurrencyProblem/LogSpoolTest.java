@@ -0,0 +1,141 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class LogSpoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void spool_ReturnsTasksInPriorityOrderAcrossSegments() throws IOException {
+        try (LogSpool spool = new LogSpool(tempDir, 128)) {
+            long now = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                spool.append(new LogTask(TaskPriority.LOW, "LOW log " + i, now));
+                spool.append(new LogTask(TaskPriority.HIGH, "HIGH log " + i, now));
+            }
+            assertEquals(10, spool.depth(TaskPriority.LOW));
+
+            List<String> messages = pollAll(spool);
+
+            assertEquals(20, messages.size());
+            assertEquals("HIGH log 0", messages.get(0));
+            assertEquals("HIGH log 9", messages.get(9));
+            assertEquals("LOW log 0", messages.get(10));
+            assertEquals("LOW log 9", messages.get(19));
+            assertTrue(spool.isEmpty());
+            // Segments that were read to the end are gone, only the last one of each lane is kept for appends
+            assertTrue(segmentCount() <= 2, "segments left: " + segmentCount());
+        }
+    }
+
+    @Test
+    void spool_UnmapsSegmentsBeforeDeletingThem() throws IOException {
+        Path maps = Path.of("/proc/self/maps");
+        assumeTrue(Files.isReadable(maps), "needs the memory map of the process");
+        try (LogSpool spool = new LogSpool(tempDir, 128)) {
+            for (int i = 0; i < 20; i++) {
+                spool.append(new LogTask(TaskPriority.LOW, "LOW log " + i, System.nanoTime()));
+            }
+            pollAll(spool);
+
+            // A deleted file that is still mapped shows up with its path, the last segment is kept for appends
+            assertEquals(1, mappedSegments(maps));
+        }
+        assertEquals(0, mappedSegments(maps));
+    }
+
+    @Test
+    void spool_AgedLowerTaskCompetesWithHigherLane() throws IOException {
+        try (LogSpool spool = new LogSpool(tempDir, 4096)) {
+            long now = System.nanoTime();
+            spool.append(new LogTask(TaskPriority.MEDIUM, "medium", now));
+            spool.append(new LogTask(TaskPriority.LOW, "low-aged", now - Constants.AGE_THRESHOLD_NS * 2));
+
+            assertEquals("low-aged", spool.poll().getMessage());
+            assertEquals("medium", spool.poll().getMessage());
+            assertNull(spool.poll());
+        }
+    }
+
+    @Test
+    void spool_RecoversUntakenTasksWithTheirAge() throws IOException {
+        long createdAt = System.nanoTime() - 50_000_000L;
+        try (LogSpool spool = new LogSpool(tempDir, 128)) {
+            for (int i = 0; i < 6; i++) {
+                spool.append(new LogTask(TaskPriority.MEDIUM, "MEDIUM log " + i + " ✓", createdAt));
+            }
+            assertEquals("MEDIUM log 0 ✓", spool.poll().getMessage());
+            assertEquals("MEDIUM log 1 ✓", spool.poll().getMessage());
+        }
+
+        try (LogSpool recovered = new LogSpool(tempDir, 128)) {
+            assertEquals(4, recovered.depth(TaskPriority.MEDIUM));
+            LogTask first = recovered.poll();
+            assertEquals("MEDIUM log 2 ✓", first.getMessage());
+            assertTrue(System.nanoTime() - first.getCreatedAtNanos() >= 50_000_000L);
+
+            // New tasks go after the recovered ones
+            recovered.append(new LogTask(TaskPriority.MEDIUM, "MEDIUM log 6", System.nanoTime()));
+            assertEquals(List.of("MEDIUM log 3 ✓", "MEDIUM log 4 ✓", "MEDIUM log 5 ✓", "MEDIUM log 6"),
+                    pollAll(recovered));
+        }
+    }
+
+    @Test
+    void spool_SkipsFilesThatAreNotSegments() throws IOException {
+        try (LogSpool spool = new LogSpool(tempDir, 128)) {
+            spool.append(new LogTask(TaskPriority.LOW, "LOW log 0", System.nanoTime()));
+        }
+        Files.writeString(tempDir.resolve("notes.spool"), "foreign");
+        Files.writeString(tempDir.resolve("URGENT-0000000000000000001.spool"), "unknown priority");
+        Files.writeString(tempDir.resolve("LOW-1.spool"), "half renamed");
+
+        try (LogSpool recovered = new LogSpool(tempDir, 128)) {
+            assertEquals(1, recovered.depth(TaskPriority.LOW));
+            assertEquals(List.of("LOW log 0"), pollAll(recovered));
+        }
+        assertTrue(Files.exists(tempDir.resolve("notes.spool")));
+    }
+
+    @Test
+    void spool_RejectsMessageLargerThanSegment() throws IOException {
+        try (LogSpool spool = new LogSpool(tempDir, 64)) {
+            LogTask task = new LogTask(TaskPriority.HIGH, "x".repeat(64), System.nanoTime());
+
+            assertThrows(IllegalArgumentException.class, () -> spool.append(task));
+        }
+    }
+
+    private static List<String> pollAll(LogSpool spool) throws IOException {
+        List<String> messages = new ArrayList<>();
+        for (LogTask task = spool.poll(); task != null; task = spool.poll()) {
+            messages.add(task.getMessage());
+        }
+        return messages;
+    }
+
+    private long mappedSegments(Path maps) throws IOException {
+        try (Stream<String> lines = Files.lines(maps)) {
+            return lines.filter(line -> line.contains(tempDir.toString())).count();
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+}
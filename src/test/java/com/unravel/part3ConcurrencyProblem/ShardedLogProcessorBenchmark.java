@@ -0,0 +1,90 @@
+package com.unravel.part3ConcurrencyProblem;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer scaling from 1 to 32 threads: a single shared scheduler against one shard per producer.
+ * Each invocation pushes {@link #TASKS} tasks split evenly between the producers while four consumers drain them.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShardedLogProcessorBenchmark {
+
+    static final int TASKS = 32 * 1_024;
+    static final int CONSUMERS = 4;
+
+    public enum Layout {
+        SINGLE, SHARDED
+    }
+
+    @Param
+    public Layout layout;
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int producers;
+
+    private LogProcessor processor;
+    private ExecutorService producerExecutor;
+    private final List<Thread> consumerThreads = new ArrayList<>();
+    private volatile CountDownLatch done;
+
+    @Setup(Level.Trial)
+    public void start() {
+        processor = layout == Layout.SHARDED ? LogProcessor.sharded(producers) : new LogProcessor();
+        producerExecutor = Executors.newFixedThreadPool(producers);
+        for (int i = 0; i < CONSUMERS; i++) {
+            Thread consumer = new Thread(() -> {
+                try {
+                    while (true) {
+                        processor.consumeLog();
+                        done.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "bench-consumer-" + i);
+            consumer.setDaemon(true);
+            consumer.start();
+            consumerThreads.add(consumer);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetLatch() {
+        done = new CountDownLatch(TASKS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void produceAndDrain() throws InterruptedException {
+        int tasksPerProducer = TASKS / producers;
+        TaskPriority[] priorities = TaskPriority.values();
+        for (int p = 0; p < producers; p++) {
+            producerExecutor.execute(() -> {
+                long now = System.nanoTime();
+                for (int i = 0; i < tasksPerProducer; i++) {
+                    processor.produceLog(new LogTask(priorities[i % priorities.length], "log", now));
+                }
+            });
+        }
+        done.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        producerExecutor.shutdownNow();
+        consumerThreads.forEach(Thread::interrupt);
+        consumerThreads.clear();
+    }
+}